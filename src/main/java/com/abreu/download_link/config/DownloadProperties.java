@@ -0,0 +1,307 @@
+package com.abreu.download_link.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "downloader")
+public class DownloadProperties {
+
+    /**
+     * Path to the yt-dlp executable. Falls back to the YT_DLP_PATH environment variable
+     * and then to the platform default virtualenv location.
+     */
+    private String ytDlpPath;
+
+    /**
+     * Path to the ffmpeg executable used by the transcode stage. Falls back to the FFMPEG_PATH
+     * environment variable and then to {@code ffmpeg} on the PATH.
+     */
+    private String ffmpegPath;
+
+    private ExecutorProperties executor = new ExecutorProperties();
+
+    private CacheProperties cache = new CacheProperties();
+
+    private StatusProperties status = new StatusProperties();
+
+    private EventsProperties events = new EventsProperties();
+
+    private ProcessProperties process = new ProcessProperties();
+
+    private CleanupProperties cleanup = new CleanupProperties();
+
+    private StorageProperties storage = new StorageProperties();
+
+    private PipelineProperties pipeline = new PipelineProperties();
+
+    private BatchProperties batch = new BatchProperties();
+
+    private JournalProperties journal = new JournalProperties();
+
+    private WorkerPoolProperties workerPool = new WorkerPoolProperties();
+
+    private InfoProperties info = new InfoProperties();
+
+    @Getter
+    @Setter
+    public static class ExecutorProperties {
+        /** Number of downloads that may run concurrently. */
+        private int workers = 4;
+
+        /** Number of downloads that may wait for a worker before new ones are rejected. */
+        private int queueCapacity = 16;
+
+        /**
+         * Downloads one client (API key or IP address) may have waiting at the same time, so a
+         * single client cannot fill the queue; 0 disables the limit.
+         */
+        private int clientQueueLimit = 4;
+
+        /**
+         * API keys clients may send in {@code X-API-Key} to be scheduled as one client wherever
+         * they connect from. Any other key is ignored and the client is told apart by IP address,
+         * so a made-up key per request does not buy a fresh share of the queue.
+         */
+        private List<String> apiKeys = new ArrayList<>();
+
+        /**
+         * Interactive downloads started for every bulk one while both kinds are waiting. Bulk work
+         * still moves under a steady interactive load.
+         */
+        private int interactiveShare = 4;
+
+        /** Job duration assumed for Retry-After until real jobs have been measured. */
+        private Duration defaultJobDuration = Duration.ofSeconds(60);
+    }
+
+    @Getter
+    @Setter
+    public static class CacheProperties {
+        /** Directory holding finished downloads and the cache index. Kept across restarts. */
+        private String directory = Paths.get(System.getProperty("java.io.tmpdir"), "yt-cache").toString();
+
+        /** Total size of cached files above which least recently used entries are evicted. */
+        private DataSize maxSize = DataSize.ofGigabytes(2);
+
+        /**
+         * Keep the stream fetched for a conversion as the {@code original} format of the video, so
+         * other formats of the same video are converted from it without fetching again. Only used
+         * when fetch and transcode run as separate stages.
+         */
+        private boolean keepSources = true;
+    }
+
+    @Getter
+    @Setter
+    public static class StatusProperties {
+        /** Maximum number of job statuses kept; the oldest finished jobs are evicted first. */
+        private int maxEntries = 10_000;
+
+        /** How long COMPLETED and FAILED statuses stay queryable. */
+        private Duration terminalTtl = Duration.ofMinutes(30);
+    }
+
+    @Getter
+    @Setter
+    public static class EventsProperties {
+        /** Interval between keepalive comments sent on open job event streams. */
+        private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+        /** Maximum lifetime of a job event stream. */
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Getter
+    @Setter
+    public static class ProcessProperties {
+        /** Number of trailing yt-dlp output lines kept per job for diagnostics. */
+        private int outputTailLines = 50;
+
+        /** Time allowed to resolve the video before the download starts. */
+        private Duration metadataTimeout = Duration.ofMinutes(2);
+
+        /** Time allowed for the download of the source media. */
+        private Duration downloadTimeout = Duration.ofMinutes(30);
+
+        /** Time allowed for the audio conversion. */
+        private Duration transcodeTimeout = Duration.ofMinutes(30);
+
+        /** Grace period between SIGTERM and SIGKILL when a process tree is stopped. */
+        private Duration killGracePeriod = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class CleanupProperties {
+        /** How often idle files outside the result cache are purged. */
+        private Duration interval = Duration.ofSeconds(60);
+
+        /** Idle time after which such a file is deleted. */
+        private Duration idleTtl = Duration.ofSeconds(120);
+
+        /**
+         * How long a file stays protected after its last transfer ended. Tomcat's sendfile opens
+         * the file only after the request handler has returned, so the lease is released slightly
+         * before the bytes actually leave.
+         */
+        private Duration leaseGrace = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class StorageProperties {
+        /** Free disk space under which cached files are evicted and new downloads refused. */
+        private DataSize minFreeSpace = DataSize.ofMegabytes(512);
+
+        /** Free disk space that eviction restores once it kicks in. */
+        private DataSize targetFreeSpace = DataSize.ofGigabytes(1);
+
+        /**
+         * Space reserved for a running download, as a multiple of the size yt-dlp reports for the
+         * source. The source stays on disk while the mp3 is written, and the mp3 is often larger.
+         */
+        private double expectedSizeFactor = 3.0;
+
+        /** How often the watermarks are checked in the background. */
+        private Duration checkInterval = Duration.ofSeconds(30);
+
+        /** Retry-After sent when a download is refused for lack of disk space. */
+        private Duration retryAfter = Duration.ofSeconds(60);
+    }
+
+    @Getter
+    @Setter
+    public static class PipelineProperties {
+        /**
+         * Run the fetch and the transcode as separate stages, each with its own pool. When false,
+         * or when ffmpeg is not available, yt-dlp does both in a single process per download.
+         */
+        private boolean splitStages = true;
+
+        /** Number of concurrent ffmpeg encodes; 0 means one per available processor. */
+        private int transcodeWorkers = 0;
+
+        /**
+         * Fetched files that may wait for a transcode worker. When the hand-off is full, download
+         * workers hold on to their file until a transcode slot frees up.
+         */
+        private int handoffCapacity = 4;
+
+        /**
+         * Longest time the live audio stream of a job may stay open. It follows the job from the
+         * queue to the end of the transcode, far longer than the general async request timeout.
+         */
+        private Duration streamTimeout = Duration.ofHours(2);
+
+        public int effectiveTranscodeWorkers() {
+            return transcodeWorkers > 0 ? transcodeWorkers : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class BatchProperties {
+        /** Maximum number of videos in one batch, including those listed from a playlist. */
+        private int maxItems = 100;
+
+        /** Downloads of one batch that may be queued or running at the same time. */
+        private int concurrency = 3;
+
+        /** Unfinished batches one client may have at once; 0 means no limit. */
+        private int clientLimit = 2;
+
+        /** How long a finished batch stays queryable. */
+        private Duration ttl = Duration.ofMinutes(30);
+
+        /**
+         * Longest time the ZIP of a batch may stream. The response stays open until the last video
+         * is done, far longer than the general async request timeout.
+         */
+        private Duration streamTimeout = Duration.ofHours(4);
+    }
+
+    @Getter
+    @Setter
+    public static class JournalProperties {
+        /** Record jobs in a local journal, so queued jobs and finished results survive a restart. */
+        private boolean enabled = true;
+
+        /** Directory holding the journal file. Kept across restarts. */
+        private String directory = Paths.get(System.getProperty("java.io.tmpdir"), "yt-journal").toString();
+
+        /**
+         * Longest time a record may wait before it is written and fsynced, in one batch with the
+         * others; a crash loses at most this window. The journal remembers at most
+         * {@code status.max-entries} jobs, dropping the oldest finished ones first.
+         */
+        private Duration syncInterval = Duration.ofMillis(100);
+
+        /** How often the journal is rewritten with only the jobs it still has to remember. */
+        private Duration compactionInterval = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class InfoProperties {
+        /**
+         * How long fetched metadata is reused, by the info endpoint and by downloads of the same
+         * video. Must stay well under the lifetime of the stream URLs yt-dlp puts in the metadata.
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /** Videos whose metadata is kept at most. */
+        private int maxEntries = 1000;
+
+        /** Total size of the kept metadata JSON, least recently used entries go first. */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+    }
+
+    @Getter
+    @Setter
+    public static class WorkerPoolProperties {
+        /**
+         * Run yt-dlp inside long-lived Python workers that import it once, instead of starting a
+         * new interpreter for every download. Downloads spawn yt-dlp as before whenever no worker
+         * is available.
+         */
+        private boolean enabled = false;
+
+        /** Number of workers kept warm; 0 uses the number of download workers. */
+        private int size = 0;
+
+        /** Jobs a worker runs before it is replaced, bounding what a long-lived interpreter accumulates. */
+        private int maxJobsPerWorker = 50;
+
+        /**
+         * Command starting one worker. Empty runs the bundled worker script with the python3 next
+         * to the yt-dlp executable, or the one on the PATH.
+         */
+        private List<String> command = new ArrayList<>();
+
+        /** Time a new worker has to import yt-dlp and report ready. */
+        private Duration startTimeout = Duration.ofSeconds(15);
+
+        /** A worker idle for longer than this must answer a ping before it gets a job. */
+        private Duration healthCheckInterval = Duration.ofSeconds(30);
+
+        /** Time a worker has to answer a ping. */
+        private Duration healthCheckTimeout = Duration.ofSeconds(2);
+
+        /** Wait before starting a worker again after one failed to start. */
+        private Duration restartBackoff = Duration.ofSeconds(30);
+
+        public int effectiveSize(int downloadWorkers) {
+            return size > 0 ? size : downloadWorkers;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.abreu.download_link.config;
+
+import com.abreu.download_link.service.DownloadExecutor;
+import com.abreu.download_link.service.FileLeases;
+import com.abreu.download_link.service.FileSystemManager;
+import com.abreu.download_link.service.JobEventBroadcaster;
+import com.abreu.download_link.service.ResultCache;
+import com.abreu.download_link.service.TranscodeExecutor;
+import com.abreu.download_link.service.YtDlpWorkerPool;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Gauges over the state of the download pipeline. They are only read when the registry is
+ * scraped, so none of them costs anything on the request path.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder downloadPipelineGauges(DownloadExecutor executor, TranscodeExecutor transcoder,
+                                              FileSystemManager storage, ResultCache resultCache,
+                                              FileLeases leases, JobEventBroadcaster events,
+                                              YtDlpWorkerPool workerPool) {
+        return registry -> {
+            Gauge.builder("downloader.queue.depth", executor, DownloadExecutor::getQueueDepth)
+                    .description("Downloads waiting for a free worker")
+                    .register(registry);
+            Gauge.builder("downloader.workers.active", executor, DownloadExecutor::getActiveCount)
+                    .description("Workers currently running a download")
+                    .register(registry);
+            Gauge.builder("downloader.transcode.queue.depth", transcoder, TranscodeExecutor::getQueueDepth)
+                    .description("Fetched files waiting for a transcode worker")
+                    .register(registry);
+            Gauge.builder("downloader.transcode.workers.active", transcoder, TranscodeExecutor::getActiveCount)
+                    .description("Workers currently running ffmpeg")
+                    .register(registry);
+            Gauge.builder("downloader.transcode.blocked", transcoder, TranscodeExecutor::getWaitingCount)
+                    .description("Download workers waiting because the transcode hand-off is full")
+                    .register(registry);
+
+            Gauge.builder("downloader.storage.used", storage, FileSystemManager::getBytesInUse)
+                    .description("Bytes held by cached results, files awaiting cleanup and running downloads")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("downloader.storage.reserved", storage, FileSystemManager::getReservedBytes)
+                    .description("Bytes reserved by running downloads")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("downloader.storage.free", storage, FileSystemManager::getFreeBytes)
+                    .description("Usable disk space left after reservations")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("downloader.cache.size", resultCache, ResultCache::getUsedBytes)
+                    .description("Bytes held by the result cache")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("downloader.cache.entries", resultCache, ResultCache::size)
+                    .description("Entries in the result cache")
+                    .register(registry);
+
+            Gauge.builder("downloader.leases.active", leases, FileLeases::getActiveLeases)
+                    .description("Open leases on stored files, one per transfer in progress")
+                    .register(registry);
+            Gauge.builder("downloader.leases.files", leases, FileLeases::getLeasedFileCount)
+                    .description("Stored files with at least one open lease")
+                    .register(registry);
+            FunctionCounter.builder("downloader.leases.acquired", leases, FileLeases::getAcquiredTotal)
+                    .description("Leases taken on stored files")
+                    .register(registry);
+
+            Gauge.builder("downloader.events.subscribers", events, JobEventBroadcaster::getSubscriberCount)
+                    .description("Open Server-Sent Events streams")
+                    .register(registry);
+
+            Gauge.builder("downloader.ytdlp.workers", workerPool, YtDlpWorkerPool::getIdleCount)
+                    .description("Pooled yt-dlp workers")
+                    .tag("state", "idle")
+                    .register(registry);
+            Gauge.builder("downloader.ytdlp.workers", workerPool, YtDlpWorkerPool::getBusyCount)
+                    .description("Pooled yt-dlp workers")
+                    .tag("state", "busy")
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.abreu.download_link.config;
+
+import com.abreu.download_link.service.ExternalStatusStore;
+import com.abreu.download_link.service.InMemoryStatusStore;
+import com.abreu.download_link.service.KeyValueClient;
+import com.abreu.download_link.service.StatusStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class StatusStoreConfig {
+
+    @Bean
+    public StatusStore statusStore(DownloadProperties properties, ObjectProvider<KeyValueClient> keyValueClient) {
+        KeyValueClient client = keyValueClient.getIfAvailable();
+        if (client != null) {
+            log.info("Using shared key-value status store");
+            return new ExternalStatusStore(client, properties);
+        }
+        log.info("Using in-memory status store (max {} entries)", properties.getStatus().getMaxEntries());
+        return new InMemoryStatusStore(properties);
+    }
+}
@@ -0,0 +1,116 @@
+package com.abreu.download_link.controller;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.BatchRequest;
+import com.abreu.download_link.domain.BatchStatusResponse;
+import com.abreu.download_link.domain.BatchSubmissionResponse;
+import com.abreu.download_link.service.BatchService;
+import com.abreu.download_link.service.DownloadMetrics;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/batch")
+@CrossOrigin(origins = "*")
+@Tag(name = "YouTube Downloader", description = "APIs for downloading YouTube audio")
+@RequiredArgsConstructor
+public class BatchController {
+
+    private static final MediaType APPLICATION_ZIP = MediaType.parseMediaType("application/zip");
+
+    private final BatchService batchService;
+    private final DownloadMetrics metrics;
+    private final ClientIds clientIds;
+    private final DownloadProperties properties;
+
+    @PostMapping
+    @Operation(
+            summary = "Download several videos",
+            description = "Submit a list of YouTube URLs or a playlist URL. Every video becomes a download job; " +
+                    "only a few of them run at the same time, at bulk priority, so a large batch does not hold every worker",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Batch accepted",
+                            content = @Content(schema = @Schema(implementation = BatchSubmissionResponse.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Invalid URLs or too many videos"),
+                    @ApiResponse(responseCode = "429", description = "The client already has too many batches running; see Retry-After")
+            }
+    )
+    public ResponseEntity<BatchSubmissionResponse> submitBatch(@RequestBody @Valid BatchRequest request,
+                                                               HttpServletRequest servletRequest) {
+        String batchId = batchService.submit(request, clientIds.of(servletRequest));
+        URI statusUri = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/batch/{id}")
+                .buildAndExpand(batchId)
+                .toUri();
+
+        return ResponseEntity.accepted()
+                .location(statusUri)
+                .body(new BatchSubmissionResponse(batchId, statusUri.toString(), statusUri + "/zip",
+                        batchService.getStatus(batchId).status()));
+    }
+
+    @GetMapping("/{id}")
+    @Operation(
+            summary = "Get batch status",
+            description = "Get the aggregate progress of a batch and the state of each of its videos",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Batch found",
+                            content = @Content(schema = @Schema(implementation = BatchStatusResponse.class))
+                    ),
+                    @ApiResponse(responseCode = "404", description = "Unknown batch")
+            }
+    )
+    public ResponseEntity<BatchStatusResponse> getBatch(
+            @Parameter(description = "Identifier returned when the batch was submitted", required = true)
+            @PathVariable String id) {
+        return ResponseEntity.ok(batchService.getStatus(id));
+    }
+
+    @GetMapping("/{id}/zip")
+    @Operation(
+            summary = "Download a batch as ZIP",
+            description = "Streams a ZIP with the files of a batch. Each file is added as soon as its download " +
+                    "finishes, so the transfer starts before the batch is done; failed videos are listed in errors.txt",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "ZIP stream"),
+                    @ApiResponse(responseCode = "404", description = "Unknown batch")
+            }
+    )
+    public WebAsyncTask<Void> getBatchZip(
+            @Parameter(description = "Identifier returned when the batch was submitted", required = true)
+            @PathVariable String id,
+            HttpServletResponse response) {
+        // valida antes de abrir a resposta: um lote desconhecido ainda recebe 404
+        batchService.getStatus(id);
+        response.setContentType(APPLICATION_ZIP.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"batch-" + id + ".zip\"");
+        // o ZIP só termina com o último vídeo do lote; o timeout global de requests async cortaria o arquivo
+        return new WebAsyncTask<>(properties.getBatch().getStreamTimeout().toMillis(), () -> {
+            long start = System.nanoTime();
+            long sent = batchService.writeZip(id, response.getOutputStream());
+            metrics.recordServed(sent, System.nanoTime() - start);
+            return null;
+        });
+    }
+}
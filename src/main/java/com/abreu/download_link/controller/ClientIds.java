@@ -0,0 +1,57 @@
+package com.abreu.download_link.controller;
+
+import com.abreu.download_link.config.DownloadProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Identifies the client a download is queued for, the unit the download executor shares workers
+ * between: a configured API key when the request carries one, the remote address otherwise. Keys
+ * that are not configured count for nothing, or a client could claim a new share of the queue
+ * with every request. Behind a reverse proxy the address comes from the forwarded headers once
+ * {@code server.forward-headers-strategy} is set.
+ */
+@Component
+class ClientIds {
+
+    static final String API_KEY_HEADER = "X-API-Key";
+
+    // chave -> id do cliente; o id leva um hash, para a chave não aparecer em logs
+    private final Map<String, String> clientByKey;
+
+    ClientIds(DownloadProperties properties) {
+        this.clientByKey = properties.getExecutor().getApiKeys().stream()
+                .map(String::strip)
+                .filter(key -> !key.isEmpty())
+                .distinct()
+                .collect(Collectors.toUnmodifiableMap(Function.identity(), key -> "key:" + fingerprint(key)));
+    }
+
+    String of(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if (apiKey != null) {
+            String client = clientByKey.get(apiKey.strip());
+            if (client != null) {
+                return client;
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private static String fingerprint(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,19 +1,32 @@
 package com.abreu.download_link.controller;
 
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadJob;
 import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.JobStatusResponse;
+import com.abreu.download_link.domain.JobSubmissionResponse;
+import com.abreu.download_link.domain.StoredFile;
+import com.abreu.download_link.domain.VideoInfo;
 import com.abreu.download_link.domain.YoutubeLinkRequest;
-import com.abreu.download_link.domain.YoutubeResponse;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.service.AudioStream;
+import com.abreu.download_link.service.DownloadMetrics;
+import com.abreu.download_link.service.JobEventBroadcaster;
+import com.abreu.download_link.service.VideoInfoService;
 import com.abreu.download_link.service.YoutubeDownloadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.util.concurrent.CompletableFuture;
+import java.io.IOException;
+import java.net.URI;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -30,29 +43,150 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 public class DownloadController {
 
     private final YoutubeDownloadService downloadService;
+    private final JobEventBroadcaster eventBroadcaster;
+    private final VideoInfoService videoInfoService;
+    private final DownloadMetrics metrics;
+    private final ClientIds clientIds;
+    private final long streamTimeoutMillis;
 
-    public DownloadController(YoutubeDownloadService downloadService) {
+    public DownloadController(YoutubeDownloadService downloadService, JobEventBroadcaster eventBroadcaster,
+                              VideoInfoService videoInfoService, DownloadMetrics metrics, ClientIds clientIds,
+                              DownloadProperties properties) {
         this.downloadService = downloadService;
+        this.eventBroadcaster = eventBroadcaster;
+        this.videoInfoService = videoInfoService;
+        this.metrics = metrics;
+        this.clientIds = clientIds;
+        this.streamTimeoutMillis = properties.getPipeline().getStreamTimeout().toMillis();
+    }
+
+    @GetMapping("/info")
+    @Operation(
+            summary = "Get video info",
+            description = "Title, duration, thumbnail and estimated audio size of a video, read without " +
+                    "downloading it. The metadata is cached for a while and reused when the video is downloaded",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Video info",
+                            content = @Content(schema = @Schema(implementation = VideoInfo.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "The URL does not point at a video, or it could not be read")
+            }
+    )
+    public ResponseEntity<VideoInfo> getInfo(
+            @Parameter(description = "YouTube URL of the video", required = true)
+            @RequestParam String url) {
+        return ResponseEntity.ok(videoInfoService.getInfo(url));
     }
 
     @PostMapping("/download")
     @Operation(
             summary = "Download audio from YouTube",
-            description = "Submit a YouTube URL to start audio download",
+            description = "Submit a YouTube URL to start audio download. The job runs in the background " +
+                    "and its progress is available at the returned status URL. Workers are shared fairly between " +
+                    "clients, identified by a configured X-API-Key or else by IP address",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Download job accepted",
+                            content = @Content(schema = @Schema(implementation = JobSubmissionResponse.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Invalid URL provided"),
+                    @ApiResponse(responseCode = "429", description = "Download capacity exhausted, or too many downloads of this client waiting; retry later"),
+                    @ApiResponse(responseCode = "507", description = "Not enough disk space, retry later")
+            }
+    )
+    public ResponseEntity<JobSubmissionResponse> downloadAudio(
+            @RequestBody @Valid YoutubeLinkRequest request,
+            HttpServletRequest servletRequest) {
+        DownloadJob job = downloadService.submit(request, clientIds.of(servletRequest));
+        URI statusUri = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/jobs/{id}")
+                .buildAndExpand(job.id())
+                .toUri();
+
+        return ResponseEntity.accepted()
+                .location(statusUri)
+                .body(new JobSubmissionResponse(job.id(), statusUri.toString(), Status.QUEUED));
+    }
+
+    @GetMapping("/jobs/{id}")
+    @Operation(
+            summary = "Get job status",
+            description = "Get the state of a download job, its place in the queue while it waits for a worker " +
+                    "and, once completed, the link to the audio file",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Job found",
+                            content = @Content(schema = @Schema(implementation = JobStatusResponse.class))
+                    ),
+                    @ApiResponse(responseCode = "404", description = "Unknown job")
+            }
+    )
+    public ResponseEntity<JobStatusResponse> getJob(
+            @Parameter(description = "Identifier returned when the job was submitted", required = true)
+            @PathVariable String id) {
+        DownloadStatus status = downloadService.getJobStatus(id);
+
+        String downloadUrl = null;
+        if (status.status() == Status.COMPLETED && status.fileName() != null) {
+            downloadUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/api/download/{filename}")
+                    .buildAndExpand(status.fileName())
+                    .encode()
+                    .toUriString();
+        }
+
+        Integer queuePosition = null;
+        if (status.status() == Status.QUEUED) {
+            int position = downloadService.queuePosition(id);
+            queuePosition = position > 0 ? position : null;
+        }
+
+        return ResponseEntity.ok(new JobStatusResponse(id, status.status(), status.message(), downloadUrl,
+                status.progress(), queuePosition));
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    @Operation(
+            summary = "Cancel a job",
+            description = "Cancels a queued or running job. The yt-dlp process is stopped, together with its " +
+                    "children, unless another job is waiting for the same video",
             responses = {
                     @ApiResponse(
                             responseCode = "200",
-                            description = "Download initiated",
-                            content = @Content(schema = @Schema(implementation = YoutubeResponse.class))
+                            description = "Job cancelled",
+                            content = @Content(schema = @Schema(implementation = JobStatusResponse.class))
                     ),
-                    @ApiResponse(responseCode = "400", description = "Invalid URL provided")
+                    @ApiResponse(responseCode = "404", description = "Unknown job"),
+                    @ApiResponse(responseCode = "409", description = "Job already finished")
+            }
+    )
+    public ResponseEntity<JobStatusResponse> cancelJob(
+            @Parameter(description = "Identifier returned when the job was submitted", required = true)
+            @PathVariable String id) {
+        DownloadStatus status = downloadService.cancelJob(id);
+        return ResponseEntity.ok(new JobStatusResponse(id, status.status(), status.message(), null, null, null));
+    }
+
+    @GetMapping(path = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Stream job events",
+            description = "Server-Sent Events stream of a download job. Sends the current state right away, " +
+                    "then a 'status' event on every state change and 'progress' events while downloading. " +
+                    "The stream closes once the job is completed or failed",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Event stream opened"),
+                    @ApiResponse(responseCode = "404", description = "Unknown job")
             }
     )
-    public CompletableFuture<ResponseEntity<YoutubeResponse>> downloadAudio(
-            @RequestBody @Valid YoutubeLinkRequest request) {
-        return downloadService.downloadAudio(request).thenApply(
-                response -> ResponseEntity.status(HttpStatus.CREATED).body(response)
-        );
+    public SseEmitter streamJobEvents(
+            @Parameter(description = "Identifier returned when the job was submitted", required = true)
+            @PathVariable String id) {
+        DownloadStatus current = downloadService.getJobStatus(id);
+        return eventBroadcaster.subscribe(id, () -> downloadService.findJobStatus(id).orElse(current));
     }
 
     @GetMapping("/status")
@@ -66,18 +200,57 @@ public class DownloadController {
         return ResponseEntity.ok(downloadService.getStatus(url));
     }
 
+    @GetMapping("/download/{id}/stream")
+    @Operation(
+            summary = "Stream audio of a job",
+            description = "Streams the audio of a job while it is still being converted. Several clients can " +
+                    "follow the same job; once the job is completed the stored file is streamed instead",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Audio stream"),
+                    @ApiResponse(responseCode = "404", description = "Unknown job"),
+                    @ApiResponse(responseCode = "409", description = "The job failed")
+            }
+    )
+    public WebAsyncTask<Void> streamAudio(
+            @Parameter(description = "Identifier returned when the job was submitted", required = true)
+            @PathVariable String id,
+            HttpServletResponse response) {
+        AudioStream stream = downloadService.openStream(id);
+        response.setContentType(stream.mediaType());
+        // o stream dura o job inteiro, fila incluída; o timeout global de requests async o cortaria
+        return new WebAsyncTask<>(streamTimeoutMillis, () -> {
+            long start = System.nanoTime();
+            long sent = stream.writeTo(response.getOutputStream());
+            metrics.recordServed(sent, System.nanoTime() - start);
+            return null;
+        });
+    }
+
     @GetMapping("/download/{filename}")
-    @Operation(summary = "Download audio file", description = "Download the audio file by filename")
-    public ResponseEntity<Resource> getFile(
+    @Operation(
+            summary = "Download audio file",
+            description = "Download the audio file by filename. Supports single byte ranges (Range/If-Range) " +
+                    "and conditional requests through ETag and Last-Modified",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Full file"),
+                    @ApiResponse(responseCode = "206", description = "Requested byte range"),
+                    @ApiResponse(responseCode = "304", description = "File not modified"),
+                    @ApiResponse(responseCode = "404", description = "File not found"),
+                    @ApiResponse(responseCode = "416", description = "Range not satisfiable")
+            }
+    )
+    public void getFile(
             @Parameter(description = "Name of the downloaded file", required = true)
-            @PathVariable String filename) {
-
-        Resource fileResource = downloadService.getFile(filename);
+            @PathVariable String filename,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                .body(fileResource);
+        // a lease vale até o corpo ser escrito ou a conexão cair
+        long start = System.nanoTime();
+        try (StoredFile file = downloadService.getFile(filename)) {
+            long sent = FileResponseWriter.write(file, request, response);
+            metrics.recordServed(sent, System.nanoTime() - start);
+        }
     }
 
 }
\ No newline at end of file
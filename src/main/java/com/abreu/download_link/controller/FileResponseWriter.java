@@ -0,0 +1,135 @@
+package com.abreu.download_link.controller;
+
+import com.abreu.download_link.domain.StoredFile;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a stored audio file honouring conditional requests (ETag, Last-Modified) and single byte
+ * ranges, including If-Range. The body is handed to Tomcat's sendfile when the connector supports
+ * it, so the bytes go from the page cache to the socket without passing through the JVM heap;
+ * otherwise it is copied with {@link FileChannel#transferTo}. Tomcat opens the file for sendfile
+ * only after the handler returns, after the caller has released its lease; the lease grace period
+ * covers that gap.
+ */
+final class FileResponseWriter {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // mesmo limite do DefaultServlet do Tomcat: abaixo disso o sendfile não compensa
+    static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private FileResponseWriter() {
+    }
+
+    /** Writes the response and returns the number of body bytes sent or handed to sendfile. */
+    static long write(StoredFile file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Trata If-None-Match/If-Modified-Since (304) e If-Match/If-Unmodified-Since (412),
+        // e já define os cabeçalhos ETag e Last-Modified
+        if (new ServletWebRequest(request, response).checkNotModified(file.eTag(), file.lastModified())) {
+            return 0;
+        }
+
+        long length = file.size();
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.displayName() + "\"");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range = requestedRange(file, request);
+        if (range != null) {
+            start = range.getRangeStart(length);
+            end = Math.min(range.getRangeEnd(length), length - 1);
+            if (start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return 0;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return 0;
+        }
+        transfer(file.path(), start, count, request, response);
+        return count;
+    }
+
+    /**
+     * Returns the single range to serve, or {@code null} when the full entity must be sent: no
+     * Range header, a malformed one, several ranges, or an If-Range validator that no longer
+     * matches.
+     */
+    private static HttpRange requestedRange(StoredFile file, HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null || !ifRangeMatches(file, request)) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean ifRangeMatches(StoredFile file, HttpServletRequest request) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range exige comparação forte: ETags fracas nunca casam
+            return ifRange.equals(file.eTag());
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == file.lastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void transfer(Path path, long start, long count,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (count >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    throw new IOException("File truncated while sending: " + path);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+}
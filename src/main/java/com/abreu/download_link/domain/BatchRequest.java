@@ -0,0 +1,52 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.AudioFormat;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Pattern;
+
+import java.util.List;
+
+@Schema(
+        name = "BatchRequest",
+        description = "Several videos to download together, given as a list of URLs or as a playlist"
+)
+public record BatchRequest(
+        @ArraySchema(
+                arraySchema = @Schema(description = "YouTube video URLs. Leave empty when a playlist is given"),
+                schema = @Schema(example = "https://www.youtube.com/watch?v=dQw4w9WgXcQ")
+        )
+        List<@Pattern(regexp = YoutubeLinkRequest.URL_PATTERN, message = YoutubeLinkRequest.URL_MESSAGE) String> urls,
+
+        @Pattern(
+                regexp = "^(https?://)?(www\\.|music\\.)?youtube\\.com/(playlist\\?|watch\\?).*list=[a-zA-Z0-9_-]+.*",
+                message = "Invalid YouTube playlist URL. Please provide a URL with a list parameter."
+        )
+        @Schema(
+                description = "YouTube playlist URL whose videos are downloaded. Leave empty when urls are given",
+                example = "https://www.youtube.com/playlist?list=PLFgquLnL59alCl_2TQvOiD5Vgm1hCaGSI"
+        )
+        String playlistUrl,
+
+        @Schema(
+                description = "Audio format of every file in the batch",
+                example = "mp3",
+                defaultValue = "mp3"
+        )
+        AudioFormat format
+) {
+    public BatchRequest {
+        if (format == null) {
+            format = AudioFormat.MP3;
+        }
+    }
+
+    @AssertTrue(message = "Provide either urls or playlistUrl")
+    @Schema(hidden = true)
+    public boolean isSingleSource() {
+        boolean hasUrls = urls != null && !urls.isEmpty();
+        boolean hasPlaylist = playlistUrl != null && !playlistUrl.isBlank();
+        return hasUrls != hasPlaylist;
+    }
+}
@@ -0,0 +1,66 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.Status;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(
+        name = "BatchStatusResponse",
+        description = "Aggregate state of a batch and the state of each of its videos"
+)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchStatusResponse(
+        @Schema(description = "Identifier of the batch", example = "Xb4pQ7rT1sM")
+        String batchId,
+
+        @Schema(
+                description = "QUEUED while a playlist is being listed, IN_PROGRESS while any video is pending, "
+                        + "then COMPLETED, or FAILED when no video could be downloaded",
+                requiredMode = Schema.RequiredMode.REQUIRED
+        )
+        Status status,
+
+        @Schema(description = "Additional status message or details", example = "12 of 50 videos done")
+        String message,
+
+        @Schema(description = "Number of videos in the batch", example = "50")
+        int total,
+
+        @Schema(description = "Videos downloaded or taken from the cache", example = "11")
+        int completed,
+
+        @Schema(description = "Videos that could not be downloaded", example = "1")
+        int failed,
+
+        @Schema(description = "Overall completion, from 0 to 100, counting running downloads by their progress", example = "26.4")
+        double percent,
+
+        @Schema(description = "State of each video, in request order")
+        List<Item> items
+) {
+
+    @Schema(name = "BatchItemStatus", description = "State of one video of a batch")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Item(
+            @Schema(description = "URL of the video", example = "https://www.youtube.com/watch?v=dQw4w9WgXcQ")
+            String url,
+
+            @Schema(description = "Job downloading the video, once it has been submitted", example = "q3V9xK2mTnA")
+            String jobId,
+
+            @Schema(description = "Status of the video", requiredMode = Schema.RequiredMode.REQUIRED)
+            Status status,
+
+            @Schema(description = "Additional status message or details", example = "Download in progress")
+            String message,
+
+            @Schema(description = "Name of the produced file once the video is completed", example = "dQw4w9WgXcQ-mp3-0.mp3")
+            String fileName,
+
+            @Schema(description = "Live progress while the video is downloading")
+            DownloadProgress progress
+    ) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.Status;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(
+        name = "BatchSubmissionResponse",
+        description = "Acknowledgement returned when a batch is accepted"
+)
+public record BatchSubmissionResponse(
+        @Schema(
+                description = "Identifier of the accepted batch",
+                example = "Xb4pQ7rT1sM"
+        )
+        String batchId,
+
+        @Schema(
+                description = "URL to poll for the aggregate progress of the batch",
+                example = "http://localhost:8080/api/batch/Xb4pQ7rT1sM"
+        )
+        String statusUrl,
+
+        @Schema(
+                description = "URL of the ZIP with every file of the batch, streamed as downloads finish",
+                example = "http://localhost:8080/api/batch/Xb4pQ7rT1sM/zip"
+        )
+        String zipUrl,
+
+        @Schema(
+                description = "Status of the batch at submission time",
+                requiredMode = Schema.RequiredMode.REQUIRED
+        )
+        Status status,
+
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss", timezone = "America/Sao_Paulo")
+        @Schema(
+                description = "Timestamp of the submission",
+                example = "31-12-2023 23:59:59",
+                requiredMode = Schema.RequiredMode.REQUIRED
+        )
+        Instant timestamp
+) {
+    public BatchSubmissionResponse(String batchId, String statusUrl, String zipUrl, Status status) {
+        this(batchId, statusUrl, zipUrl, status, Instant.now());
+    }
+}
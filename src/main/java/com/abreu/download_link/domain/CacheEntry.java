@@ -0,0 +1,15 @@
+package com.abreu.download_link.domain;
+
+public record CacheEntry(
+        CacheKey key,
+        String storedName,
+        String displayName,
+        long size,
+        long createdAt,
+        long lastAccess,
+        long hits
+) {
+    public CacheEntry touch(long now) {
+        return new CacheEntry(key, storedName, displayName, size, createdAt, now, hits + 1);
+    }
+}
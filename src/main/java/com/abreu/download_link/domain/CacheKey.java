@@ -0,0 +1,32 @@
+package com.abreu.download_link.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+public record CacheKey(
+        String videoKey,
+        String format,
+        String quality
+) {
+    private static final Pattern VIDEO_ID = Pattern.compile("[a-zA-Z0-9_-]{11}");
+
+    /**
+     * File-system safe identifier of the cached artefact, e.g. {@code dQw4w9WgXcQ-mp3-0}.
+     */
+    public String id() {
+        String video = VIDEO_ID.matcher(videoKey).matches() ? videoKey : digest(videoKey);
+        return video + "-" + format + "-" + quality;
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.abreu.download_link.domain;
+
+import java.util.concurrent.CompletableFuture;
+
+public record DownloadJob(
+        String id,
+        String url,
+        CompletableFuture<YoutubeResponse> result
+) {
+}
@@ -0,0 +1,29 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "DownloadProgress",
+        description = "Progress reported by yt-dlp for a running download"
+)
+public record DownloadProgress(
+        @Schema(description = "Current step of the download")
+        DownloadPhase phase,
+
+        @Schema(description = "Completion of the current step, from 0 to 100", example = "42.3")
+        double percent,
+
+        @Schema(description = "Bytes downloaded so far", example = "2202009")
+        long downloadedBytes,
+
+        @Schema(description = "Total size in bytes, or -1 when unknown", example = "5347737")
+        long totalBytes,
+
+        @Schema(description = "Download speed in bytes per second, or -1 when unknown", example = "1258291")
+        long speedBytesPerSecond,
+
+        @Schema(description = "Estimated seconds left, or -1 when unknown", example = "3")
+        long etaSeconds
+) {
+}
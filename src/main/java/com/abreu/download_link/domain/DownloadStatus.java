@@ -2,12 +2,14 @@ package com.abreu.download_link.domain;
 
 import com.abreu.download_link.domain.enums.Status;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 @Schema(
         name = "DownloadStatus",
         description = "Represents the current status of a download process"
 )
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record DownloadStatus(
         @Schema(
                 description = "Current status of the download",
@@ -19,6 +21,22 @@ public record DownloadStatus(
                 description = "Additional status message or details",
                 example = "Download is 50% complete"
         )
-        String message
+        String message,
+
+        @Schema(
+                description = "Name of the produced file once the download is completed",
+                example = "Rick_Astley_-_Never_Gonna_Give_You_Up.mp3"
+        )
+        String fileName,
+
+        @Schema(description = "Live progress of the download while it is running")
+        DownloadProgress progress
 ) {
-}
\ No newline at end of file
+    public DownloadStatus(Status status, String message) {
+        this(status, message, null, null);
+    }
+
+    public DownloadStatus(Status status, String message, String fileName) {
+        this(status, message, fileName, null);
+    }
+}
@@ -0,0 +1,35 @@
+package com.abreu.download_link.domain;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A reader's hold on a stored file. The file is not deleted while any lease on it is open;
+ * closing the lease more than once has no further effect.
+ */
+public final class FileLease implements AutoCloseable {
+
+    private final Path path;
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public FileLease(Path path, Runnable onRelease) {
+        this.path = path;
+        this.onRelease = onRelease;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            onRelease.run();
+        }
+    }
+}
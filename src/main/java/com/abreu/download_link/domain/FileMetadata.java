@@ -1,24 +1,47 @@
 package com.abreu.download_link.domain;
 
-import lombok.Getter;
-import lombok.Setter;
-
 import java.time.Instant;
 
-@Getter
-@Setter
+/**
+ * Usage state of a served file: how many transfers currently hold a lease on it and when that
+ * count last changed. Both fields change together and are read from the cleanup thread, so every
+ * access goes through the object's monitor.
+ */
 public class FileMetadata {
-    private boolean inUse;
+    private int leases;
     private Instant lastUpdated;
 
-    public FileMetadata(boolean inUse) {
-        this.inUse = inUse;
-        this.lastUpdated = Instant.now();
+    public FileMetadata(Instant now) {
+        this.lastUpdated = now;
+    }
+
+    public synchronized boolean isInUse() {
+        return leases > 0;
+    }
+
+    public synchronized int getLeases() {
+        return leases;
+    }
+
+    public synchronized Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public synchronized int acquire(Instant now) {
+        lastUpdated = now;
+        return ++leases;
+    }
+
+    public synchronized int release(Instant now) {
+        if (leases == 0) {
+            throw new IllegalStateException("File has no active lease");
+        }
+        lastUpdated = now;
+        return --leases;
     }
 
-    public void setInUse(boolean inUse) {
-        this.inUse = inUse;
-        this.lastUpdated = Instant.now();
+    public synchronized void touch(Instant now) {
+        lastUpdated = now;
     }
 
 }
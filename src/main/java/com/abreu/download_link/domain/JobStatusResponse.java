@@ -0,0 +1,47 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.Status;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "JobStatusResponse",
+        description = "Current state of a download job"
+)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record JobStatusResponse(
+        @Schema(
+                description = "Identifier of the job",
+                example = "q3V9xK2mTnA"
+        )
+        String jobId,
+
+        @Schema(
+                description = "Current status of the job",
+                requiredMode = Schema.RequiredMode.REQUIRED
+        )
+        Status status,
+
+        @Schema(
+                description = "Additional status message or details",
+                example = "Download in progress"
+        )
+        String message,
+
+        @Schema(
+                description = "Link to fetch the audio file, present once the job is completed",
+                example = "http://localhost:8080/api/download/Rick_Astley_-_Never_Gonna_Give_You_Up.mp3"
+        )
+        String downloadUrl,
+
+        @Schema(description = "Live progress of the download while it is running")
+        DownloadProgress progress,
+
+        @Schema(
+                description = "Place of the download among the ones waiting for a worker, starting at 1. " +
+                        "Present while the job is queued",
+                example = "3"
+        )
+        Integer queuePosition
+) {
+}
@@ -0,0 +1,43 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.Status;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(
+        name = "JobSubmissionResponse",
+        description = "Acknowledgement returned when a download job is accepted"
+)
+public record JobSubmissionResponse(
+        @Schema(
+                description = "Identifier of the accepted job",
+                example = "q3V9xK2mTnA"
+        )
+        String jobId,
+
+        @Schema(
+                description = "URL to poll for the job status",
+                example = "http://localhost:8080/api/jobs/q3V9xK2mTnA"
+        )
+        String statusUrl,
+
+        @Schema(
+                description = "Status of the job at submission time",
+                requiredMode = Schema.RequiredMode.REQUIRED
+        )
+        Status status,
+
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss", timezone = "America/Sao_Paulo")
+        @Schema(
+                description = "Timestamp of the submission",
+                example = "31-12-2023 23:59:59",
+                requiredMode = Schema.RequiredMode.REQUIRED
+        )
+        Instant timestamp
+) {
+    public JobSubmissionResponse(String jobId, String statusUrl, Status status) {
+        this(jobId, statusUrl, status, Instant.now());
+    }
+}
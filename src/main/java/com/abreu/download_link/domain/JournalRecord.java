@@ -0,0 +1,64 @@
+package com.abreu.download_link.domain;
+
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.JobPriority;
+import com.abreu.download_link.domain.enums.Status;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of the job journal. A {@code SUBMITTED} record carries the whole job, so a compacted
+ * journal holds one per job; {@code STATUS} records carry only the new state.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record JournalRecord(
+        Type type,
+        String jobId,
+        String url,
+        String videoKey,
+        AudioFormat format,
+        Status status,
+        String message,
+        String fileName,
+        String clientId,
+        JobPriority priority,
+        long at
+) {
+    public enum Type {
+        /** A job was accepted. */
+        SUBMITTED,
+        /** A job changed state. */
+        STATUS,
+        /** A job was rejected right after being registered and never existed for the client. */
+        REMOVED,
+        /** Directory the served files of this run are written to; {@code fileName} holds the path. */
+        DOWNLOADS_DIR
+    }
+
+    public static JournalRecord submitted(String jobId, String url, String videoKey, AudioFormat format,
+                                          String clientId, JobPriority priority, long at) {
+        return new JournalRecord(Type.SUBMITTED, jobId, url, videoKey, format, Status.QUEUED, null, null, clientId, priority, at);
+    }
+
+    public static JournalRecord status(String jobId, DownloadStatus status, long at) {
+        return new JournalRecord(Type.STATUS, jobId, null, null, null, status.status(), status.message(), status.fileName(),
+                null, null, at);
+    }
+
+    public static JournalRecord removed(String jobId, long at) {
+        return new JournalRecord(Type.REMOVED, jobId, null, null, null, null, null, null, null, null, at);
+    }
+
+    public static JournalRecord downloadsDir(String path, long at) {
+        return new JournalRecord(Type.DOWNLOADS_DIR, null, null, null, null, null, null, path, null, null, at);
+    }
+
+    /** The job with the state of a later {@code STATUS} record applied. */
+    public JournalRecord apply(JournalRecord update) {
+        return new JournalRecord(type, jobId, url, videoKey, format, update.status, update.message, update.fileName,
+                clientId, priority, update.at);
+    }
+
+    public DownloadStatus toStatus() {
+        return new DownloadStatus(status, message, fileName);
+    }
+}
@@ -2,6 +2,8 @@ package com.abreu.download_link.domain;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import java.util.List;
+
 @Schema(
         name = "ProcessResult",
         description = "Result of a download process execution"
@@ -26,9 +28,9 @@ public record ProcessResult(
         String error,
 
         @Schema(
-                description = "Standard process output",
-                example = "Download completed successfully"
+                description = "Last lines of the process output, oldest first",
+                example = "[\"[ExtractAudio] Destination: youtube_video.mp3\"]"
         )
-        String output
+        List<String> outputTail
 ) {
-}
\ No newline at end of file
+}
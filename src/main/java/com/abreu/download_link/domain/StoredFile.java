@@ -0,0 +1,22 @@
+package com.abreu.download_link.domain;
+
+import java.nio.file.Path;
+
+/**
+ * A file ready to be served. It holds a lease for the whole transfer and must be closed once the
+ * response body has been written or the connection dropped.
+ */
+public record StoredFile(
+        Path path,
+        String displayName,
+        long size,
+        long lastModified,
+        String eTag,
+        FileLease lease
+) implements AutoCloseable {
+
+    @Override
+    public void close() {
+        lease.close();
+    }
+}
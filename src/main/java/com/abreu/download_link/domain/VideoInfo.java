@@ -0,0 +1,48 @@
+package com.abreu.download_link.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "VideoInfo",
+        description = "Metadata of a video, read without downloading it"
+)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record VideoInfo(
+        @Schema(
+                description = "YouTube video ID",
+                example = "dQw4w9WgXcQ"
+        )
+        String videoId,
+
+        @Schema(
+                description = "Title of the video",
+                example = "Rick Astley - Never Gonna Give You Up (Official Music Video)"
+        )
+        String title,
+
+        @Schema(
+                description = "Channel that published the video",
+                example = "Rick Astley"
+        )
+        String uploader,
+
+        @Schema(
+                description = "Duration in seconds",
+                example = "212"
+        )
+        Long durationSeconds,
+
+        @Schema(
+                description = "URL of the video thumbnail",
+                example = "https://i.ytimg.com/vi/dQw4w9WgXcQ/maxresdefault.jpg"
+        )
+        String thumbnailUrl,
+
+        @Schema(
+                description = "Estimated size in bytes of the best audio stream, the one a download fetches",
+                example = "3437024"
+        )
+        Long estimatedSizeBytes
+) {
+}
@@ -1,5 +1,7 @@
 package com.abreu.download_link.domain;
 
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.JobPriority;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Pattern;
 
@@ -8,16 +10,47 @@ import jakarta.validation.constraints.Pattern;
         description = "Request object containing YouTube URL for processing"
 )
 public record YoutubeLinkRequest(
-        @Pattern(
-                regexp = "^(https?://)?(www\\.)?(youtube\\.com|youtu\\.be)/.*" +
-                         "|" +
-                         "^https?://(?:www\\.)?(?:youtube\\.com/watch\\?v=|youtu\\.be/)([a-zA-Z0-9_-]{11})",
-                message = "Invalid YouTube URL format. Please provide a valid URL."
-        )
+        @Pattern(regexp = YoutubeLinkRequest.URL_PATTERN, message = YoutubeLinkRequest.URL_MESSAGE)
         @Schema(
                 description = "Valid YouTube URL to process",
                 example = "https://www.youtube.com/watch?v=dQw4w9WgXcQ",
                 requiredMode = Schema.RequiredMode.REQUIRED
         )
-        String url
-) {}
+        String url,
+
+        @Schema(
+                description = "Audio format of the file. Formats YouTube already serves are delivered without re-encoding",
+                example = "mp3",
+                defaultValue = "mp3"
+        )
+        AudioFormat format,
+
+        @Schema(
+                description = "Scheduling class. Bulk downloads wait behind interactive ones but still get a share of the workers",
+                example = "interactive",
+                defaultValue = "interactive"
+        )
+        JobPriority priority
+) {
+    public static final String URL_PATTERN = "^(https?://)?(www\\.)?(youtube\\.com|youtu\\.be)/.*" +
+                                             "|" +
+                                             "^https?://(?:www\\.)?(?:youtube\\.com/watch\\?v=|youtu\\.be/)([a-zA-Z0-9_-]{11})";
+    public static final String URL_MESSAGE = "Invalid YouTube URL format. Please provide a valid URL.";
+
+    public YoutubeLinkRequest {
+        if (format == null) {
+            format = AudioFormat.MP3;
+        }
+        if (priority == null) {
+            priority = JobPriority.INTERACTIVE;
+        }
+    }
+
+    public YoutubeLinkRequest(String url, AudioFormat format) {
+        this(url, format, JobPriority.INTERACTIVE);
+    }
+
+    public YoutubeLinkRequest(String url) {
+        this(url, AudioFormat.MP3);
+    }
+}
@@ -0,0 +1,121 @@
+package com.abreu.download_link.domain.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+@Schema(
+        name = "AudioFormat",
+        description = "Audio format of the produced file",
+        enumAsRef = true
+)
+public enum AudioFormat {
+    @Schema(description = "MP3, best VBR quality. Always encoded")
+    MP3("mp3", "0", "bestaudio/best", true,
+            List.of("-codec:a", "libmp3lame", "-q:a", "0")),
+
+    @Schema(description = "AAC in M4A. Served without encoding when YouTube has an m4a stream")
+    M4A("m4a", "192K", "bestaudio[ext=m4a]/bestaudio/best", false,
+            List.of("-codec:a", "aac", "-b:a", "192k")),
+
+    @Schema(description = "Opus in Ogg. Remuxed without encoding from YouTube's opus stream")
+    OPUS("opus", "160K", "bestaudio[acodec=opus]/bestaudio/best", true,
+            List.of("-codec:a", "libopus", "-b:a", "160k")),
+
+    @Schema(description = "Best audio stream exactly as YouTube serves it, usually opus in webm")
+    ORIGINAL("original", "native", "bestaudio/best", false, List.of());
+
+    /** How a fetched stream becomes the requested format. */
+    public enum Conversion {
+        /** The stream already is the requested format. */
+        NONE,
+        /** Same codec in another container: ffmpeg copies the packets. */
+        REMUX,
+        /** The audio has to be decoded and encoded again. */
+        ENCODE
+    }
+
+    private final String value;
+    private final String quality;
+    private final String streamSelector;
+    private final boolean streamable;
+    private final List<String> encoderArguments;
+
+    AudioFormat(String value, String quality, String streamSelector, boolean streamable, List<String> encoderArguments) {
+        this.value = value;
+        this.quality = quality;
+        this.streamSelector = streamSelector;
+        this.streamable = streamable;
+        this.encoderArguments = encoderArguments;
+    }
+
+    @JsonValue
+    public String value() {
+        return value;
+    }
+
+    @JsonCreator
+    public static AudioFormat fromValue(String value) {
+        return Arrays.stream(values())
+                .filter(format -> format.value.equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported audio format: " + value
+                        + ". Use one of " + Arrays.stream(values()).map(AudioFormat::value).collect(Collectors.joining(", "))));
+    }
+
+    /** Quality part of the cache key; also passed to yt-dlp as {@code --audio-quality}. */
+    public String quality() {
+        return quality;
+    }
+
+    /** yt-dlp {@code -f} selector that prefers a stream already in this format. */
+    public String streamSelector() {
+        return streamSelector;
+    }
+
+    /**
+     * Whether the file can be sent while it is being written. The mp4 muxer goes back to patch
+     * the header when it finishes, so an m4a is only served once complete.
+     */
+    public boolean isStreamable() {
+        return streamable;
+    }
+
+    /** Media type of the files of this format; ORIGINAL is assumed to be webm, as YouTube usually serves. */
+    public String mediaType() {
+        return mediaTypeOf(this == ORIGINAL ? "webm" : value);
+    }
+
+    /** Media type of an audio file, by its extension. */
+    public static String mediaTypeOf(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return switch (extension) {
+            case "mp3" -> "audio/mpeg";
+            case "m4a", "mp4" -> "audio/mp4";
+            case "opus", "ogg" -> "audio/ogg";
+            case "webm" -> "audio/webm";
+            default -> "application/octet-stream";
+        };
+    }
+
+    public Conversion conversionFrom(String sourceExtension) {
+        String extension = sourceExtension.toLowerCase(Locale.ROOT);
+        if (this == ORIGINAL || extension.equals(value)) {
+            return Conversion.NONE;
+        }
+        if ((this == M4A && extension.equals("mp4")) || (this == OPUS && (extension.equals("webm") || extension.equals("ogg")))) {
+            return Conversion.REMUX;
+        }
+        return Conversion.ENCODE;
+    }
+
+    /** ffmpeg codec arguments for the given conversion. */
+    public List<String> codecArguments(Conversion conversion) {
+        return conversion == Conversion.REMUX ? List.of("-codec:a", "copy") : encoderArguments;
+    }
+}
@@ -0,0 +1,16 @@
+package com.abreu.download_link.domain.enums;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(
+        name = "DownloadPhase",
+        description = "Step of the yt-dlp pipeline a running download is in",
+        enumAsRef = true
+)
+public enum DownloadPhase {
+    @Schema(description = "Fetching the media stream")
+    DOWNLOADING,
+
+    @Schema(description = "Converting the downloaded stream to the requested audio format")
+    EXTRACTING_AUDIO
+}
@@ -0,0 +1,35 @@
+package com.abreu.download_link.domain.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+@Schema(
+        name = "JobPriority",
+        description = "Scheduling class of a download",
+        enumAsRef = true
+)
+public enum JobPriority {
+    @Schema(description = "Someone is waiting for the file. Goes ahead of bulk work")
+    INTERACTIVE,
+
+    @Schema(description = "Background work such as batches and playlists. Gets a smaller share of the workers")
+    BULK;
+
+    @JsonValue
+    public String value() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    @JsonCreator
+    public static JobPriority fromValue(String value) {
+        return Arrays.stream(values())
+                .filter(priority -> priority.name().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported priority: " + value
+                        + ". Use interactive or bulk"));
+    }
+}
@@ -8,6 +8,9 @@ import io.swagger.v3.oas.annotations.media.Schema;
         enumAsRef = true
 )
 public enum Status {
+    @Schema(description = "Download is waiting for a free worker")
+    QUEUED,
+
     @Schema(description = "Download process is initializing")
     STARTING,
 
@@ -24,5 +27,12 @@ public enum Status {
     ALREADY_EXISTS,
 
     @Schema(description = "Download Failed")
-    FAILED
+    FAILED,
+
+    @Schema(description = "Download cancelled by the client")
+    CANCELLED;
+
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
 }
\ No newline at end of file
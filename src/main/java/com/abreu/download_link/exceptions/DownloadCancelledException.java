@@ -0,0 +1,7 @@
+package com.abreu.download_link.exceptions;
+
+public class DownloadCancelledException extends RuntimeException {
+    public DownloadCancelledException(String message) {
+        super(message);
+    }
+}
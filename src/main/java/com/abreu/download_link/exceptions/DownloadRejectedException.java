@@ -0,0 +1,13 @@
+package com.abreu.download_link.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class DownloadRejectedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public DownloadRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
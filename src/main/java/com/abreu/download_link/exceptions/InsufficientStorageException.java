@@ -0,0 +1,11 @@
+package com.abreu.download_link.exceptions;
+
+/**
+ * A download refused because the disk is too full, even after evicting cached files.
+ */
+public class InsufficientStorageException extends DownloadRejectedException {
+
+    public InsufficientStorageException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
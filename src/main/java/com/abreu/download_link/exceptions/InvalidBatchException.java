@@ -0,0 +1,7 @@
+package com.abreu.download_link.exceptions;
+
+public class InvalidBatchException extends RuntimeException {
+    public InvalidBatchException(String message) {
+        super(message);
+    }
+}
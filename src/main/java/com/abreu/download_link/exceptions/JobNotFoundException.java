@@ -0,0 +1,7 @@
+package com.abreu.download_link.exceptions;
+
+public class JobNotFoundException extends RuntimeException {
+    public JobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.abreu.download_link.exceptions;
+
+public class JobStateConflictException extends RuntimeException {
+    public JobStateConflictException(String message) {
+        super(message);
+    }
+}
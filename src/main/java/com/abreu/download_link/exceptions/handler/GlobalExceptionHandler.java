@@ -3,8 +3,10 @@ package com.abreu.download_link.exceptions.handler;
 import com.abreu.download_link.exceptions.*;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -36,6 +38,46 @@ public class GlobalExceptionHandler {
                 .body(buildErrorMessage(request, BAD_REQUEST, ex.getMessage()));
     }
 
+    @ExceptionHandler(DownloadRejectedException.class)
+    public ResponseEntity<ErrorMessage> handleDownloadRejectedException(DownloadRejectedException ex, HttpServletRequest request) {
+        log.warn("{} - URI: {} - Error: {}", ERROR_PREFIX,
+                request != null ? request.getRequestURI() : "N/A", ex.getMessage());
+        return ResponseEntity
+                .status(TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .contentType(APPLICATION_JSON)
+                .body(buildErrorMessage(request, TOO_MANY_REQUESTS, ex.getMessage()));
+    }
+
+    @ExceptionHandler(InsufficientStorageException.class)
+    public ResponseEntity<ErrorMessage> handleInsufficientStorageException(InsufficientStorageException ex, HttpServletRequest request) {
+        log.warn("{} - URI: {} - Error: {}", ERROR_PREFIX,
+                request != null ? request.getRequestURI() : "N/A", ex.getMessage());
+        return ResponseEntity
+                .status(INSUFFICIENT_STORAGE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .contentType(APPLICATION_JSON)
+                .body(buildErrorMessage(request, INSUFFICIENT_STORAGE, ex.getMessage()));
+    }
+
+    @ExceptionHandler(JobNotFoundException.class)
+    public ResponseEntity<ErrorMessage> handleJobNotFoundException(JobNotFoundException ex, HttpServletRequest request) {
+        logError(ex, request);
+        return ResponseEntity
+                .status(NOT_FOUND)
+                .contentType(APPLICATION_JSON)
+                .body(buildErrorMessage(request, NOT_FOUND, ex.getMessage()));
+    }
+
+    @ExceptionHandler(JobStateConflictException.class)
+    public ResponseEntity<ErrorMessage> handleJobStateConflictException(JobStateConflictException ex, HttpServletRequest request) {
+        logError(ex, request);
+        return ResponseEntity
+                .status(CONFLICT)
+                .contentType(APPLICATION_JSON)
+                .body(buildErrorMessage(request, CONFLICT, ex.getMessage()));
+    }
+
     @ExceptionHandler(FileAlreadyExistsException.class)
     public ResponseEntity<ErrorMessage> handleFileAlreadyExistsException(FileAlreadyExistsException ex, HttpServletRequest request) {
         logError(ex, request);
@@ -54,6 +96,15 @@ public class GlobalExceptionHandler {
                 .body(buildErrorMessage(request, BAD_REQUEST, ex.getMessage()));
     }
 
+    @ExceptionHandler(InvalidBatchException.class)
+    public ResponseEntity<ErrorMessage> handleInvalidBatchException(InvalidBatchException ex, HttpServletRequest request) {
+        logError(ex, request);
+        return ResponseEntity
+                .status(BAD_REQUEST)
+                .contentType(APPLICATION_JSON)
+                .body(buildErrorMessage(request, BAD_REQUEST, ex.getMessage()));
+    }
+
     @ExceptionHandler(FileNameRetrievalException.class)
     public ResponseEntity<ErrorMessage> handleFileNameRetrievalException(FileNameRetrievalException ex, HttpServletRequest request) {
         logError(ex, request);
@@ -72,6 +123,17 @@ public class GlobalExceptionHandler {
                 .body(buildErrorMessage(request, BAD_REQUEST, ex.getMessage()));
     }
 
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ErrorMessage> handleHttpMessageNotReadableException(HttpMessageNotReadableException ex, HttpServletRequest request) {
+        logError(ex, request);
+        // a causa mais interna traz a mensagem útil, ex.: formato de áudio desconhecido
+        Throwable cause = ex.getMostSpecificCause();
+        return ResponseEntity
+                .status(BAD_REQUEST)
+                .contentType(APPLICATION_JSON)
+                .body(buildErrorMessage(request, BAD_REQUEST, cause.getMessage()));
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public final ResponseEntity<ErrorMessage> handleValidationExceptions(MethodArgumentNotValidException ex, HttpServletRequest request) {
         if (request == null) {
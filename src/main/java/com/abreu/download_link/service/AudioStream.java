@@ -0,0 +1,17 @@
+package com.abreu.download_link.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Audio of a job that can be written to a client, either from a finished file or from the file
+ * yt-dlp is still producing.
+ */
+public interface AudioStream {
+
+    /** Media type of the audio, sent as the Content-Type of the stream. */
+    String mediaType();
+
+    /** Writes the audio and returns how many bytes were sent. */
+    long writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,475 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.BatchRequest;
+import com.abreu.download_link.domain.BatchStatusResponse;
+import com.abreu.download_link.domain.DownloadJob;
+import com.abreu.download_link.domain.DownloadProgress;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.StoredFile;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import com.abreu.download_link.domain.enums.JobPriority;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.exceptions.DownloadRejectedException;
+import com.abreu.download_link.exceptions.InvalidBatchException;
+import com.abreu.download_link.exceptions.JobNotFoundException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Downloads several videos as one batch. The videos become ordinary jobs of
+ * {@link YoutubeDownloadService}, so cached files and downloads already running are reused, but a
+ * batch keeps at most {@code concurrency} of its jobs queued or running at once: a large playlist
+ * cannot take every worker and the queue away from single downloads. The next video is submitted
+ * when one of the batch's jobs finishes. Batch jobs are queued at {@link JobPriority#BULK} priority
+ * on behalf of the client that sent the batch, and a client may only have {@code client-limit}
+ * unfinished batches at once, since each one keeps its items in memory.
+ */
+@Service
+@Slf4j
+public class BatchService {
+
+    private static final SecureRandom BATCH_ID_RANDOM = new SecureRandom();
+    private static final String WATCH_URL = "https://www.youtube.com/watch?v=";
+    private static final String ERRORS_ENTRY = "errors.txt";
+
+    private final DownloadProperties.BatchProperties config;
+    private final YoutubeDownloadService downloadService;
+    private final YoutubeProcessManager processManager;
+    private final DownloadExecutor executor;
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+    // conta e registra lotes de um cliente de uma vez só
+    private final Object admission = new Object();
+    private final ScheduledExecutorService coordinator;
+
+    public BatchService(DownloadProperties properties, YoutubeDownloadService downloadService,
+                        YoutubeProcessManager processManager, DownloadExecutor executor) {
+        this.config = properties.getBatch();
+        this.downloadService = downloadService;
+        this.processManager = processManager;
+        this.executor = executor;
+        AtomicInteger counter = new AtomicInteger();
+        this.coordinator = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "batch-coordinator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Accepts a batch and returns its id. A list of URLs starts right away; a playlist is listed
+     * in the background first, and the batch stays QUEUED until then.
+     */
+    public String submit(BatchRequest request) {
+        return submit(request, DownloadExecutor.DEFAULT_CLIENT);
+    }
+
+    /**
+     * Accepts a batch on behalf of a client.
+     *
+     * @throws DownloadRejectedException when the client already has {@code client-limit}
+     *                                   unfinished batches
+     */
+    public String submit(BatchRequest request, String clientId) {
+        if (request.urls() != null && request.urls().size() > config.getMaxItems()) {
+            throw new InvalidBatchException("A batch may have at most " + config.getMaxItems() + " videos");
+        }
+
+        Batch batch = new Batch(newBatchId(), request.format(), clientId);
+        synchronized (admission) {
+            List<Batch> active = batches.values().stream()
+                    .filter(other -> other.clientId.equals(clientId) && !other.isFinished())
+                    .toList();
+            if (config.getClientLimit() > 0 && active.size() >= config.getClientLimit()) {
+                long retryAfter = retryAfterSeconds(active);
+                log.warn("Batch of {} rejected: {} batches still running. Retry after {}s", clientId, active.size(), retryAfter);
+                throw new DownloadRejectedException("Too many batches running for this client, please retry later", retryAfter);
+            }
+            batches.put(batch.id, batch);
+        }
+        if (request.urls() != null && !request.urls().isEmpty()) {
+            synchronized (batch) {
+                batch.plan(request.urls());
+            }
+            pump(batch);
+        } else {
+            coordinator.execute(() -> listPlaylist(batch, request.playlistUrl()));
+        }
+        log.info("Batch {} accepted", batch.id);
+        return batch.id;
+    }
+
+    public BatchStatusResponse getStatus(String batchId) {
+        Batch batch = find(batchId);
+        List<Item> items;
+        boolean planning;
+        String failure;
+        synchronized (batch) {
+            items = batch.items.stream().map(Item::copy).toList();
+            planning = batch.planning;
+            failure = batch.failure;
+        }
+
+        List<BatchStatusResponse.Item> views = new ArrayList<>(items.size());
+        int completed = 0;
+        int failed = 0;
+        double percentSum = 0;
+        for (Item item : items) {
+            DownloadStatus status = item.result;
+            if (status == null && item.jobId != null) {
+                status = downloadService.findJobStatus(item.jobId).orElse(null);
+            }
+            if (status == null) {
+                status = new DownloadStatus(Status.QUEUED, item.jobId == null ? "Waiting for a batch slot" : null);
+            }
+
+            if (status.status() == Status.COMPLETED) {
+                completed++;
+            } else if (status.status().isTerminal()) {
+                failed++;
+            }
+            percentSum += percentOf(status);
+            views.add(new BatchStatusResponse.Item(item.url, item.jobId, status.status(), status.message(),
+                    status.fileName(), status.progress()));
+        }
+
+        int total = items.size();
+        Status overall;
+        String message;
+        if (planning) {
+            overall = Status.QUEUED;
+            message = "Listing playlist";
+        } else if (failure != null) {
+            overall = Status.FAILED;
+            message = failure;
+        } else if (completed + failed < total) {
+            overall = Status.IN_PROGRESS;
+            message = (completed + failed) + " of " + total + " videos done";
+        } else {
+            overall = completed > 0 ? Status.COMPLETED : Status.FAILED;
+            message = completed + " of " + total + " videos downloaded";
+        }
+        double percent = total == 0 ? (planning ? 0 : 100) : Math.round(percentSum / total * 10) / 10.0;
+        return new BatchStatusResponse(batchId, overall, message, total, completed, failed, percent, views);
+    }
+
+    /**
+     * Writes the files of a batch as a ZIP, in the order the downloads finish, and returns the
+     * number of bytes written. Writing starts as soon as the first file is ready and blocks until
+     * the whole batch is done. Audio does not compress, so entries are written without
+     * compression; videos that failed are listed in an {@code errors.txt} entry at the end.
+     */
+    public long writeZip(String batchId, OutputStream out) throws IOException {
+        Batch batch = find(batchId);
+        CountingOutputStream counting = new CountingOutputStream(out);
+        ZipOutputStream zip = new ZipOutputStream(counting);
+        zip.setLevel(Deflater.NO_COMPRESSION);
+
+        Set<String> names = new HashSet<>();
+        List<String> errors = new ArrayList<>();
+        int written = 0;
+        while (true) {
+            Item item;
+            synchronized (batch) {
+                try {
+                    while (written == batch.finished.size() && !batch.isDone()) {
+                        batch.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for batch " + batchId);
+                }
+                if (written == batch.finished.size()) {
+                    if (batch.failure != null) {
+                        errors.add(batch.failure);
+                    }
+                    break;
+                }
+                item = batch.finished.get(written++);
+            }
+
+            DownloadStatus result = item.result;
+            if (result.status() != Status.COMPLETED || result.fileName() == null) {
+                errors.add(item.url + ": " + result.status() + (result.message() != null ? " - " + result.message() : ""));
+                continue;
+            }
+            try (StoredFile file = downloadService.getFile(result.fileName())) {
+                zip.putNextEntry(new ZipEntry(uniqueName(file.displayName(), names)));
+                Files.copy(file.path(), zip);
+                zip.closeEntry();
+            } catch (ResponseStatusException e) {
+                // expirou do cache entre o fim do job e a escrita do zip
+                errors.add(item.url + ": file no longer available");
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            zip.putNextEntry(new ZipEntry(uniqueName(ERRORS_ENTRY, names)));
+            zip.write((String.join("\n", errors) + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+        return counting.count;
+    }
+
+    /** Time until the client's batch closest to done should have finished, at the executor's pace. */
+    private long retryAfterSeconds(List<Batch> active) {
+        int remaining = Integer.MAX_VALUE;
+        for (Batch batch : active) {
+            synchronized (batch) {
+                remaining = Math.min(remaining, batch.planning ? config.getMaxItems() : batch.items.size() - batch.finished.size());
+            }
+        }
+        int concurrency = Math.max(1, config.getConcurrency());
+        long rounds = (remaining + concurrency - 1L) / concurrency;
+        return Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(executor.getAverageJobMillis() * rounds + 999));
+    }
+
+    private Batch find(String batchId) {
+        Batch batch = batches.get(batchId);
+        if (batch == null) {
+            throw new JobNotFoundException("Batch not found: " + batchId);
+        }
+        return batch;
+    }
+
+    private void listPlaylist(Batch batch, String playlistUrl) {
+        try {
+            List<String> ids = processManager.listPlaylist(playlistUrl, config.getMaxItems());
+            synchronized (batch) {
+                if (ids.isEmpty()) {
+                    batch.failure = "Playlist has no videos";
+                }
+                batch.plan(ids.stream().map(id -> WATCH_URL + id).toList());
+            }
+            log.info("Batch {} listed {} videos from {}", batch.id, ids.size(), playlistUrl);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(batch, "Playlist listing interrupted");
+            return;
+        } catch (Exception e) {
+            log.warn("Batch {} could not list {}: {}", batch.id, playlistUrl, e.getMessage());
+            fail(batch, e.getMessage());
+            return;
+        }
+        pump(batch);
+    }
+
+    private void fail(Batch batch, String message) {
+        synchronized (batch) {
+            batch.failure = message;
+            batch.plan(List.of());
+        }
+        finishIfDone(batch);
+    }
+
+    /** Submits the next videos of the batch while it has free slots. */
+    private void pump(Batch batch) {
+        synchronized (batch) {
+            while (batch.running < config.getConcurrency() && batch.next < batch.items.size()) {
+                Item item = batch.items.get(batch.next);
+                DownloadJob job;
+                try {
+                    job = downloadService.submit(new YoutubeLinkRequest(item.url, batch.format, JobPriority.BULK), batch.clientId);
+                } catch (DownloadRejectedException e) {
+                    // com jobs do lote ainda rodando, o fim de um deles chama o pump de novo
+                    if (batch.running == 0) {
+                        schedule(() -> pump(batch), e.getRetryAfterSeconds());
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    batch.next++;
+                    batch.finish(item, new DownloadStatus(Status.FAILED, e.getMessage()));
+                    continue;
+                }
+
+                batch.next++;
+                batch.running++;
+                item.jobId = job.id();
+                // jobs servidos do cache já vêm concluídos; o callback nunca roda dentro deste lock
+                job.result().whenComplete((response, error) -> execute(() -> onItemFinished(batch, item)));
+            }
+        }
+        finishIfDone(batch);
+    }
+
+    private void onItemFinished(Batch batch, Item item) {
+        DownloadStatus status = downloadService.findJobStatus(item.jobId)
+                .orElse(new DownloadStatus(Status.FAILED, "Job status expired"));
+        synchronized (batch) {
+            batch.running--;
+            batch.finish(item, status);
+        }
+        pump(batch);
+    }
+
+    private void finishIfDone(Batch batch) {
+        synchronized (batch) {
+            if (!batch.isDone() || batch.expiryScheduled) {
+                return;
+            }
+            batch.expiryScheduled = true;
+        }
+        log.info("Batch {} finished", batch.id);
+        schedule(() -> batches.remove(batch.id, batch), config.getTtl().toSeconds());
+    }
+
+    private void execute(Runnable task) {
+        try {
+            coordinator.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("Batch coordinator is shutting down, dropping task");
+        }
+    }
+
+    private void schedule(Runnable task, long delaySeconds) {
+        try {
+            coordinator.schedule(task, delaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Batch coordinator is shutting down, dropping task");
+        }
+    }
+
+    /** Share of a video's work done: the fetch counts as 80% of it, the conversion as the rest. */
+    private static double percentOf(DownloadStatus status) {
+        if (status.status().isTerminal()) {
+            return 100;
+        }
+        DownloadProgress progress = status.progress();
+        if (progress == null) {
+            return 0;
+        }
+        return progress.phase() == DownloadPhase.DOWNLOADING
+                ? progress.percent() * 0.8
+                : 80 + progress.percent() * 0.2;
+    }
+
+    private static String uniqueName(String name, Set<String> taken) {
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 2; !taken.add(candidate); i++) {
+            candidate = base + " (" + i + ")" + extension;
+        }
+        return candidate;
+    }
+
+    private static String newBatchId() {
+        byte[] bytes = new byte[8];
+        BATCH_ID_RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    /** State of one batch. Guarded by its own monitor, which the ZIP writers also wait on. */
+    private static final class Batch {
+
+        private final String id;
+        private final AudioFormat format;
+        private final String clientId;
+        private final List<Item> items = new ArrayList<>();
+        private final List<Item> finished = new ArrayList<>();
+        private boolean planning = true;
+        private String failure;
+        private int next;
+        private int running;
+        private boolean expiryScheduled;
+
+        Batch(String id, AudioFormat format, String clientId) {
+            this.id = id;
+            this.format = format;
+            this.clientId = clientId;
+        }
+
+        void plan(List<String> urls) {
+            urls.forEach(url -> items.add(new Item(url)));
+            planning = false;
+            notifyAll();
+        }
+
+        void finish(Item item, DownloadStatus status) {
+            item.result = status;
+            finished.add(item);
+            notifyAll();
+        }
+
+        boolean isDone() {
+            return !planning && finished.size() == items.size();
+        }
+
+        synchronized boolean isFinished() {
+            return isDone();
+        }
+    }
+
+    private static final class Item {
+
+        private final String url;
+        private String jobId;
+        private DownloadStatus result;
+
+        Item(String url) {
+            this.url = url;
+        }
+
+        Item copy() {
+            Item copy = new Item(url);
+            copy.jobId = jobId;
+            copy.result = result;
+            return copy;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.enums.JobPriority;
+import com.abreu.download_link.exceptions.DownloadCancelledException;
+import com.abreu.download_link.exceptions.DownloadRejectedException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs downloads on a fixed pool of workers with a bounded wait queue. Work that does not fit
+ * is rejected immediately with a Retry-After estimate instead of tying up servlet threads.
+ * <p>
+ * Waiting work is ordered by a {@link FairJobQueue}: interactive downloads ahead of bulk ones and,
+ * within a priority class, clients in turn, so one client with many downloads cannot keep every
+ * worker to itself. Each client may also only have a few downloads waiting at once.
+ */
+@Component
+@Slf4j
+public class DownloadExecutor {
+
+    /** Client of work submitted without one, e.g. jobs journaled before clients were recorded. */
+    public static final String DEFAULT_CLIENT = "anonymous";
+
+    private final FairJobQueue<Job<?>> queue;
+    private final int workers;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong averageJobMillis;
+
+    public DownloadExecutor(DownloadProperties properties) {
+        DownloadProperties.ExecutorProperties config = properties.getExecutor();
+        this.workers = config.getWorkers();
+        this.averageJobMillis = new AtomicLong(config.getDefaultJobDuration().toMillis());
+        this.queue = new FairJobQueue<>(config.getQueueCapacity(), config.getClientQueueLimit(), config.getInteractiveShare());
+        for (int i = 1; i <= workers; i++) {
+            Thread thread = new Thread(this::work, "download-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        log.info("Download executor started with {} workers, queue capacity {} and {} waiting downloads per client",
+                workers, config.getQueueCapacity(), config.getClientQueueLimit());
+    }
+
+    /** Place in the queue of a scheduled task, and its result. */
+    public final class Ticket<T> {
+
+        private final Job<T> job;
+
+        private Ticket(Job<T> job) {
+            this.job = job;
+        }
+
+        public CompletableFuture<T> future() {
+            return job.future;
+        }
+
+        /** Position among the waiting downloads, starting at 1; 0 once the task left the queue. */
+        public int position() {
+            return queue.position(job);
+        }
+
+        /**
+         * Takes the task out of the queue if it has not started, completing its future with a
+         * {@link DownloadCancelledException}; returns whether it did.
+         */
+        public boolean cancel() {
+            if (!queue.remove(job)) {
+                return false;
+            }
+            job.future.completeExceptionally(new DownloadCancelledException("Download cancelled before it started"));
+            return true;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return schedule(DEFAULT_CLIENT, JobPriority.INTERACTIVE, task).future();
+    }
+
+    /**
+     * Queues a task on behalf of a client.
+     *
+     * @throws DownloadRejectedException when the queue is full or the client already has as many
+     *                                   downloads waiting as it may
+     */
+    public <T> Ticket<T> schedule(String client, JobPriority priority, Supplier<T> task) {
+        Job<T> job = new Job<>(task);
+        switch (queue.offer(client, priority, job)) {
+            case ACCEPTED -> {
+                return new Ticket<>(job);
+            }
+            case CLIENT_LIMIT -> {
+                long retryAfter = retryAfterSeconds(queue.queuedBy(client));
+                log.warn("Download of {} rejected: {} already waiting. Retry after {}s", client, queue.queuedBy(client), retryAfter);
+                throw new DownloadRejectedException("Too many downloads waiting for this client, please retry later", retryAfter);
+            }
+            default -> {
+                long retryAfter = estimateRetryAfterSeconds();
+                log.warn("Download rejected: {} active, {} queued. Retry after {}s", getActiveCount(), getQueueDepth(), retryAfter);
+                throw new DownloadRejectedException("Download capacity exhausted, please retry later", retryAfter);
+            }
+        }
+    }
+
+    /**
+     * Queues a task accepted before a restart. It skips the admission checks: the job was
+     * accepted already, and refusing it now would fail it for good.
+     */
+    public <T> Ticket<T> readmit(String client, JobPriority priority, Supplier<T> task) {
+        Job<T> job = new Job<>(task);
+        queue.readmit(client, priority, job);
+        return new Ticket<>(job);
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getAverageJobMillis() {
+        return averageJobMillis.get();
+    }
+
+    long estimateRetryAfterSeconds() {
+        return retryAfterSeconds(getQueueDepth());
+    }
+
+    private long retryAfterSeconds(int ahead) {
+        long waitMillis = averageJobMillis.get() * (ahead + 1L) / workers;
+        return Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999));
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job<?> job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            active.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                job.run();
+            } finally {
+                active.decrementAndGet();
+                recordDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+
+    private void recordDuration(long millis) {
+        // Média móvel exponencial: reage a mudanças de carga sem guardar histórico
+        averageJobMillis.updateAndGet(previous -> (previous * 4 + millis) / 5);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        threads.forEach(Thread::interrupt);
+        for (Job<?> job : queue.drain()) {
+            job.future.completeExceptionally(new DownloadCancelledException("Download executor shut down"));
+        }
+    }
+
+    private static final class Job<T> {
+
+        private final Supplier<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Job(Supplier<T> task) {
+            this.task = task;
+        }
+
+        private void run() {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
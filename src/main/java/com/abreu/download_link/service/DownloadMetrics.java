@@ -0,0 +1,187 @@
+package com.abreu.download_link.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters recorded by the download pipeline. Everything used on a hot path is registered once and
+ * kept in a field, so recording is a counter increment or a timer update without any registry
+ * lookup or tag allocation. Gauges over state owned by other components are bound in
+ * {@link com.abreu.download_link.config.MetricsConfig}.
+ */
+@Component
+public class DownloadMetrics {
+
+    /** Steps of a job, in the order it goes through them. */
+    public enum Stage {
+        QUEUE, METADATA, DOWNLOAD, HANDOFF, TRANSCODE, SERVE;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(10);
+    private static final Duration MAX_EXPECTED = Duration.ofHours(1);
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Timer completedJobs;
+    private final Timer failedJobs;
+    private final Counter cancelledJobs;
+    private final Map<String, Counter> exits = new ConcurrentHashMap<>();
+    private final AtomicInteger activeProcesses = new AtomicInteger();
+    private final Counter bytesDownloaded;
+    private final Counter bytesServed;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter infoHits;
+    private final Counter infoMisses;
+    private final Counter workerRuns;
+    private final Counter spawnedRuns;
+
+    public DownloadMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("downloader.stage.duration")
+                    .description("Time spent by a job in each step of the pipeline")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(MIN_EXPECTED)
+                    .maximumExpectedValue(MAX_EXPECTED)
+                    .register(registry));
+        }
+        this.completedJobs = jobTimer("completed");
+        this.failedJobs = jobTimer("failed");
+        this.cancelledJobs = Counter.builder("downloader.jobs.cancelled")
+                .description("Jobs cancelled by the client")
+                .register(registry);
+        Gauge.builder("downloader.processes.active", activeProcesses, AtomicInteger::get)
+                .description("yt-dlp and ffmpeg processes currently running")
+                .register(registry);
+        this.bytesDownloaded = Counter.builder("downloader.bytes.downloaded")
+                .description("Bytes fetched by yt-dlp, as reported in its progress output")
+                .baseUnit("bytes")
+                .register(registry);
+        this.bytesServed = Counter.builder("downloader.bytes.served")
+                .description("Bytes of audio sent to clients")
+                .baseUnit("bytes")
+                .register(registry);
+        this.cacheHits = cacheRequests("hit");
+        this.cacheMisses = cacheRequests("miss");
+        this.infoHits = infoRequests("hit");
+        this.infoMisses = infoRequests("miss");
+        this.workerRuns = ytDlpRuns("worker");
+        this.spawnedRuns = ytDlpRuns("process");
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Records a finished job from submission to completion or failure. */
+    public void recordJob(boolean completed, long nanos) {
+        (completed ? completedJobs : failedJobs).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void jobCancelled() {
+        cancelledJobs.increment();
+    }
+
+    public void processStarted() {
+        activeProcesses.incrementAndGet();
+    }
+
+    public void processEnded() {
+        activeProcesses.decrementAndGet();
+    }
+
+    public int getActiveProcesses() {
+        return activeProcesses.get();
+    }
+
+    public void recordExit(String tool, int exitCode) {
+        exitCounter(tool, Integer.toString(exitCode)).increment();
+    }
+
+    /** A process that was stopped by a cancellation, a timeout or a shutdown instead of exiting. */
+    public void recordKilled(String tool) {
+        exitCounter(tool, "killed").increment();
+    }
+
+    /** A metadata lookup, answered from the info cache or by running yt-dlp. */
+    public void infoLookup(boolean hit) {
+        (hit ? infoHits : infoMisses).increment();
+    }
+
+    /** A yt-dlp run, either on a pooled worker or in a process of its own. */
+    public void recordYtDlpRun(boolean onWorker) {
+        (onWorker ? workerRuns : spawnedRuns).increment();
+    }
+
+    public void addDownloadedBytes(long bytes) {
+        bytesDownloaded.increment(bytes);
+    }
+
+    public void recordServed(long bytes, long nanos) {
+        bytesServed.increment(bytes);
+        recordStage(Stage.SERVE, nanos);
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    private Timer jobTimer(String outcome) {
+        return Timer.builder("downloader.jobs.duration")
+                .description("Time from submission until a job finished")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry);
+    }
+
+    private Counter cacheRequests(String result) {
+        return Counter.builder("downloader.cache.requests")
+                .description("Result cache lookups made before starting a download")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Counter infoRequests(String result) {
+        return Counter.builder("downloader.info.requests")
+                .description("Video metadata lookups, by the info endpoint and by downloads")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Counter ytDlpRuns(String mode) {
+        return Counter.builder("downloader.ytdlp.runs")
+                .description("yt-dlp runs on a pooled worker or in a process of their own")
+                .tag("mode", mode)
+                .register(registry);
+    }
+
+    private Counter exitCounter(String tool, String code) {
+        // poucos códigos distintos na prática; o contador é criado uma vez por ferramenta e código
+        return exits.computeIfAbsent(tool + ':' + code, k -> Counter.builder("downloader.process.exits")
+                .description("yt-dlp and ffmpeg runs by exit code")
+                .tag("tool", tool)
+                .tag("code", code)
+                .register(registry));
+    }
+}
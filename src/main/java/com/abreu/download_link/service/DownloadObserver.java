@@ -0,0 +1,23 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.DownloadProgress;
+
+import java.nio.file.Path;
+
+/**
+ * Receives what a running yt-dlp process reports and tells it whether to keep going.
+ */
+interface DownloadObserver {
+
+    void onProgress(DownloadProgress progress);
+
+    /** The audio file yt-dlp is about to write, announced before the conversion finishes. */
+    void onDestination(Path audioFile);
+
+    boolean isCancelled();
+
+    /** Why the download has to stop although nobody cancelled it, or {@code null} to keep going. */
+    default String abortReason() {
+        return null;
+    }
+}
@@ -2,27 +2,101 @@ package com.abreu.download_link.service;
 
 import com.abreu.download_link.domain.DownloadStatus;
 import com.abreu.download_link.domain.enums.Status;
-import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.Optional;
 
 @Component
-@Getter
+@RequiredArgsConstructor
 public class DownloadStatusManager {
 
-    private final ConcurrentHashMap<String, DownloadStatus> statusMap = new ConcurrentHashMap<>();
+    private static final DownloadStatus NOT_FOUND = new DownloadStatus(Status.NOT_FOUND, "");
+    private static final int LOCK_STRIPES = 64;
 
-    public void updateStatus(String url, Status status) {
-        statusMap.put(url, new DownloadStatus(status, ""));
+    private final StatusStore store;
+    private final List<JobStatusListener> listeners;
+    private final Object[] locks = newLocks();
+
+    public void registerJob(String jobId, String videoKey) {
+        DownloadStatus status = new DownloadStatus(Status.QUEUED, "Waiting for a free worker");
+        store.register(jobId, videoKey, status);
+        notifyListeners(jobId, status);
+    }
+
+    /** Puts back the status a job had before a restart, without notifying listeners. */
+    public void restoreJob(String jobId, String videoKey, DownloadStatus status) {
+        store.register(jobId, videoKey, status);
+    }
+
+    public void removeJob(String jobId) {
+        store.remove(jobId);
+    }
+
+    public boolean updateStatus(String jobId, Status status) {
+        return update(jobId, new DownloadStatus(status, ""));
+    }
+
+    public boolean updateStatus(String jobId, Status status, String message) {
+        return update(jobId, new DownloadStatus(status, message));
+    }
+
+    /**
+     * Sets the status of a job and returns whether it did. Once a job is finished its status is
+     * final: a progress tick still on its way cannot undo a cancellation, and a cancellation and
+     * a completion racing each other cannot both win.
+     */
+    public boolean update(String jobId, DownloadStatus status) {
+        synchronized (locks[Math.floorMod(jobId.hashCode(), LOCK_STRIPES)]) {
+            DownloadStatus current = store.get(jobId);
+            if (current != null && current.status().isTerminal()) {
+                return false;
+            }
+            store.update(jobId, status);
+            notifyListeners(jobId, status);
+            return true;
+        }
+    }
+
+    public boolean complete(String jobId, String message, String fileName) {
+        return update(jobId, new DownloadStatus(Status.COMPLETED, message, fileName));
+    }
+
+    public Optional<DownloadStatus> findStatus(String jobId) {
+        return Optional.ofNullable(store.get(jobId));
+    }
+
+    public DownloadStatus getStatus(String jobId) {
+        DownloadStatus status = store.get(jobId);
+        return status != null ? status : NOT_FOUND;
+    }
+
+    public DownloadStatus getStatusByKey(String videoKey) {
+        String jobId = store.latestJob(videoKey);
+        return jobId != null ? getStatus(jobId) : NOT_FOUND;
+    }
+
+    public long size() {
+        return store.size();
+    }
+
+    public long evictions() {
+        return store.evictions();
     }
 
-    public void updateStatus(String url, Status status, String message) {
-        statusMap.put(url, new DownloadStatus(status, message));
+    private static Object[] newLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
     }
 
-    public DownloadStatus getStatus(String url) {
-        return statusMap.getOrDefault(url, new DownloadStatus(Status.NOT_FOUND, ""));
+    private void notifyListeners(String jobId, DownloadStatus status) {
+        for (JobStatusListener listener : listeners) {
+            listener.onStatus(jobId, status);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Keeps job state in a shared key-value backend so every node can answer for every job. Expiry
+ * of finished jobs is delegated to the backend through key TTLs; active jobs get a longer safety
+ * TTL so a node dying mid-download cannot leak entries forever.
+ */
+@Slf4j
+public class ExternalStatusStore implements StatusStore {
+
+    private static final String STATUS_PREFIX = "download:status:";
+    private static final String VIDEO_PREFIX = "download:video:";
+    private static final String JOB_VIDEO_PREFIX = "download:job-video:";
+
+    private final KeyValueClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Duration terminalTtl;
+    private final Duration activeTtl;
+
+    public ExternalStatusStore(KeyValueClient client, DownloadProperties properties) {
+        this.client = client;
+        this.terminalTtl = properties.getStatus().getTerminalTtl();
+        this.activeTtl = terminalTtl.multipliedBy(4);
+    }
+
+    @Override
+    public void register(String jobId, String videoKey, DownloadStatus status) {
+        client.set(JOB_VIDEO_PREFIX + jobId, videoKey, activeTtl);
+        client.set(VIDEO_PREFIX + videoKey, jobId, activeTtl);
+        write(jobId, status);
+    }
+
+    @Override
+    public void update(String jobId, DownloadStatus status) {
+        if (client.get(STATUS_PREFIX + jobId) == null) {
+            return;
+        }
+        write(jobId, status);
+        if (status.status().isTerminal()) {
+            String videoKey = client.get(JOB_VIDEO_PREFIX + jobId);
+            if (videoKey != null) {
+                client.set(JOB_VIDEO_PREFIX + jobId, videoKey, terminalTtl);
+                if (jobId.equals(client.get(VIDEO_PREFIX + videoKey))) {
+                    client.set(VIDEO_PREFIX + videoKey, jobId, terminalTtl);
+                }
+            }
+        }
+    }
+
+    @Override
+    public DownloadStatus get(String jobId) {
+        String json = client.get(STATUS_PREFIX + jobId);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(json, DownloadStatus.class);
+        } catch (JsonProcessingException e) {
+            log.error("Corrupted status for job {}: {}", jobId, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String latestJob(String videoKey) {
+        return client.get(VIDEO_PREFIX + videoKey);
+    }
+
+    @Override
+    public void remove(String jobId) {
+        String videoKey = client.get(JOB_VIDEO_PREFIX + jobId);
+        if (videoKey != null && jobId.equals(client.get(VIDEO_PREFIX + videoKey))) {
+            client.delete(VIDEO_PREFIX + videoKey);
+        }
+        client.delete(JOB_VIDEO_PREFIX + jobId);
+        client.delete(STATUS_PREFIX + jobId);
+    }
+
+    @Override
+    public long size() {
+        return -1;
+    }
+
+    @Override
+    public long evictions() {
+        return 0;
+    }
+
+    private void write(String jobId, DownloadStatus status) {
+        try {
+            Duration ttl = status.status().isTerminal() ? terminalTtl : activeTtl;
+            client.set(STATUS_PREFIX + jobId, mapper.writeValueAsString(status), ttl);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize status of job " + jobId, e);
+        }
+    }
+}
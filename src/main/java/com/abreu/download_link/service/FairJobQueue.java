@@ -0,0 +1,233 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.enums.JobPriority;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wait queue of the download executor. Jobs are grouped by priority class and, inside a class, by
+ * client; clients take turns, so a client with a long backlog delays everyone else by at most one
+ * job per turn instead of by its whole backlog. Interactive jobs go first, except that every
+ * {@code interactiveShare + 1}-th start goes to bulk work while some is waiting, so bulk work is
+ * never starved.
+ * <p>
+ * Jobs an idle worker is about to take do not count as waiting, so with free workers a job is
+ * accepted even when {@code capacity} is 0, as with a thread pool that hands work straight to an
+ * idle thread. Every method holds the queue monitor; {@link #take()} waits on it.
+ */
+final class FairJobQueue<E> {
+
+    enum Offer { ACCEPTED, QUEUE_FULL, CLIENT_LIMIT }
+
+    private final int capacity;
+    private final int clientLimit;
+    private final int interactiveShare;
+    private final Map<JobPriority, ClassQueue<E>> classes = new EnumMap<>(JobPriority.class);
+    private final Map<String, Integer> queuedByClient = new HashMap<>();
+    private int size;
+    private int idleTakers;
+    private int interactiveStreak;
+
+    FairJobQueue(int capacity, int clientLimit, int interactiveShare) {
+        this.capacity = capacity;
+        this.clientLimit = clientLimit;
+        this.interactiveShare = Math.max(1, interactiveShare);
+        for (JobPriority priority : JobPriority.values()) {
+            classes.put(priority, new ClassQueue<>());
+        }
+    }
+
+    synchronized Offer offer(String client, JobPriority priority, E job) {
+        if (size - idleTakers >= capacity) {
+            return Offer.QUEUE_FULL;
+        }
+        int queued = queuedByClient.getOrDefault(client, 0);
+        if (clientLimit > 0 && queued >= clientLimit) {
+            return Offer.CLIENT_LIMIT;
+        }
+        add(client, priority, job);
+        return Offer.ACCEPTED;
+    }
+
+    /**
+     * Queues a job without the capacity and per-client checks, for work that was already
+     * accepted once, such as jobs brought back after a restart.
+     */
+    synchronized void readmit(String client, JobPriority priority, E job) {
+        add(client, priority, job);
+    }
+
+    private void add(String client, JobPriority priority, E job) {
+        int queued = queuedByClient.getOrDefault(client, 0);
+        classes.get(priority).add(client, job);
+        queuedByClient.put(client, queued + 1);
+        size++;
+        notifyAll();
+    }
+
+    /** Waits for the next job, in the order described on the class. */
+    synchronized E take() throws InterruptedException {
+        idleTakers++;
+        try {
+            while (size == 0) {
+                wait();
+            }
+        } finally {
+            idleTakers--;
+        }
+        ClassQueue<E> from = pick();
+        Map.Entry<String, E> next = from.poll();
+        size--;
+        release(next.getKey());
+        return next.getValue();
+    }
+
+    /** Takes a job out of the queue; returns false when it was not waiting. */
+    synchronized boolean remove(E job) {
+        for (ClassQueue<E> queue : classes.values()) {
+            String client = queue.remove(job);
+            if (client != null) {
+                size--;
+                release(client);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Jobs waiting for a worker, leaving out those an idle worker is about to take. */
+    synchronized int size() {
+        return Math.max(0, size - idleTakers);
+    }
+
+    synchronized int queuedBy(String client) {
+        return queuedByClient.getOrDefault(client, 0);
+    }
+
+    /**
+     * Place of a job in the order jobs will start if nothing else is queued meanwhile, starting at
+     * 1; 0 when the job is not waiting.
+     */
+    synchronized int position(E job) {
+        List<E> interactive = classes.get(JobPriority.INTERACTIVE).dispatchOrder();
+        List<E> bulk = classes.get(JobPriority.BULK).dispatchOrder();
+        int i = 0;
+        int b = 0;
+        int streak = interactiveStreak;
+        for (int position = 1; i < interactive.size() || b < bulk.size(); position++) {
+            E next;
+            if (i < interactive.size() && (b >= bulk.size() || streak < interactiveShare)) {
+                next = interactive.get(i++);
+                streak = b < bulk.size() ? streak + 1 : streak;
+            } else {
+                next = bulk.get(b++);
+                streak = 0;
+            }
+            if (next.equals(job)) {
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    /** Empties the queue, returning the jobs that were waiting. */
+    synchronized List<E> drain() {
+        List<E> drained = new ArrayList<>();
+        for (ClassQueue<E> queue : classes.values()) {
+            drained.addAll(queue.dispatchOrder());
+            queue.clients.clear();
+        }
+        queuedByClient.clear();
+        size = 0;
+        return drained;
+    }
+
+    private void release(String client) {
+        queuedByClient.computeIfPresent(client, (c, queued) -> queued > 1 ? queued - 1 : null);
+    }
+
+    // mesma regra que position(): a sequência interativa só conta enquanto há bulk esperando
+    private ClassQueue<E> pick() {
+        ClassQueue<E> interactive = classes.get(JobPriority.INTERACTIVE);
+        ClassQueue<E> bulk = classes.get(JobPriority.BULK);
+        if (bulk.isEmpty()) {
+            return interactive;
+        }
+        if (interactive.isEmpty() || interactiveStreak >= interactiveShare) {
+            interactiveStreak = 0;
+            return bulk;
+        }
+        interactiveStreak++;
+        return interactive;
+    }
+
+    /** Jobs of one priority class, one FIFO per client, clients served in rotation. */
+    private static final class ClassQueue<E> {
+
+        // ordem de inserção = ordem da rodada; quem foi atendido volta para o fim
+        private final LinkedHashMap<String, ArrayDeque<E>> clients = new LinkedHashMap<>();
+
+        void add(String client, E job) {
+            clients.computeIfAbsent(client, c -> new ArrayDeque<>()).addLast(job);
+        }
+
+        boolean isEmpty() {
+            return clients.isEmpty();
+        }
+
+        Map.Entry<String, E> poll() {
+            Iterator<Map.Entry<String, ArrayDeque<E>>> it = clients.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<E>> first = it.next();
+            String client = first.getKey();
+            ArrayDeque<E> jobs = first.getValue();
+            E job = jobs.pollFirst();
+            it.remove();
+            if (!jobs.isEmpty()) {
+                clients.put(client, jobs);
+            }
+            return Map.entry(client, job);
+        }
+
+        /** Removes a job and returns its client, or null when the job is not here. */
+        String remove(E job) {
+            Iterator<Map.Entry<String, ArrayDeque<E>>> it = clients.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, ArrayDeque<E>> entry = it.next();
+                if (entry.getValue().removeFirstOccurrence(job)) {
+                    if (entry.getValue().isEmpty()) {
+                        it.remove();
+                    }
+                    return entry.getKey();
+                }
+            }
+            return null;
+        }
+
+        /** Jobs in the order {@link #poll()} would return them. */
+        List<E> dispatchOrder() {
+            List<Iterator<E>> iterators = new ArrayList<>();
+            for (ArrayDeque<E> jobs : clients.values()) {
+                iterators.add(jobs.iterator());
+            }
+            List<E> order = new ArrayList<>();
+            boolean any = true;
+            while (any) {
+                any = false;
+                for (Iterator<E> it : iterators) {
+                    if (it.hasNext()) {
+                        order.add(it.next());
+                        any = true;
+                    }
+                }
+            }
+            return order;
+        }
+    }
+}
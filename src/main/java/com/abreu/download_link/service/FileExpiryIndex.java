@@ -0,0 +1,185 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.FileMetadata;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes served files once they have been idle for the configured TTL. Deadlines are kept in a
+ * {@link DelayQueue}, so a purge only looks at entries that are actually due instead of walking
+ * every tracked file. A file touched after its deadline was queued is simply re-queued for its
+ * new deadline when it comes up. A file with an open {@linkplain FileLeases lease} is never
+ * deleted; its idle period restarts when the last transfer ends. Deletions run on a dedicated
+ * I/O thread.
+ */
+@Component
+@Slf4j
+public class FileExpiryIndex {
+
+    private final Map<Path, FileMetadata> files = new ConcurrentHashMap<>();
+    private final Map<Path, Long> sizes = new ConcurrentHashMap<>();
+    private final DelayQueue<Expiry> deadlines = new DelayQueue<>();
+    private final FileLeases leases;
+    private final long idleTtlMillis;
+    private final Clock clock;
+    private final ExecutorService ioExecutor;
+
+    @Autowired
+    public FileExpiryIndex(DownloadProperties properties, FileLeases leases) {
+        this(properties, leases, Clock.systemUTC());
+    }
+
+    FileExpiryIndex(DownloadProperties properties, FileLeases leases, Clock clock) {
+        this.leases = leases;
+        this.idleTtlMillis = properties.getCleanup().getIdleTtl().toMillis();
+        this.clock = clock;
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leases.onRelease(this::release);
+    }
+
+    /** Starts tracking a file that is not in use; it expires after the idle TTL. */
+    public void track(Path path) {
+        FileMetadata metadata = new FileMetadata(clock.instant());
+        sizes.put(path, sizeOf(path));
+        if (files.put(path, metadata) == null) {
+            deadlines.add(new Expiry(path, clock.millis() + idleTtlMillis));
+        }
+    }
+
+    /** Restarts the idle period of a tracked file after a transfer of it ended. */
+    public void release(Path path) {
+        FileMetadata metadata = files.get(path);
+        if (metadata != null) {
+            metadata.touch(clock.instant());
+        }
+    }
+
+    public boolean isTracked(Path path) {
+        return files.containsKey(path);
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    /** Bytes held by the tracked files, as they were when tracking started. */
+    public long getTrackedBytes() {
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Scheduled(fixedDelayString = "${downloader.cleanup.interval:60s}")
+    public void scheduledPurge() {
+        int removed = purgeExpired();
+        if (removed > 0) {
+            log.info("Scheduled cleanup removing {} idle files", removed);
+        }
+    }
+
+    /** Hands every file whose idle period is over to the I/O thread and returns how many. */
+    int purgeExpired() {
+        int removed = 0;
+        Expiry expiry;
+        while ((expiry = deadlines.poll()) != null) {
+            Path path = expiry.path();
+            FileMetadata metadata = files.get(path);
+            if (metadata == null) {
+                continue;
+            }
+
+            long now = clock.millis();
+            long idleUntil = metadata.getLastUpdated().toEpochMilli() + idleTtlMillis;
+            if (idleUntil > now) {
+                deadlines.add(new Expiry(path, idleUntil));
+                continue;
+            }
+            if (!leases.tryRetire(path)) {
+                deadlines.add(new Expiry(path, now + idleTtlMillis));
+                continue;
+            }
+
+            if (files.remove(path, metadata)) {
+                sizes.remove(path);
+                ioExecutor.execute(() -> delete(path));
+                removed++;
+            } else {
+                leases.forget(path);
+            }
+        }
+        return removed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdown();
+        try {
+            ioExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void delete(Path path) {
+        try {
+            if (Files.deleteIfExists(path)) {
+                log.info("File {} removed by scheduled cleanup", path);
+            }
+        } catch (IOException e) {
+            log.error("Error deleting {}: {}", path, e.getMessage());
+        } finally {
+            leases.forget(path);
+        }
+    }
+
+    private final class Expiry implements Delayed {
+
+        private final Path path;
+        private final long deadlineMillis;
+
+        private Expiry(Path path, long deadlineMillis) {
+            this.path = path;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        Path path() {
+            return path;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - clock.millis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((Expiry) other).deadlineMillis);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.FileLease;
+import com.abreu.download_link.domain.FileMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Reference counts for stored files that are being read. Every transfer takes a lease before it
+ * opens the file and gives it back when the response ends, however it ends. Whoever deletes
+ * files (the result cache and the expiry index) must first {@linkplain #tryRetire retire} the
+ * path, which only succeeds once no lease is open and the grace period after the last one has
+ * passed; from then on new leases are refused until the path is {@linkplain #forget forgotten}.
+ */
+@Component
+@Slf4j
+public class FileLeases {
+
+    // marca um arquivo que está sendo apagado: novas leases são recusadas
+    private static final FileMetadata RETIRED = new FileMetadata(Instant.EPOCH);
+
+    private final Map<Path, FileMetadata> files = new ConcurrentHashMap<>();
+    private final List<Consumer<Path>> releaseListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong acquired = new AtomicLong();
+    private final long graceMillis;
+    private final Clock clock;
+
+    @Autowired
+    public FileLeases(DownloadProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    FileLeases(DownloadProperties properties, Clock clock) {
+        this.graceMillis = properties.getCleanup().getLeaseGrace().toMillis();
+        this.clock = clock;
+    }
+
+    /** Takes a lease on the file, or returns empty when the file is being deleted. */
+    public Optional<FileLease> acquire(Path path) {
+        Path key = keyOf(path);
+        FileMetadata metadata = files.compute(key, (p, current) -> {
+            if (current == RETIRED) {
+                return current;
+            }
+            FileMetadata target = current != null ? current : new FileMetadata(clock.instant());
+            target.acquire(clock.instant());
+            return target;
+        });
+        if (metadata == RETIRED) {
+            return Optional.empty();
+        }
+        acquired.incrementAndGet();
+        return Optional.of(new FileLease(key, () -> release(key)));
+    }
+
+    /** Registers a callback run after a lease on any file is released. */
+    public void onRelease(Consumer<Path> listener) {
+        releaseListeners.add(listener);
+    }
+
+    public boolean isLeased(Path path) {
+        FileMetadata metadata = files.get(keyOf(path));
+        return metadata != null && metadata.isInUse();
+    }
+
+    /**
+     * Claims the file for deletion. Returns false while a lease is open or the grace period after
+     * the last one is running; on success {@link #acquire} refuses the file until {@link #forget}.
+     */
+    public boolean tryRetire(Path path) {
+        boolean[] retired = {false};
+        files.compute(keyOf(path), (p, current) -> {
+            if (current == RETIRED) {
+                return current;
+            }
+            if (current != null && (current.isInUse()
+                    || current.getLastUpdated().toEpochMilli() + graceMillis > clock.millis())) {
+                return current;
+            }
+            retired[0] = true;
+            return RETIRED;
+        });
+        return retired[0];
+    }
+
+    /** Drops a retired file once it is gone, so the same path can be leased again if it is recreated. */
+    public void forget(Path path) {
+        files.remove(keyOf(path), RETIRED);
+    }
+
+    /** Number of open leases across all files. */
+    public int getActiveLeases() {
+        return files.values().stream().mapToInt(FileMetadata::getLeases).sum();
+    }
+
+    /** Number of files with at least one open lease. */
+    public int getLeasedFileCount() {
+        return (int) files.values().stream().filter(FileMetadata::isInUse).count();
+    }
+
+    /** Leases handed out since startup. */
+    public long getAcquiredTotal() {
+        return acquired.get();
+    }
+
+    private void release(Path key) {
+        FileMetadata metadata = files.get(key);
+        if (metadata == null || metadata == RETIRED) {
+            log.warn("Released a lease on {} that is not tracked", key);
+            return;
+        }
+        metadata.release(clock.instant());
+        releaseListeners.forEach(listener -> listener.accept(key));
+    }
+
+    private static Path keyOf(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -1,6 +1,10 @@
 package com.abreu.download_link.service;
 
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.exceptions.InsufficientStorageException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -16,11 +20,42 @@ import java.nio.file.attribute.AclEntryType;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
+/**
+ * Owns the directories downloads are written to and keeps the disk from filling up. Free space is
+ * measured on every watched volume, minus the space reserved by running downloads. Once it drops
+ * under the minimum watermark, least-recently-used cached results are evicted until the target
+ * watermark is restored; when eviction cannot get there (every remaining file is being served),
+ * new downloads are refused. A running download reserves space as soon as yt-dlp reports the
+ * source size and is stopped if that reservation cannot be met.
+ */
 @Component
 @Slf4j
 public class FileSystemManager {
 
+    private final DownloadProperties.StorageProperties config;
+    private final ResultCache resultCache;
+    private final FileExpiryIndex expiryIndex;
+    private final ToLongFunction<Path> usableSpace;
+    private final Set<Path> volumes = new CopyOnWriteArraySet<>();
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    @Autowired
+    public FileSystemManager(DownloadProperties properties, ResultCache resultCache, FileExpiryIndex expiryIndex) {
+        this(properties, resultCache, expiryIndex, FileSystemManager::probeUsableSpace);
+    }
+
+    FileSystemManager(DownloadProperties properties, ResultCache resultCache, FileExpiryIndex expiryIndex,
+                      ToLongFunction<Path> usableSpace) {
+        this.config = properties.getStorage();
+        this.resultCache = resultCache;
+        this.expiryIndex = expiryIndex;
+        this.usableSpace = usableSpace;
+    }
+
     public void createDirectoryWithPermissions(String path) throws IOException {
         Path dirPath = Paths.get(path).normalize();
 
@@ -32,6 +67,128 @@ public class FileSystemManager {
         }
 
         setAppropriatePermissions(dirPath);
+        volumes.add(dirPath.toAbsolutePath());
+    }
+
+    /** Bytes held by cached results, files outside the cache and reservations of running downloads. */
+    public long getBytesInUse() {
+        return resultCache.getUsedBytes() + expiryIndex.getTrackedBytes() + reservedBytes.get();
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /** Usable space on the fullest watched volume, minus what running downloads have reserved. */
+    public long getFreeBytes() {
+        long usable = Long.MAX_VALUE;
+        usable = Math.min(usable, usableSpace.applyAsLong(resultCache.getDirectory()));
+        for (Path volume : volumes) {
+            usable = Math.min(usable, usableSpace.applyAsLong(volume));
+        }
+        return usable - reservedBytes.get();
+    }
+
+    /**
+     * Makes sure a new download can start, evicting cached results when free space is under the
+     * minimum watermark.
+     *
+     * @throws InsufficientStorageException when eviction cannot bring free space back above it
+     */
+    public void checkCapacity() {
+        if (getFreeBytes() >= minFreeBytes()) {
+            return;
+        }
+        freeSpace(0);
+        long free = getFreeBytes();
+        if (free < minFreeBytes()) {
+            throw new InsufficientStorageException(
+                    "Not enough disk space to start a download (" + free + " bytes free)",
+                    config.getRetryAfter().toSeconds());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${downloader.storage.check-interval:30s}")
+    public void enforceWatermarks() {
+        if (getFreeBytes() < minFreeBytes()) {
+            freeSpace(0);
+        }
+    }
+
+    /** Opens an empty reservation for a download; it must be closed once the download is over. */
+    Reservation reserve() {
+        return new Reservation();
+    }
+
+    /**
+     * Evicts until free space reaches the target watermark plus {@code extraBytes}. Synchronized so
+     * that concurrent callers don't evict twice for the same shortfall.
+     */
+    private synchronized void freeSpace(long extraBytes) {
+        long missing = config.getTargetFreeSpace().toBytes() + extraBytes - getFreeBytes();
+        if (missing <= 0) {
+            return;
+        }
+        long freed = resultCache.evict(missing);
+        log.info("Low disk space: evicted {} bytes from the result cache ({} bytes were needed)", freed, missing);
+    }
+
+    private long minFreeBytes() {
+        return config.getMinFreeSpace().toBytes();
+    }
+
+    private static long probeUsableSpace(Path path) {
+        try {
+            return Files.getFileStore(path).getUsableSpace();
+        } catch (IOException e) {
+            log.warn("Could not read free space of {}: {}", path, e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Space set aside for one running download. The size is only known once yt-dlp has read the
+     * video metadata, so the reservation starts empty and is sized by {@link #expect}.
+     */
+    final class Reservation implements AutoCloseable {
+
+        private long bytes;
+        private boolean sized;
+        private boolean closed;
+
+        /**
+         * Reserves room for a source of the given size. Returns false when that would leave less
+         * than the minimum free space, even after evicting cached results. Only the first call
+         * has an effect.
+         */
+        synchronized boolean expect(long sourceBytes) {
+            if (sized || closed) {
+                return true;
+            }
+            sized = true;
+            long needed = (long) Math.ceil(sourceBytes * config.getExpectedSizeFactor());
+            // checar e reservar sob o mesmo lock, senão dois downloads podem contar com o mesmo espaço
+            synchronized (FileSystemManager.this) {
+                if (getFreeBytes() - needed < minFreeBytes()) {
+                    freeSpace(needed);
+                    if (getFreeBytes() - needed < minFreeBytes()) {
+                        log.warn("Refusing a download of {} bytes: only {} bytes free", sourceBytes, getFreeBytes());
+                        return false;
+                    }
+                }
+                bytes = needed;
+                reservedBytes.addAndGet(needed);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                reservedBytes.addAndGet(-bytes);
+            }
+        }
     }
 
     private void setAppropriatePermissions(Path path) throws IOException {
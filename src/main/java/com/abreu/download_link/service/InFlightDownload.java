@@ -0,0 +1,150 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.CacheKey;
+import com.abreu.download_link.domain.DownloadProgress;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.YoutubeResponse;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import com.abreu.download_link.domain.enums.Status;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A single download shared by every job that asked for the same video and format while it was
+ * running.
+ */
+class InFlightDownload implements DownloadObserver {
+
+    private final CacheKey key;
+    private final AudioFormat format;
+    private final Set<String> jobIds = new CopyOnWriteArraySet<>();
+    private final DownloadStatusManager statusManager;
+    private volatile DownloadStatus lastStatus = new DownloadStatus(Status.QUEUED, "Waiting for a free worker");
+    private volatile CompletableFuture<YoutubeResponse> future;
+    private volatile DownloadExecutor.Ticket<?> ticket;
+    private final LiveOutput output;
+    private volatile boolean cancelled;
+    private volatile FileSystemManager.Reservation reservation;
+    private volatile String abortReason;
+
+    InFlightDownload(CacheKey key, AudioFormat format, DownloadStatusManager statusManager) {
+        this.key = key;
+        this.format = format;
+        this.statusManager = statusManager;
+        this.output = new LiveOutput(format.mediaType());
+    }
+
+    CacheKey key() {
+        return key;
+    }
+
+    AudioFormat format() {
+        return format;
+    }
+
+    CompletableFuture<YoutubeResponse> future() {
+        return future;
+    }
+
+    LiveOutput output() {
+        return output;
+    }
+
+    void start(CompletableFuture<YoutubeResponse> future) {
+        this.future = future;
+        future.whenComplete((response, error) -> {
+            if (error == null) {
+                output.complete(Path.of(response.filePath()));
+            } else {
+                output.fail();
+            }
+        });
+    }
+
+    /** Place of this download in the executor queue, for as long as it waits there. */
+    void queued(DownloadExecutor.Ticket<?> ticket) {
+        this.ticket = ticket;
+    }
+
+    int queuePosition() {
+        DownloadExecutor.Ticket<?> current = ticket;
+        return current != null ? current.position() : 0;
+    }
+
+    /** Leaves the executor queue when the download has not started yet. */
+    void dequeue() {
+        DownloadExecutor.Ticket<?> current = ticket;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    void attach(String jobId) {
+        jobIds.add(jobId);
+        statusManager.update(jobId, lastStatus);
+    }
+
+    /**
+     * Removes a job from this download and returns whether no job is left, in which case the
+     * download itself can be cancelled.
+     */
+    boolean detach(String jobId) {
+        jobIds.remove(jobId);
+        return jobIds.isEmpty();
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Disk reservation sized from the first progress report that carries the source size. */
+    void useReservation(FileSystemManager.Reservation reservation) {
+        this.reservation = reservation;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String abortReason() {
+        return abortReason;
+    }
+
+    @Override
+    public void onDestination(Path audioFile) {
+        output.start(audioFile);
+    }
+
+    @Override
+    public void onProgress(DownloadProgress progress) {
+        FileSystemManager.Reservation current = reservation;
+        if (current != null && progress.totalBytes() > 0 && !current.expect(progress.totalBytes())) {
+            abortReason = "Not enough disk space for a download of " + progress.totalBytes() + " bytes";
+        }
+        publishProgress(progress);
+    }
+
+    void publish(Status status, String message) {
+        publish(new DownloadStatus(status, message));
+    }
+
+    void publishProgress(DownloadProgress progress) {
+        String message = progress.phase() == DownloadPhase.EXTRACTING_AUDIO
+                ? "Extracting audio"
+                : "Downloading " + progress.percent() + "%";
+        publish(new DownloadStatus(Status.IN_PROGRESS, message, null, progress));
+    }
+
+    private void publish(DownloadStatus status) {
+        lastStatus = status;
+        for (String jobId : jobIds) {
+            statusManager.update(jobId, status);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadStatus;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Status store for a single node. Finished jobs are queued in the order they finished; since they
+ * all share the same TTL that is also their expiry order, so purging only looks at the head of
+ * the queue. When the entry cap is hit, the oldest finished jobs go first.
+ */
+public class InMemoryStatusStore implements StatusStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> latestJobByKey = new ConcurrentHashMap<>();
+    private final Queue<Expiry> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicLong evictions = new AtomicLong();
+    private final int maxEntries;
+    private final long terminalTtlNanos;
+    private final LongSupplier clock;
+
+    public InMemoryStatusStore(DownloadProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    InMemoryStatusStore(DownloadProperties properties, LongSupplier clock) {
+        this.maxEntries = properties.getStatus().getMaxEntries();
+        this.terminalTtlNanos = properties.getStatus().getTerminalTtl().toNanos();
+        this.clock = clock;
+    }
+
+    @Override
+    public void register(String jobId, String videoKey, DownloadStatus status) {
+        entries.put(jobId, newEntry(jobId, videoKey, status));
+        latestJobByKey.put(videoKey, jobId);
+        purge();
+    }
+
+    @Override
+    public void update(String jobId, DownloadStatus status) {
+        if (entries.computeIfPresent(jobId, (id, entry) -> newEntry(id, entry.videoKey(), status)) != null) {
+            purge();
+        }
+    }
+
+    @Override
+    public DownloadStatus get(String jobId) {
+        Entry entry = entries.get(jobId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(clock.getAsLong())) {
+            evict(jobId, entry);
+            return null;
+        }
+        return entry.status();
+    }
+
+    @Override
+    public String latestJob(String videoKey) {
+        return latestJobByKey.get(videoKey);
+    }
+
+    @Override
+    public void remove(String jobId) {
+        Entry removed = entries.remove(jobId);
+        if (removed != null) {
+            latestJobByKey.remove(removed.videoKey(), jobId);
+        }
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    @Override
+    public long evictions() {
+        return evictions.get();
+    }
+
+    private Entry newEntry(String jobId, String videoKey, DownloadStatus status) {
+        if (!status.status().isTerminal()) {
+            return new Entry(videoKey, status, false, 0L);
+        }
+        long deadline = clock.getAsLong() + terminalTtlNanos;
+        finished.add(new Expiry(jobId, deadline));
+        return new Entry(videoKey, status, true, deadline);
+    }
+
+    private void purge() {
+        long now = clock.getAsLong();
+        Expiry head;
+        while ((head = finished.peek()) != null) {
+            boolean overCapacity = entries.size() > maxEntries;
+            if (!overCapacity && head.deadline() - now > 0) {
+                return;
+            }
+            if (!finished.remove(head)) {
+                continue;
+            }
+            Entry entry = entries.get(head.jobId());
+            // Um job atualizado de novo tem outra expiração mais adiante na fila
+            if (entry != null && entry.terminal() && (overCapacity || entry.isExpired(now))) {
+                evict(head.jobId(), entry);
+            }
+        }
+    }
+
+    private void evict(String jobId, Entry entry) {
+        if (entries.remove(jobId, entry)) {
+            latestJobByKey.remove(entry.videoKey(), jobId);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private record Entry(String videoKey, DownloadStatus status, boolean terminal, long deadline) {
+        boolean isExpired(long now) {
+            return terminal && deadline - now <= 0;
+        }
+    }
+
+    private record Expiry(String jobId, long deadline) {
+    }
+}
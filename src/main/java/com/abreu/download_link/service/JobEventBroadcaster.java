@@ -0,0 +1,210 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.JobStatusResponse;
+import com.abreu.download_link.domain.enums.Status;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Pushes job status changes to Server-Sent Events subscribers. Every job with at least one
+ * subscriber has a single channel: each update is serialized once and written to all of the
+ * channel's emitters from a small dispatch pool, so a slow client never blocks the thread that
+ * reads yt-dlp output. Updates that arrive while a channel is still sending are coalesced, which
+ * means a lagging subscriber skips intermediate progress ticks but always receives the latest
+ * state and the terminal one.
+ */
+@Component
+@Slf4j
+public class JobEventBroadcaster implements JobStatusListener {
+
+    static final String STATUS_EVENT = "status";
+    static final String PROGRESS_EVENT = "progress";
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final long timeoutMillis;
+    private final ExecutorService dispatcher;
+
+    public JobEventBroadcaster(DownloadProperties properties, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.timeoutMillis = properties.getEvents().getTimeout().toMillis();
+        AtomicInteger counter = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "job-events-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a stream for the job. The current status is sent right away; the stream is completed
+     * once the job reaches a terminal state.
+     */
+    public SseEmitter subscribe(String jobId, Supplier<DownloadStatus> currentStatus) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Channel channel = channels.compute(jobId, (id, existing) -> {
+            Channel target = existing != null ? existing : new Channel(id);
+            target.emitters.add(emitter);
+            return target;
+        });
+
+        emitter.onCompletion(() -> unsubscribe(channel, emitter));
+        emitter.onTimeout(() -> unsubscribe(channel, emitter));
+        emitter.onError(e -> unsubscribe(channel, emitter));
+
+        channel.publishInitial(currentStatus.get());
+        return emitter;
+    }
+
+    @Override
+    public void onStatus(String jobId, DownloadStatus status) {
+        Channel channel = channels.get(jobId);
+        if (channel != null) {
+            channel.publish(status);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${downloader.events.heartbeat-interval:15s}")
+    public void heartbeat() {
+        Set<DataWithMediaType> frame = SseEmitter.event().comment("keepalive").build();
+        for (Channel channel : channels.values()) {
+            dispatcher.execute(() -> channel.send(frame));
+        }
+    }
+
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    public int getSubscriberCount() {
+        return channels.values().stream().mapToInt(channel -> channel.emitters.size()).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        channels.values().forEach(channel -> channel.emitters.forEach(SseEmitter::complete));
+        channels.clear();
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void unsubscribe(Channel channel, SseEmitter emitter) {
+        channel.emitters.remove(emitter);
+        channels.computeIfPresent(channel.jobId, (id, current) ->
+                current == channel && current.emitters.isEmpty() ? null : current);
+    }
+
+    private Set<DataWithMediaType> toFrame(String jobId, DownloadStatus status) throws JsonProcessingException {
+        String downloadUrl = null;
+        if (status.status() == Status.COMPLETED && status.fileName() != null) {
+            downloadUrl = UriComponentsBuilder.fromPath("/api/download/{filename}")
+                    .buildAndExpand(status.fileName())
+                    .encode()
+                    .toUriString();
+        }
+        JobStatusResponse payload = new JobStatusResponse(
+                jobId, status.status(), status.message(), downloadUrl, status.progress(), null);
+
+        boolean progressTick = status.status() == Status.IN_PROGRESS && status.progress() != null;
+        return SseEmitter.event()
+                .name(progressTick ? PROGRESS_EVENT : STATUS_EVENT)
+                .data(objectMapper.writeValueAsString(payload), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private final class Channel {
+
+        private final String jobId;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private final AtomicReference<DownloadStatus> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Channel(String jobId) {
+            this.jobId = jobId;
+        }
+
+        void publish(DownloadStatus status) {
+            pending.set(status);
+            schedule();
+        }
+
+        // o status lido pelo novo assinante pode ser mais antigo que uma atualização já pendente
+        void publishInitial(DownloadStatus status) {
+            pending.compareAndSet(null, status);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            DownloadStatus status;
+            while ((status = pending.getAndSet(null)) != null) {
+                try {
+                    send(toFrame(jobId, status));
+                } catch (JsonProcessingException e) {
+                    log.error("Failed to serialize event for job {}", jobId, e);
+                }
+                if (status.status().isTerminal()) {
+                    close();
+                }
+            }
+            scheduled.set(false);
+            if (pending.get() != null) {
+                schedule();
+            }
+        }
+
+        // synchronized para não intercalar o heartbeat com um evento no mesmo emitter
+        synchronized void send(Set<DataWithMediaType> frame) {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(frame);
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("Dropping event subscriber of job {}: {}", jobId, e.getMessage());
+                    emitters.remove(emitter);
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+
+        private void close() {
+            channels.remove(jobId, this);
+            for (SseEmitter emitter : emitters) {
+                emitter.complete();
+            }
+            emitters.clear();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.JournalRecord;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.JobPriority;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of job submissions and state changes, one JSON record per line, so a
+ * restart does not lose queued jobs nor forget finished ones. Recording a change only updates the
+ * in-memory state and queues the record; the {@code job-journal} thread writes and fsyncs the
+ * queued records in batches every {@code sync-interval}, so status listeners never wait on the
+ * disk. At startup the journal is replayed into the last state of every job; periodically, and
+ * right after the replay, it is rewritten with one record per job it still has to remember,
+ * dropping finished jobs once their status would have expired or been evicted anyway.
+ * <p>
+ * Progress updates are not journaled: after a restart an unfinished job starts over.
+ */
+@Component
+@Slf4j
+public class JobJournal implements JobStatusListener {
+
+    static final String JOURNAL_FILE = "journal.log";
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final DownloadProperties.JournalProperties config;
+    private final long terminalTtlMillis;
+    private final int maxJobs;
+    private final Clock clock;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // o monitor do journal guarda o estado em memória; io guarda o arquivo, só usado fora dele
+    private final Object io = new Object();
+
+    // último estado de cada job ainda lembrado, na ordem de submissão
+    private final LinkedHashMap<String, JournalRecord> jobs = new LinkedHashMap<>();
+    private List<JournalRecord> pending = new ArrayList<>();
+    private boolean recording;
+    private List<JournalRecord> recovered = List.of();
+    private String downloadsDir;
+    private String previousDownloadsDir;
+    private Path file;
+    private FileChannel channel;
+    private long appendedSinceCompaction;
+    private ScheduledExecutorService maintenance;
+
+    @Autowired
+    public JobJournal(DownloadProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    JobJournal(DownloadProperties properties, Clock clock) {
+        this.config = properties.getJournal();
+        this.terminalTtlMillis = properties.getStatus().getTerminalTtl().toMillis();
+        this.maxJobs = properties.getStatus().getMaxEntries();
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!config.isEnabled()) {
+            log.info("Job journal disabled");
+            return;
+        }
+        Path directory = Paths.get(config.getDirectory()).toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        file = directory.resolve(JOURNAL_FILE);
+
+        long start = System.nanoTime();
+        long records;
+        synchronized (this) {
+            records = replay();
+            recovered = List.copyOf(jobs.values());
+            previousDownloadsDir = downloadsDir;
+        }
+        compact();
+        log.info("Job journal {} replayed {} records into {} jobs in {} ms",
+                file, records, recovered.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long syncMillis = config.getSyncInterval().toMillis();
+        long compactionMillis = config.getCompactionInterval().toMillis();
+        executor.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::compactIfGrown, compactionMillis, compactionMillis, TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            maintenance = executor;
+            recording = true;
+        }
+    }
+
+    /** Jobs as they were when the previous run stopped, in submission order. */
+    public List<JournalRecord> recoveredJobs() {
+        return recovered;
+    }
+
+    /** Directory the previous run wrote its served files to, if the journal knows it. */
+    public Optional<Path> previousDownloadsDir() {
+        return Optional.ofNullable(previousDownloadsDir).map(Paths::get);
+    }
+
+    public void recordSubmitted(String jobId, String url, String videoKey, AudioFormat format) {
+        recordSubmitted(jobId, url, videoKey, format, DownloadExecutor.DEFAULT_CLIENT, JobPriority.INTERACTIVE);
+    }
+
+    /** Records a job together with the client and priority it is queued under, to queue it the same way after a restart. */
+    public void recordSubmitted(String jobId, String url, String videoKey, AudioFormat format,
+                                String clientId, JobPriority priority) {
+        append(JournalRecord.submitted(jobId, url, videoKey, format, clientId, priority, clock.millis()));
+    }
+
+    public void recordRemoved(String jobId) {
+        append(JournalRecord.removed(jobId, clock.millis()));
+    }
+
+    public void recordDownloadsDir(Path directory) {
+        append(JournalRecord.downloadsDir(directory.toString(), clock.millis()));
+    }
+
+    @Override
+    public void onStatus(String jobId, DownloadStatus status) {
+        if (status.progress() != null) {
+            return;
+        }
+        synchronized (this) {
+            // o QUEUED do registro já está no SUBMITTED; jobs desconhecidos não são de um submit
+            JournalRecord job = jobs.get(jobId);
+            if (job == null || job.status() == status.status() && status.fileName() == null) {
+                return;
+            }
+        }
+        append(JournalRecord.status(jobId, status, clock.millis()));
+    }
+
+    /** Number of jobs the journal currently remembers. */
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    /** Writes the queued records and forces them to disk. Runs every {@code sync-interval}. */
+    public void sync() {
+        synchronized (io) {
+            List<JournalRecord> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                for (JournalRecord record : batch) {
+                    writeRecord(channel, record);
+                }
+                channel.force(false);
+                appendedSinceCompaction += batch.size();
+            } catch (IOException e) {
+                // os jobs continuam; só não sobrevivem a um restart
+                log.error("Could not write to job journal {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per remembered job. The new file is written and synced
+     * next to the old one and then moved over it, so a crash leaves one of the two intact. Only
+     * taking the snapshot holds up status updates; the writing is done without them waiting.
+     */
+    public void compact() throws IOException {
+        synchronized (io) {
+            if (file == null) {
+                return;
+            }
+            List<JournalRecord> snapshot;
+            String directory;
+            int written;
+            synchronized (this) {
+                dropExpired();
+                snapshot = List.copyOf(jobs.values());
+                directory = downloadsDir;
+                // os registros na fila já estão em jobs, logo no snapshot
+                written = pending.size();
+            }
+
+            Path temp = file.resolveSibling(JOURNAL_FILE + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (directory != null) {
+                    writeRecord(out, JournalRecord.downloadsDir(directory, clock.millis()));
+                }
+                for (JournalRecord job : snapshot) {
+                    writeRecord(out, job);
+                }
+                out.force(true);
+            }
+
+            if (channel != null) {
+                channel.close();
+            }
+            move(temp, file);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            appendedSinceCompaction = 0;
+            synchronized (this) {
+                pending.subList(0, written).clear();
+            }
+        }
+    }
+
+    /**
+     * Stops recording and syncs what was written. Runs when the context starts closing, before
+     * the executors fail the jobs they drop: those jobs must stay unfinished in the journal, so
+     * the next run queues them again.
+     */
+    @EventListener(ContextClosedEvent.class)
+    @PreDestroy
+    public void close() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            recording = false;
+            stopping = maintenance;
+            maintenance = null;
+        }
+        if (stopping != null) {
+            // sem interromper: uma escrita interrompida fecharia o canal no meio do registro
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+        synchronized (io) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close job journal {}: {}", file, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private void compactIfGrown() {
+        synchronized (io) {
+            if (appendedSinceCompaction == 0 || channel == null) {
+                return;
+            }
+        }
+        try {
+            long start = System.nanoTime();
+            compact();
+            log.debug("Compacted job journal to {} jobs in {} ms", size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.error("Could not compact job journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    private synchronized void append(JournalRecord record) {
+        if (!recording) {
+            return;
+        }
+        fold(record);
+        pending.add(record);
+    }
+
+    private long replay() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long records = 0;
+        long unreadable = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    fold(mapper.readValue(line, JournalRecord.class));
+                    records++;
+                } catch (JsonProcessingException e) {
+                    unreadable++;
+                }
+            }
+        }
+        if (unreadable > 0) {
+            // normalmente a última linha, cortada por uma queda no meio da escrita
+            log.warn("Ignored {} unreadable records in job journal {}", unreadable, file);
+        }
+        dropExpired();
+        return records;
+    }
+
+    private void fold(JournalRecord record) {
+        switch (record.type()) {
+            case SUBMITTED -> {
+                jobs.put(record.jobId(), record);
+                dropOverflow();
+            }
+            case STATUS -> jobs.computeIfPresent(record.jobId(), (id, job) -> job.apply(record));
+            case REMOVED -> jobs.remove(record.jobId());
+            case DOWNLOADS_DIR -> downloadsDir = record.fileName();
+        }
+    }
+
+    private void dropExpired() {
+        long expiredBefore = clock.millis() - terminalTtlMillis;
+        Iterator<JournalRecord> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            JournalRecord job = iterator.next();
+            if (job.status().isTerminal() && job.at() < expiredBefore) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // mesmo limite do StatusStore: além dele o status do job já teria sido despejado
+    private void dropOverflow() {
+        Iterator<JournalRecord> iterator = jobs.values().iterator();
+        while (jobs.size() > maxJobs && iterator.hasNext()) {
+            if (iterator.next().status().isTerminal()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void writeRecord(FileChannel out, JournalRecord record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(concat(mapper.writeValueAsBytes(record), NEWLINE));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte[] concat(byte[] line, byte[] end) {
+        byte[] bytes = new byte[line.length + end.length];
+        System.arraycopy(line, 0, bytes, 0, line.length);
+        System.arraycopy(end, 0, bytes, line.length, end.length);
+        return bytes;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.DownloadStatus;
+
+@FunctionalInterface
+public interface JobStatusListener {
+
+    /**
+     * Called after a job status was stored. Runs on the thread that produced the update, which
+     * may be reading yt-dlp output, so implementations must not block.
+     */
+    void onStatus(String jobId, DownloadStatus status);
+}
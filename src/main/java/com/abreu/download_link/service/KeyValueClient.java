@@ -0,0 +1,19 @@
+package com.abreu.download_link.service;
+
+import java.time.Duration;
+
+/**
+ * Minimal contract of the shared key-value backend (Redis, Memcached, ...) used by
+ * {@link ExternalStatusStore}. Declaring a bean of this type switches job state to that backend.
+ */
+public interface KeyValueClient {
+
+    String get(String key);
+
+    /**
+     * Stores the value; a {@code null} TTL means the key does not expire.
+     */
+    void set(String key, String value, Duration ttl);
+
+    void delete(String key);
+}
@@ -0,0 +1,130 @@
+package com.abreu.download_link.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The audio file of an in-flight download as it is being written by the transcoder. Any number
+ * of readers can follow it concurrently: each one tails the growing file through its own channel
+ * and stops once the download is finished and everything written has been sent.
+ * <p>
+ * The file is moved into the result cache when the download ends; readers that already opened it
+ * keep their descriptor, the others open the final location.
+ */
+class LiveOutput implements AudioStream {
+
+    static final long POLL_MILLIS = 100;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String mediaType;
+    private Path path;
+    private Path finalPath;
+    private boolean finished;
+    private boolean failed;
+
+    LiveOutput(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    @Override
+    public String mediaType() {
+        return mediaType;
+    }
+
+    synchronized void start(Path path) {
+        this.path = path;
+        notifyAll();
+    }
+
+    synchronized void complete(Path finalPath) {
+        this.finalPath = finalPath;
+        this.finished = true;
+        notifyAll();
+    }
+
+    synchronized void fail() {
+        this.finished = true;
+        this.failed = true;
+        notifyAll();
+    }
+
+    @Override
+    public long writeTo(OutputStream out) throws IOException {
+        try (FileChannel channel = open()) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long sent = 0;
+            while (true) {
+                boolean done = isFinished();
+                int read = channel.read(buffer);
+                if (read > 0) {
+                    out.write(buffer.array(), 0, read);
+                    out.flush();
+                    sent += read;
+                    buffer.clear();
+                    continue;
+                }
+                // só encerra depois de uma leitura vazia feita após o fim do processo
+                if (done) {
+                    if (isFailed()) {
+                        throw new IOException("Download failed while streaming");
+                    }
+                    return sent;
+                }
+                awaitChange();
+            }
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        while (true) {
+            Path target;
+            synchronized (this) {
+                while (path == null && !finished) {
+                    waitForChange();
+                }
+                if (failed) {
+                    throw new IOException("Download failed before any audio was produced");
+                }
+                target = finished ? finalPath : path;
+            }
+            try {
+                return FileChannel.open(target, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // o arquivo acabou de ser movido para o cache; complete() chega em seguida
+                if (isFinished()) {
+                    throw e;
+                }
+                awaitChange();
+            }
+        }
+    }
+
+    private synchronized boolean isFinished() {
+        return finished;
+    }
+
+    private synchronized boolean isFailed() {
+        return failed;
+    }
+
+    private synchronized void awaitChange() throws InterruptedIOException {
+        if (!finished) {
+            waitForChange();
+        }
+    }
+
+    private void waitForChange() throws InterruptedIOException {
+        try {
+            wait(POLL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for audio");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.abreu.download_link.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring buffer holding the last lines of a process output. Memory stays constant no
+ * matter how verbose the process is; overly long lines are truncated.
+ */
+final class OutputTail {
+
+    static final int MAX_LINE_LENGTH = 1024;
+
+    private final String[] lines;
+    private int next;
+    private int count;
+    private long dropped;
+
+    OutputTail(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.lines = new String[capacity];
+    }
+
+    void add(String line) {
+        if (line.length() > MAX_LINE_LENGTH) {
+            line = line.substring(0, MAX_LINE_LENGTH) + "...";
+        }
+        if (count == lines.length) {
+            dropped++;
+        } else {
+            count++;
+        }
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+    }
+
+    /** Retained lines, oldest first. */
+    List<String> lines() {
+        List<String> result = new ArrayList<>(count);
+        int start = (next - count + lines.length) % lines.length;
+        for (int i = 0; i < count; i++) {
+            result.add(lines[(start + i) % lines.length]);
+        }
+        return result;
+    }
+
+    long dropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        String body = String.join("\n", lines());
+        return dropped == 0 ? body : "... (" + dropped + " earlier lines omitted)\n" + body;
+    }
+}
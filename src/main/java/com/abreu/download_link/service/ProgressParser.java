@@ -0,0 +1,269 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.DownloadProgress;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns yt-dlp output lines into {@link DownloadProgress} snapshots. It understands the machine
+ * format produced by {@link #PROGRESS_TEMPLATE} and, as a fallback, the default human readable
+ * {@code [download]  42.3% of 5.10MiB at 1.20MiB/s ETA 00:03} lines.
+ * <p>
+ * One parser is used per running download and it is fed every output line, so parsing works on
+ * string indices and keeps its state in primitive fields; only {@link #snapshot()} allocates.
+ * {@link #accept(String)} also throttles updates so the status store is not written for every tick.
+ */
+public class ProgressParser {
+
+    static final String PROGRESS_PREFIX = "[progress] ";
+    static final String PROGRESS_TEMPLATE = "download:" + PROGRESS_PREFIX
+            + "%(progress.downloaded_bytes)s %(progress.total_bytes)s %(progress.total_bytes_estimate)s "
+            + "%(progress.speed)s %(progress.eta)s";
+
+    private static final String DOWNLOAD_PREFIX = "[download]";
+    private static final String EXTRACT_AUDIO_PREFIX = "[ExtractAudio]";
+    private static final long MIN_PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final double MIN_PERCENT_STEP = 1.0;
+    private static final long UNKNOWN = -1;
+
+    private final LongSupplier clock;
+
+    private DownloadPhase phase = DownloadPhase.DOWNLOADING;
+    private double percent;
+    private long downloadedBytes;
+    private long totalBytes = UNKNOWN;
+    private long speed = UNKNOWN;
+    private long eta = UNKNOWN;
+
+    private DownloadPhase publishedPhase;
+    private double publishedPercent = -1;
+    private long publishedAt;
+    private int cursor;
+
+    public ProgressParser() {
+        this(System::nanoTime);
+    }
+
+    ProgressParser(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Feeds one output line and returns {@code true} when the progress changed enough to be
+     * worth publishing.
+     */
+    public boolean accept(String line) {
+        if (!parse(line)) {
+            return false;
+        }
+
+        long now = clock.getAsLong();
+        boolean publish = phase != publishedPhase
+                || (percent >= 100 && publishedPercent < 100)
+                || (percent - publishedPercent >= MIN_PERCENT_STEP && now - publishedAt >= MIN_PUBLISH_INTERVAL_NANOS);
+        if (publish) {
+            publishedPhase = phase;
+            publishedPercent = percent;
+            publishedAt = now;
+        }
+        return publish;
+    }
+
+    /**
+     * Returns {@code true} if the line carried progress information, without throttling.
+     */
+    boolean parse(String line) {
+        if (line.startsWith(PROGRESS_PREFIX)) {
+            return parseTemplate(line);
+        }
+        if (line.startsWith(DOWNLOAD_PREFIX)) {
+            return parseHumanReadable(line);
+        }
+        if (line.startsWith(EXTRACT_AUDIO_PREFIX)) {
+            enterPhase(DownloadPhase.EXTRACTING_AUDIO);
+            return true;
+        }
+        return false;
+    }
+
+    public DownloadProgress snapshot() {
+        return new DownloadProgress(phase, Math.round(percent * 10) / 10.0, downloadedBytes, totalBytes, speed, eta);
+    }
+
+    public DownloadPhase phase() {
+        return phase;
+    }
+
+    private boolean parseTemplate(String line) {
+        cursor = PROGRESS_PREFIX.length();
+        long downloaded = nextNumber(line);
+        long total = nextNumber(line);
+        long estimate = nextNumber(line);
+        long currentSpeed = nextNumber(line);
+        long currentEta = nextNumber(line);
+        if (downloaded == UNKNOWN) {
+            return false;
+        }
+
+        enterPhase(DownloadPhase.DOWNLOADING);
+        downloadedBytes = downloaded;
+        totalBytes = total != UNKNOWN ? total : estimate;
+        speed = currentSpeed;
+        eta = currentEta;
+        percent = totalBytes > 0 ? Math.min(100.0, downloadedBytes * 100.0 / totalBytes) : percent;
+        return true;
+    }
+
+    private boolean parseHumanReadable(String line) {
+        int end = line.length();
+        int pos = skipSpaces(line, DOWNLOAD_PREFIX.length(), end);
+        int percentSign = line.indexOf('%', pos);
+        if (percentSign < 0 || !isNumber(line, pos, percentSign)) {
+            return false;
+        }
+
+        enterPhase(DownloadPhase.DOWNLOADING);
+        percent = Math.min(100.0, parseDecimal(line, pos, percentSign));
+
+        int of = line.indexOf(" of ", percentSign);
+        if (of >= 0) {
+            int sizeStart = skipSpaces(line, of + 4, end);
+            if (sizeStart < end && line.charAt(sizeStart) == '~') {
+                sizeStart = skipSpaces(line, sizeStart + 1, end);
+            }
+            totalBytes = parseSize(line, sizeStart, tokenEnd(line, sizeStart, end));
+            downloadedBytes = totalBytes > 0 ? (long) (totalBytes * percent / 100.0) : downloadedBytes;
+        }
+
+        int at = line.indexOf(" at ", percentSign);
+        if (at >= 0) {
+            int speedStart = skipSpaces(line, at + 4, end);
+            int speedEnd = tokenEnd(line, speedStart, end);
+            // "1.20MiB/s": ignora o sufixo "/s" ao interpretar a unidade
+            speed = speedEnd - speedStart > 2 && line.startsWith("/s", speedEnd - 2)
+                    ? parseSize(line, speedStart, speedEnd - 2)
+                    : UNKNOWN;
+        }
+
+        int etaIndex = line.indexOf(" ETA ", percentSign);
+        eta = etaIndex >= 0 ? parseClock(line, skipSpaces(line, etaIndex + 5, end), end) : (percent >= 100 ? 0 : UNKNOWN);
+        return true;
+    }
+
+    private void enterPhase(DownloadPhase next) {
+        if (next == phase) {
+            return;
+        }
+        phase = next;
+        percent = 0;
+        speed = UNKNOWN;
+        eta = UNKNOWN;
+    }
+
+    private long nextNumber(String line) {
+        int end = line.length();
+        int start = skipSpaces(line, cursor, end);
+        int stop = tokenEnd(line, start, end);
+        cursor = stop;
+        return isNumber(line, start, stop) ? (long) parseDecimal(line, start, stop) : UNKNOWN;
+    }
+
+    private static long parseSize(String line, int start, int end) {
+        int unitStart = start;
+        while (unitStart < end && (Character.isDigit(line.charAt(unitStart)) || line.charAt(unitStart) == '.')) {
+            unitStart++;
+        }
+        if (unitStart == start) {
+            return UNKNOWN;
+        }
+        double value = parseDecimal(line, start, unitStart);
+        return (long) (value * unitMultiplier(line, unitStart, end));
+    }
+
+    private static double unitMultiplier(String line, int start, int end) {
+        if (start >= end) {
+            return 1;
+        }
+        boolean binary = end - start >= 3 && line.charAt(start + 1) == 'i';
+        double base = binary ? 1024 : 1000;
+        return switch (Character.toUpperCase(line.charAt(start))) {
+            case 'K' -> base;
+            case 'M' -> base * base;
+            case 'G' -> base * base * base;
+            case 'T' -> base * base * base * base;
+            default -> 1;
+        };
+    }
+
+    private static long parseClock(String line, int start, int end) {
+        long seconds = 0;
+        long field = 0;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                field = field * 10 + (c - '0');
+                digits = true;
+            } else if (c == ':') {
+                seconds = (seconds + field) * 60;
+                field = 0;
+            } else {
+                break;
+            }
+        }
+        return digits ? seconds + field : UNKNOWN;
+    }
+
+    private static double parseDecimal(String line, int start, int end) {
+        long integer = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean afterDot = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '.') {
+                afterDot = true;
+            } else if (afterDot) {
+                if (scale < 1_000_000) {
+                    fraction = fraction * 10 + (c - '0');
+                    scale *= 10;
+                }
+            } else {
+                integer = integer * 10 + (c - '0');
+            }
+        }
+        return integer + (double) fraction / scale;
+    }
+
+    private static boolean isNumber(String line, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        boolean dot = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '.' && !dot) {
+                dot = true;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(String line, int pos, int end) {
+        while (pos < end && line.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tokenEnd(String line, int pos, int end) {
+        while (pos < end && line.charAt(pos) != ' ') {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,372 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.CacheEntry;
+import com.abreu.download_link.domain.CacheKey;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of finished downloads, keyed by video and audio options. Entries are kept in
+ * least-recently-used order and evicted once the configured byte budget is exceeded; entries
+ * whose file is still being served are skipped until their lease is gone, so the cache can run
+ * over budget for as long as those transfers last. A small JSON index next to the files lets the
+ * cache survive restarts; files the index misses, e.g. because the service stopped before the
+ * next flush, are taken back in when their name still says which video and format they hold.
+ * Their display name comes from a small sidecar file written next to each cached file.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ResultCache {
+
+    static final String INDEX_FILE = "index.json";
+    static final String NAME_SUFFIX = ".name";
+
+    // nome gravado por put(): <id do vídeo>-<formato>-<qualidade>[.ext]
+    private static final Pattern STORED_NAME = Pattern.compile("([a-zA-Z0-9_-]{11})-([a-z0-9]+)-([A-Za-z0-9]+)(\\.\\w+)?");
+
+    private final DownloadProperties properties;
+    private final FileLeases leases;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // serializa snapshot + escrita + move: flushes concorrentes dividiam o mesmo .tmp
+    private final Object flushLock = new Object();
+
+    // Ordem de acesso: o primeiro elemento é sempre o menos usado recentemente
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> idByStoredName = new HashMap<>();
+    private long usedBytes;
+    private boolean dirty;
+    private Path cacheDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        cacheDir = Paths.get(properties.getCache().getDirectory()).toAbsolutePath().normalize();
+        Files.createDirectories(cacheDir);
+        load();
+        log.info("Result cache at {} holds {} entries ({} bytes, budget {} bytes)",
+                cacheDir, entries.size(), usedBytes, maxBytes());
+    }
+
+    public Path getDirectory() {
+        return cacheDir;
+    }
+
+    public synchronized Optional<CacheEntry> get(CacheKey key) {
+        return Optional.ofNullable(touch(key.id()));
+    }
+
+    public synchronized Optional<CacheEntry> findByStoredName(String storedName) {
+        String id = idByStoredName.get(storedName);
+        return id != null ? Optional.ofNullable(touch(id)) : Optional.empty();
+    }
+
+    public Path resolve(CacheEntry entry) {
+        return cacheDir.resolve(entry.storedName());
+    }
+
+    /**
+     * Moves a finished download into the cache and returns its entry. The source file no longer
+     * exists once this method returns.
+     */
+    public CacheEntry put(CacheKey key, Path source, String displayName) throws IOException {
+        String storedName = key.id() + extensionOf(source);
+        Path target = cacheDir.resolve(storedName);
+        move(source, target);
+        writeDisplayName(target, displayName);
+
+        long now = System.currentTimeMillis();
+        CacheEntry entry = new CacheEntry(key, storedName, displayName, Files.size(target), now, now, 0);
+        List<CacheEntry> evicted;
+        synchronized (this) {
+            CacheEntry previous = entries.put(key.id(), entry);
+            if (previous != null) {
+                usedBytes -= previous.size();
+            }
+            idByStoredName.put(storedName, key.id());
+            usedBytes += entry.size();
+            evicted = evictOverBudget(key.id());
+            dirty = true;
+        }
+
+        evicted.forEach(this::deleteFile);
+        flush();
+        log.info("Cached {} as {} ({} bytes)", displayName, storedName, entry.size());
+        return entry;
+    }
+
+    /**
+     * Evicts least-recently-used entries until at least {@code bytes} have been freed or only
+     * leased entries are left, and returns how many bytes were freed.
+     */
+    public long evict(long bytes) {
+        List<CacheEntry> evicted;
+        synchronized (this) {
+            evicted = evictUntil(usedBytes - bytes, null);
+            dirty |= !evicted.isEmpty();
+        }
+        evicted.forEach(this::deleteFile);
+        if (!evicted.isEmpty()) {
+            flush();
+        }
+        return evicted.stream().mapToLong(CacheEntry::size).sum();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the index when it changed. Flushes run one at a time and each takes its snapshot
+     * after the previous one was written, so an older snapshot never replaces a newer index.
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void flush() {
+        synchronized (flushLock) {
+            List<CacheEntry> snapshot;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                snapshot = new ArrayList<>(entries.values());
+                dirty = false;
+            }
+
+            Path index = cacheDir.resolve(INDEX_FILE);
+            Path temp = cacheDir.resolve(INDEX_FILE + ".tmp");
+            try {
+                mapper.writeValue(temp.toFile(), snapshot);
+                move(temp, index);
+            } catch (IOException e) {
+                log.error("Failed to write cache index {}: {}", index, e.getMessage());
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private CacheEntry touch(String id) {
+        CacheEntry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        CacheEntry touched = entry.touch(System.currentTimeMillis());
+        entries.put(id, touched);
+        dirty = true;
+        return touched;
+    }
+
+    private List<CacheEntry> evictOverBudget(String keep) {
+        return evictUntil(maxBytes(), keep);
+    }
+
+    private List<CacheEntry> evictUntil(long targetBytes, String keep) {
+        List<CacheEntry> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > targetBytes && iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> candidate = iterator.next();
+            if (candidate.getKey().equals(keep)) {
+                continue;
+            }
+            CacheEntry entry = candidate.getValue();
+            if (!leases.tryRetire(resolve(entry))) {
+                continue;
+            }
+            iterator.remove();
+            idByStoredName.remove(entry.storedName());
+            usedBytes -= entry.size();
+            evicted.add(entry);
+        }
+        return evicted;
+    }
+
+    private void load() throws IOException {
+        Path index = cacheDir.resolve(INDEX_FILE);
+        List<CacheEntry> stored = List.of();
+        boolean indexReadable = true;
+        if (Files.exists(index)) {
+            try {
+                stored = mapper.readValue(index.toFile(), new TypeReference<List<CacheEntry>>() {});
+            } catch (IOException e) {
+                indexReadable = false;
+                log.warn("Cache index {} is unreadable, rebuilding it from the cached files: {}", index, e.getMessage());
+            }
+        }
+
+        Set<String> indexed = stored.stream()
+                .map(CacheEntry::storedName)
+                .filter(name -> Files.isRegularFile(cacheDir.resolve(name)))
+                .collect(Collectors.toSet());
+        List<Path> unindexed = new ArrayList<>();
+        List<Path> nameFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.filter(path -> !path.getFileName().toString().startsWith(INDEX_FILE)).forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.endsWith(NAME_SUFFIX)) {
+                    nameFiles.add(path);
+                } else if (!indexed.contains(name)) {
+                    unindexed.add(path);
+                }
+            });
+        }
+
+        // Arquivos fora do índice entram como os menos usados; depois vem o índice, salvo em ordem LRU
+        List<CacheEntry> adopted = new ArrayList<>();
+        for (Path file : unindexed) {
+            Optional<CacheEntry> entry = adopt(file);
+            if (entry.isPresent()) {
+                adopted.add(entry.get());
+            } else if (indexReadable) {
+                deleteOrphan(file);
+            } else {
+                log.warn("Keeping unindexed cache file {}: the index could not be read", file);
+            }
+        }
+        adopted.sort(Comparator.comparingLong(CacheEntry::lastAccess));
+        List<CacheEntry> loaded = new ArrayList<>(adopted);
+        stored.stream().filter(entry -> indexed.contains(entry.storedName())).forEach(loaded::add);
+        for (CacheEntry entry : loaded) {
+            CacheEntry previous = entries.put(entry.key().id(), entry);
+            if (previous != null) {
+                usedBytes -= previous.size();
+                idByStoredName.remove(previous.storedName());
+            }
+            idByStoredName.put(entry.storedName(), entry.key().id());
+            usedBytes += entry.size();
+        }
+        if (!adopted.isEmpty()) {
+            log.info("Took {} cache files missing from the index back in", adopted.size());
+        }
+
+        // nomes cujo arquivo já não existe
+        for (Path nameFile : nameFiles) {
+            String storedName = nameFile.getFileName().toString();
+            if (!Files.exists(nameFile.resolveSibling(storedName.substring(0, storedName.length() - NAME_SUFFIX.length())))) {
+                Files.deleteIfExists(nameFile);
+            }
+        }
+
+        List<CacheEntry> evicted = evictOverBudget(null);
+        evicted.forEach(this::deleteFile);
+        dirty = !evicted.isEmpty() || !adopted.isEmpty() || stored.size() != entries.size();
+    }
+
+    /**
+     * Entry for a cache file the index does not know, when its name identifies the video. Without
+     * its sidecar the file is served as {@code <videoId>.<ext>}.
+     */
+    private Optional<CacheEntry> adopt(Path file) {
+        Matcher name = STORED_NAME.matcher(file.getFileName().toString());
+        if (!name.matches() || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            CacheKey key = new CacheKey(name.group(1), name.group(2), name.group(3));
+            String storedName = file.getFileName().toString();
+            String displayName = readDisplayName(file)
+                    .orElse(name.group(1) + (name.group(4) != null ? name.group(4) : ""));
+            return Optional.of(new CacheEntry(key, storedName, displayName, Files.size(file), modified, modified, 0));
+        } catch (IOException e) {
+            log.warn("Could not read unindexed cache file {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static Path nameFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + NAME_SUFFIX);
+    }
+
+    private static void writeDisplayName(Path file, String displayName) {
+        try {
+            Files.writeString(nameFileOf(file), displayName);
+        } catch (IOException e) {
+            // só o nome se perde: sem índice, o arquivo volta como <videoId>.<ext>
+            log.warn("Could not record the display name of {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static Optional<String> readDisplayName(Path file) {
+        try {
+            String displayName = Files.readString(nameFileOf(file)).strip();
+            return displayName.isEmpty() ? Optional.empty() : Optional.of(displayName);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void deleteOrphan(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            log.info("Removed orphan cache file {}", path);
+        } catch (IOException e) {
+            log.warn("Could not remove orphan cache file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void deleteFile(CacheEntry entry) {
+        try {
+            Files.deleteIfExists(resolve(entry));
+            Files.deleteIfExists(nameFileOf(resolve(entry)));
+            log.info("Evicted {} from cache ({} bytes)", entry.storedName(), entry.size());
+        } catch (IOException e) {
+            log.error("Error evicting {}: {}", entry.storedName(), e.getMessage());
+        } finally {
+            leases.forget(resolve(entry));
+        }
+    }
+
+    private long maxBytes() {
+        return properties.getCache().getMaxSize().toBytes();
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot) : "";
+    }
+}
@@ -0,0 +1,34 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.DownloadStatus;
+
+/**
+ * Storage behind {@link DownloadStatusManager}. Implementations must bound their size and expire
+ * finished jobs; the in-memory store is the default and {@link ExternalStatusStore} lets several
+ * nodes share job state through a key-value backend.
+ */
+public interface StatusStore {
+
+    void register(String jobId, String videoKey, DownloadStatus status);
+
+    void update(String jobId, DownloadStatus status);
+
+    /**
+     * Returns the status of the job, or {@code null} if it is unknown or has expired.
+     */
+    DownloadStatus get(String jobId);
+
+    /**
+     * Returns the most recent job registered for the video, or {@code null}.
+     */
+    String latestJob(String videoKey);
+
+    void remove(String jobId);
+
+    /**
+     * Number of statuses currently held, or {@code -1} when the backend cannot tell.
+     */
+    long size();
+
+    long evictions();
+}
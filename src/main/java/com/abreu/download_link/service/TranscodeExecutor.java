@@ -0,0 +1,132 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.exceptions.DownloadCancelledException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs the transcode stage on a pool sized to the CPU, separate from the download workers that
+ * are sized to the network. Fetched files reach it through a bounded hand-off: when every
+ * transcode worker is busy and the hand-off is full, the download worker that wants to hand over
+ * waits, so fetching never gets far ahead of encoding and the disk does not fill up with sources.
+ */
+@Component
+@Slf4j
+public class TranscodeExecutor {
+
+    private static final long HANDOFF_POLL_MILLIS = 100;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public TranscodeExecutor(DownloadProperties properties) {
+        DownloadProperties.PipelineProperties config = properties.getPipeline();
+        int workers = config.effectiveTranscodeWorkers();
+        // a fila do pool não tem limite próprio: o semáforo já limita workers + hand-off
+        this.slots = new Semaphore(workers + config.getHandoffCapacity());
+        this.executor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                namedThreads()
+        );
+        log.info("Transcode executor started with {} workers and hand-off capacity {}", workers, config.getHandoffCapacity());
+    }
+
+    /**
+     * Hands a task over to the transcode pool, blocking while the hand-off is full. Waiting
+     * stops with {@link DownloadCancelledException} as soon as {@code cancelled} turns true.
+     */
+    public <T> CompletableFuture<T> submit(BooleanSupplier cancelled, Supplier<T> task) throws InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            while (!slots.tryAcquire(HANDOFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.getAsBoolean()) {
+                    throw new DownloadCancelledException("Download cancelled while waiting to transcode");
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(new Handoff<>(future, task));
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw new DownloadCancelledException("Transcoding is shutting down");
+        }
+        return future;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /** Fetched files handed over and waiting for a transcode worker. */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /** Download workers blocked because the hand-off is full. */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    private static ThreadFactory namedThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "transcode-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // quem ainda estava na fila não vai rodar: falha o job em vez de deixá-lo pendurado
+        for (Runnable dropped : executor.shutdownNow()) {
+            if (dropped instanceof Handoff<?> handoff) {
+                handoff.future.completeExceptionally(new DownloadCancelledException("Transcoding is shutting down"));
+            }
+        }
+    }
+
+    private final class Handoff<T> implements Runnable {
+
+        private final CompletableFuture<T> future;
+        private final Supplier<T> task;
+
+        Handoff(CompletableFuture<T> future, Supplier<T> task) {
+            this.future = future;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                slots.release();
+            }
+        }
+    }
+}
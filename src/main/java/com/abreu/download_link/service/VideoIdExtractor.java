@@ -0,0 +1,133 @@
+package com.abreu.download_link.service;
+
+/**
+ * Pulls the 11 character video ID out of the YouTube URL shapes accepted by
+ * {@link com.abreu.download_link.domain.YoutubeLinkRequest}: {@code watch?v=}, {@code youtu.be/},
+ * {@code shorts/}, {@code embed/}, {@code live/} and {@code v/}, with or without scheme and with
+ * the {@code www.}, {@code m.} or {@code music.} prefixes.
+ * <p>
+ * It runs on every request, so it walks the string by index instead of using a regex and only
+ * allocates the returned ID.
+ */
+public final class VideoIdExtractor {
+
+    static final int VIDEO_ID_LENGTH = 11;
+
+    private static final String WATCH_URL = "https://www.youtube.com/watch?v=";
+    private static final String[] SCHEMES = {"https://", "http://"};
+    private static final String[] SUBDOMAINS = {"www.", "m.", "music."};
+    private static final String[] PATH_PREFIXES = {"shorts/", "embed/", "live/", "v/"};
+
+    private VideoIdExtractor() {
+    }
+
+    /**
+     * Returns the video ID, or {@code null} when the URL does not point at a single video.
+     */
+    public static String videoId(String url) {
+        if (url == null) {
+            return null;
+        }
+
+        int end = url.length();
+        int pos = 0;
+        while (pos < end && Character.isWhitespace(url.charAt(pos))) {
+            pos++;
+        }
+        while (end > pos && Character.isWhitespace(url.charAt(end - 1))) {
+            end--;
+        }
+
+        pos = skipAny(url, pos, end, SCHEMES);
+        pos = skipAny(url, pos, end, SUBDOMAINS);
+
+        int next;
+        if ((next = skip(url, pos, end, "youtu.be/")) >= 0) {
+            return readId(url, next, end);
+        }
+        if ((next = skip(url, pos, end, "youtube.com/")) < 0) {
+            return null;
+        }
+        pos = next;
+
+        if ((next = skip(url, pos, end, "watch?")) >= 0) {
+            return readQueryParameter(url, next, end);
+        }
+        for (String prefix : PATH_PREFIXES) {
+            if ((next = skip(url, pos, end, prefix)) >= 0) {
+                return readId(url, next, end);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Key shared by every request for the same video, falling back to the raw URL for links
+     * that do not point at a single video.
+     */
+    public static String canonicalKey(String url) {
+        String id = videoId(url);
+        return id != null ? id : url;
+    }
+
+    /**
+     * The URL handed to yt-dlp: the plain watch URL for single videos, so tracking parameters or a
+     * stray {@code list=} do not change what gets downloaded.
+     */
+    public static String canonicalUrl(String url) {
+        String id = videoId(url);
+        return id != null ? WATCH_URL + id : url;
+    }
+
+    private static String readQueryParameter(String url, int pos, int end) {
+        while (pos < end) {
+            if (pos + 2 <= end && url.charAt(pos) == 'v' && url.charAt(pos + 1) == '=') {
+                return readId(url, pos + 2, end);
+            }
+            int amp = url.indexOf('&', pos);
+            if (amp < 0 || amp >= end) {
+                return null;
+            }
+            pos = amp + 1;
+        }
+        return null;
+    }
+
+    private static String readId(String url, int pos, int end) {
+        int idEnd = pos + VIDEO_ID_LENGTH;
+        if (idEnd > end) {
+            return null;
+        }
+        for (int i = pos; i < idEnd; i++) {
+            if (!isIdChar(url.charAt(i))) {
+                return null;
+            }
+        }
+        if (idEnd < end && isIdChar(url.charAt(idEnd))) {
+            return null;
+        }
+        return url.substring(pos, idEnd);
+    }
+
+    private static boolean isIdChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+    }
+
+    private static int skipAny(String url, int pos, int end, String[] prefixes) {
+        for (String prefix : prefixes) {
+            int next = skip(url, pos, end, prefix);
+            if (next >= 0) {
+                return next;
+            }
+        }
+        return pos;
+    }
+
+    private static int skip(String url, int pos, int end, String prefix) {
+        int length = prefix.length();
+        if (pos + length <= end && url.regionMatches(true, pos, prefix, 0, length)) {
+            return pos + length;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,108 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.VideoInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Metadata of recently looked up videos, keyed by video ID. Besides the parsed {@link VideoInfo}
+ * each entry keeps the JSON yt-dlp printed, so a download can hand it back to yt-dlp instead of
+ * extracting the video again. Entries expire after the configured TTL and the least recently
+ * used ones are dropped once the entry count or the JSON byte budget is exceeded.
+ */
+@Component
+public class VideoInfoCache {
+
+    /** Metadata of one video and the raw JSON it was parsed from. */
+    public record Entry(VideoInfo info, String json, long expiresAt) {
+    }
+
+    private final DownloadProperties.InfoProperties config;
+    private final Clock clock;
+
+    // Ordem de acesso: o primeiro elemento é sempre o menos usado recentemente
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    @Autowired
+    public VideoInfoCache(DownloadProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    VideoInfoCache(DownloadProperties properties, Clock clock) {
+        this.config = properties.getInfo();
+        this.clock = clock;
+    }
+
+    public synchronized Optional<Entry> get(String videoId) {
+        Entry entry = entries.get(videoId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.expiresAt() <= clock.millis()) {
+            remove(videoId);
+            return Optional.empty();
+        }
+        return Optional.of(entry);
+    }
+
+    public synchronized Entry put(String videoId, VideoInfo info, String json) {
+        remove(videoId);
+        Entry entry = new Entry(info, json, clock.millis() + config.getTtl().toMillis());
+        entries.put(videoId, entry);
+        usedBytes += weight(entry);
+        trim();
+        return entry;
+    }
+
+    /** Drops the metadata of a video, e.g. after a download that used it failed. */
+    public synchronized void invalidate(String videoId) {
+        remove(videoId);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    // uma entrada maior que o orçamento inteiro também sai: não há como guardá-la
+    private void trim() {
+        long now = clock.millis();
+        long maxBytes = config.getMaxSize().toBytes();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (entries.size() > config.getMaxEntries() || usedBytes > maxBytes)) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            usedBytes -= weight(eldest);
+        }
+        entries.values().removeIf(entry -> {
+            if (entry.expiresAt() > now) {
+                return false;
+            }
+            usedBytes -= weight(entry);
+            return true;
+        });
+    }
+
+    private void remove(String videoId) {
+        Entry removed = entries.remove(videoId);
+        if (removed != null) {
+            usedBytes -= weight(removed);
+        }
+    }
+
+    // o JSON domina o tamanho; a contagem em chars basta para o orçamento
+    private static long weight(Entry entry) {
+        return entry.json().length();
+    }
+}
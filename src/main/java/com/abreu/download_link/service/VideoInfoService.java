@@ -0,0 +1,133 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.VideoInfo;
+import com.abreu.download_link.exceptions.DownloadCancelledException;
+import com.abreu.download_link.exceptions.DownloadFailedException;
+import com.abreu.download_link.exceptions.InvalidYoutubeUrlException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Video metadata read with {@code yt-dlp --dump-json --skip-download}, kept in the
+ * {@link VideoInfoCache}. Concurrent lookups of the same video share one yt-dlp run.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VideoInfoService {
+
+    private final YoutubeProcessManager processManager;
+    private final VideoInfoCache cache;
+    private final DownloadMetrics metrics;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConcurrentHashMap<String, CompletableFuture<VideoInfoCache.Entry>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Metadata of the video a URL points at, from the cache when it was read within the TTL.
+     *
+     * @throws InvalidYoutubeUrlException when the URL does not point at a single video
+     */
+    public VideoInfo getInfo(String url) {
+        String videoId = VideoIdExtractor.videoId(url);
+        if (videoId == null) {
+            throw new InvalidYoutubeUrlException("URL does not point at a YouTube video: " + url);
+        }
+        return lookup(videoId, VideoIdExtractor.canonicalUrl(url)).info();
+    }
+
+    private VideoInfoCache.Entry lookup(String videoId, String url) {
+        Optional<VideoInfoCache.Entry> cached = cache.get(videoId);
+        if (cached.isPresent()) {
+            metrics.infoLookup(true);
+            return cached.get();
+        }
+        metrics.infoLookup(false);
+
+        CompletableFuture<VideoInfoCache.Entry> mine = new CompletableFuture<>();
+        CompletableFuture<VideoInfoCache.Entry> running = inFlight.putIfAbsent(videoId, mine);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            mine.complete(fetch(videoId, url));
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.remove(videoId, mine);
+        }
+        return join(mine);
+    }
+
+    private VideoInfoCache.Entry fetch(String videoId, String url) {
+        try {
+            String json = processManager.fetchInfo(url);
+            return cache.put(videoId, parse(videoId, mapper.readTree(json)), json);
+        } catch (IOException e) {
+            log.error("Could not read info of {}", videoId, e);
+            throw new DownloadFailedException("Could not read video info", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadCancelledException("Info request interrupted");
+        }
+    }
+
+    private static VideoInfoCache.Entry join(CompletableFuture<VideoInfoCache.Entry> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    static VideoInfo parse(String videoId, JsonNode json) {
+        return new VideoInfo(
+                json.path("id").asText(videoId),
+                text(json, "title"),
+                json.hasNonNull("uploader") ? text(json, "uploader") : text(json, "channel"),
+                number(json, "duration"),
+                text(json, "thumbnail"),
+                estimateAudioSize(json));
+    }
+
+    /**
+     * Size of the largest audio-only stream, the one {@code bestaudio} picks; falls back to the
+     * size announced for the whole video and then to duration times the average audio bitrate.
+     */
+    static Long estimateAudioSize(JsonNode json) {
+        long best = 0;
+        for (JsonNode format : json.path("formats")) {
+            boolean audioOnly = "none".equals(format.path("vcodec").asText())
+                    && !"none".equals(format.path("acodec").asText("none"));
+            if (audioOnly) {
+                best = Math.max(best, Math.max(format.path("filesize").asLong(0), format.path("filesize_approx").asLong(0)));
+            }
+        }
+        if (best > 0) {
+            return best;
+        }
+        Long approx = number(json, "filesize_approx");
+        if (approx != null && approx > 0) {
+            return approx;
+        }
+        Long duration = number(json, "duration");
+        double abr = json.path("abr").asDouble(0);
+        return duration != null && abr > 0 ? (long) (duration * abr * 1000 / 8) : null;
+    }
+
+    private static String text(JsonNode json, String field) {
+        return json.hasNonNull(field) ? json.get(field).asText() : null;
+    }
+
+    private static Long number(JsonNode json, String field) {
+        return json.hasNonNull(field) && json.get(field).isNumber() ? json.get(field).asLong() : null;
+    }
+}
@@ -1,51 +1,75 @@
 package com.abreu.download_link.service;
 
+import com.abreu.download_link.config.DownloadProperties;
 import com.abreu.download_link.domain.*;
+import com.abreu.download_link.domain.enums.AudioFormat;
 import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.exceptions.DownloadCancelledException;
 import com.abreu.download_link.exceptions.DownloadFailedException;
-import com.abreu.download_link.exceptions.MalformedURLException;
+import com.abreu.download_link.exceptions.JobNotFoundException;
+import com.abreu.download_link.exceptions.JobStateConflictException;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermissions;
-import java.time.Instant;
+import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class YoutubeDownloadService {
 
+    private static final SecureRandom JOB_ID_RANDOM = new SecureRandom();
+
     private String DOWNLOAD_DIR;
     private Path downloadsDir;
-    private final ConcurrentHashMap<String, FileMetadata> fileAccessMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CacheKey, InFlightDownload> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, InFlightDownload> flightsByJob = new ConcurrentHashMap<>();
 
     private final YoutubeProcessManager processManager;
     private final FileSystemManager fileSystemManager;
     private final DownloadStatusManager statusManager;
+    private final DownloadExecutor downloadExecutor;
+    private final TranscodeExecutor transcodeExecutor;
+    private final ResultCache resultCache;
+    private final FileExpiryIndex expiryIndex;
+    private final FileLeases fileLeases;
+    private final JobJournal journal;
+    private final VideoInfoCache videoInfo;
+    private final DownloadMetrics metrics;
+    private final DownloadProperties properties;
+    private boolean keepSources;
 
     @PostConstruct
     public void init() throws IOException {
+        keepSources = properties.getCache().isKeepSources();
         try {
-            Path tempDir = Files.createTempDirectory("yt-downloads-");
+            Optional<Path> previous = journal.previousDownloadsDir()
+                    .filter(dir -> Files.isDirectory(dir) && Files.isWritable(dir));
+            Path tempDir = previous.isPresent() ? previous.get() : Files.createTempDirectory("yt-downloads-");
             DOWNLOAD_DIR = tempDir.toAbsolutePath().toString();
             downloadsDir = tempDir;
 
@@ -62,6 +86,11 @@ public class YoutubeDownloadService {
                     Files.isDirectory(downloadsDir) && Files.isWritable(downloadsDir));
 
             fileSystemManager.createDirectoryWithPermissions(DOWNLOAD_DIR);
+            if (previous.isPresent()) {
+                log.info("Reusing the download directory of the previous run");
+                removeStagingLeftovers();
+            }
+            journal.recordDownloadsDir(downloadsDir);
         } catch (IOException e) {
             log.error("""
                 
@@ -74,143 +103,594 @@ public class YoutubeDownloadService {
                     Arrays.toString(e.getStackTrace()));
             throw e;
         }
+        recoverJobs();
+    }
+
+    /**
+     * Brings back the jobs of the previous run: finished ones become queryable again and their
+     * files outside the cache are tracked for cleanup; unfinished ones are queued again under
+     * the same id.
+     */
+    private void recoverJobs() {
+        List<JournalRecord> jobs = journal.recoveredJobs();
+        if (jobs.isEmpty()) {
+            return;
+        }
+        int requeued = 0;
+        for (JournalRecord job : jobs) {
+            if (job.status().isTerminal()) {
+                statusManager.restoreJob(job.jobId(), job.videoKey(), job.toStatus());
+                if (job.fileName() != null && resultCache.findByStoredName(job.fileName()).isEmpty()) {
+                    Path served = downloadsDir.resolve(job.fileName()).normalize();
+                    if (served.startsWith(downloadsDir) && Files.isRegularFile(served) && !expiryIndex.isTracked(served)) {
+                        expiryIndex.track(served);
+                    }
+                }
+                continue;
+            }
+            try {
+                String clientId = job.clientId() != null ? job.clientId() : DownloadExecutor.DEFAULT_CLIENT;
+                enqueue(job.jobId(), new YoutubeLinkRequest(job.url(), job.format(), job.priority()), clientId, true);
+                requeued++;
+            } catch (RuntimeException e) {
+                log.warn("Could not queue job {} again after restart: {}", job.jobId(), e.getMessage());
+                statusManager.restoreJob(job.jobId(), job.videoKey(),
+                        new DownloadStatus(Status.FAILED, "Could not be queued again after a restart: " + e.getMessage()));
+            }
+        }
+        log.info("Recovered {} jobs from the journal, {} queued again", jobs.size(), requeued);
+    }
+
+    private void removeStagingLeftovers() throws IOException {
+        try (Stream<Path> entries = Files.list(downloadsDir)) {
+            entries.filter(path -> Files.isDirectory(path) && path.getFileName().toString().startsWith("job-"))
+                    .forEach(this::deleteStagingDir);
+        }
+    }
+
+    /**
+     * Queues a download job. Jobs for a video and format that is already being downloaded attach
+     * to the running download instead of starting another one.
+     */
+    public DownloadJob submit(YoutubeLinkRequest request) {
+        return submit(request, DownloadExecutor.DEFAULT_CLIENT);
+    }
+
+    /**
+     * Queues a download job on behalf of a client, the unit the executor shares workers between.
+     * A job that attaches to a running download keeps the place in the queue that download has.
+     */
+    public DownloadJob submit(YoutubeLinkRequest request, String clientId) {
+        return enqueue(newJobId(), request, clientId, false);
     }
 
-    @Async
-    public CompletableFuture<YoutubeResponse> downloadAudio(YoutubeLinkRequest request) {
+    private DownloadJob enqueue(String jobId, YoutubeLinkRequest request, String clientId, boolean recovered) {
+        long submittedAt = System.nanoTime();
         String url = request.url();
-        Path filePath = null;
+        String videoKey = VideoIdExtractor.canonicalKey(url);
+        CacheKey key = cacheKeyFor(videoKey, request.format());
+        String downloadUrl = VideoIdExtractor.canonicalUrl(url);
 
+        // um job recuperado já tem seu SUBMITTED no journal
+        if (!recovered) {
+            journal.recordSubmitted(jobId, url, videoKey, request.format(), clientId, request.priority());
+        }
+        statusManager.registerJob(jobId, videoKey);
+        InFlightDownload flight;
         try {
-            statusManager.updateStatus(url, Status.STARTING, "Download starting");
-            log.info("Starting download for: {}", url);
-
-            // Obter nome do arquivo esperado
-            String expectedFilePath = processManager.getExpectedFileName(url, DOWNLOAD_DIR);
-            filePath = Paths.get(expectedFilePath);
-            fileAccessMap.put(filePath.toString(), new FileMetadata(true));
-
-            statusManager.updateStatus(url, Status.IN_PROGRESS, "Download in progress");
-            log.info("Starting download for URL: {}", url);
-
-            ProcessResult result = processManager.executeDownload(url, DOWNLOAD_DIR);
-
-            if (result.exitCode() != 0 || !Files.exists(filePath)) {
-                // Tentar encontrar o arquivo mais recente como fallback
-                try (var files = Files.list(Paths.get(DOWNLOAD_DIR))) {
-                    filePath = files
-                            .filter(path -> path.toString().endsWith(".mp3"))
-                            .max(Comparator.comparingLong(p -> {
-                                try {
-                                    return Files.getLastModifiedTime(p).toMillis();
-                                } catch (IOException e) {
-                                    return 0;
-                                }
-                            }))
-                            .orElseThrow(() -> new DownloadFailedException("MP3 file not found after download"));
+            flight = inFlight.computeIfAbsent(key, k -> startFlight(k, request, downloadUrl, clientId, recovered));
+        } catch (RuntimeException e) {
+            statusManager.removeJob(jobId);
+            journal.recordRemoved(jobId);
+            throw e;
+        }
+
+        flight.attach(jobId);
+        flightsByJob.put(jobId, flight);
+        CompletableFuture<YoutubeResponse> result = flight.future()
+                .whenComplete((response, error) -> {
+                    // antes de concluir o job, para que um novo pedido já encontre o resultado no cache
+                    inFlight.remove(key, flight);
+                    finishJob(jobId, response, error, System.nanoTime() - submittedAt);
+                    flightsByJob.remove(jobId);
+                });
+
+        log.info("Job {} attached to download of {}", jobId, key.id());
+        return new DownloadJob(jobId, url, result);
+    }
+
+    public DownloadStatus getJobStatus(String jobId) {
+        return statusManager.findStatus(jobId)
+                .orElseThrow(() -> new JobNotFoundException("Job not found: " + jobId));
+    }
+
+    public Optional<DownloadStatus> findJobStatus(String jobId) {
+        return statusManager.findStatus(jobId);
+    }
+
+    /** Position of a job's download among the waiting ones, starting at 1; 0 when it is not waiting. */
+    public int queuePosition(String jobId) {
+        InFlightDownload flight = flightsByJob.get(jobId);
+        return flight != null ? flight.queuePosition() : 0;
+    }
+
+    /**
+     * Cancels a job. The yt-dlp run it was attached to is stopped only when no other job is
+     * waiting for the same video.
+     */
+    public DownloadStatus cancelJob(String jobId) {
+        DownloadStatus status = getJobStatus(jobId);
+        if (status.status().isTerminal()) {
+            throw new JobStateConflictException("Job " + jobId + " already finished with status " + status.status());
+        }
+
+        // sai do download antes de gravar CANCELLED, para que nenhum progresso novo chegue ao job
+        InFlightDownload flight = flightsByJob.remove(jobId);
+        boolean lastJob = flight != null && flight.detach(jobId);
+        if (!statusManager.updateStatus(jobId, Status.CANCELLED, "Cancelled by the client")) {
+            // o job terminou entre a verificação acima e agora; o download já acabou
+            throw new JobStateConflictException("Job " + jobId + " already finished with status "
+                    + getJobStatus(jobId).status());
+        }
+        metrics.jobCancelled();
+        if (lastJob) {
+            inFlight.remove(flight.key(), flight);
+            flight.cancel();
+            flight.dequeue();
+            log.info("Job {} cancelled, stopping download of {}", jobId, flight.key().id());
+        } else {
+            log.info("Job {} cancelled", jobId);
+        }
+        return getJobStatus(jobId);
+    }
+
+    /**
+     * Audio of a job for streaming. While the job is running the stream follows the file being
+     * transcoded, so the first bytes go out before the conversion ends; a completed job streams
+     * its stored file.
+     */
+    public AudioStream openStream(String jobId) {
+        DownloadStatus status = getJobStatus(jobId);
+
+        InFlightDownload flight = flightsByJob.get(jobId);
+        if (flight != null) {
+            return flight.output();
+        }
+        if (status.status() == Status.COMPLETED && status.fileName() != null) {
+            String fileName = status.fileName();
+            // aqui só confere que o arquivo existe; a lease fica com a escrita, que pode nunca rodar
+            getFile(fileName).close();
+            return new AudioStream() {
+                @Override
+                public String mediaType() {
+                    return AudioFormat.mediaTypeOf(fileName);
                 }
-            }
 
-            fileAccessMap.put(filePath.toString(), new FileMetadata(true));
+                @Override
+                public long writeTo(OutputStream out) throws IOException {
+                    try (StoredFile file = getFile(fileName)) {
+                        return Files.copy(file.path(), out);
+                    }
+                }
+            };
+        }
+        if (status.status() == Status.FAILED || status.status() == Status.CANCELLED) {
+            throw new JobStateConflictException("Job " + jobId + " has no audio: " + status.message());
+        }
+        throw new JobNotFoundException("Audio not available for job " + jobId);
+    }
 
-            if (!Files.exists(filePath)) {
-                throw new DownloadFailedException("Download failed. File not created: " + filePath);
-            }
+    private InFlightDownload startFlight(CacheKey key, YoutubeLinkRequest request, String url, String clientId,
+                                         boolean recovered) {
+        InFlightDownload flight = new InFlightDownload(key, request.format(), statusManager);
+
+        Optional<CacheEntry> cached = resultCache.get(key);
+        if (cached.isPresent()) {
+            metrics.cacheHit();
+            log.info("Serving {} from the result cache", key.id());
+            flight.start(CompletableFuture.completedFuture(new YoutubeResponse(
+                    "Download completed successfully", resultCache.resolve(cached.get()).toString(), Status.COMPLETED)));
+            return flight;
+        }
 
-            statusManager.updateStatus(url, Status.COMPLETED, "Download completed successfully");
-            log.info("The file was downloaded at: {}", filePath);
-            return CompletableFuture.completedFuture(
-                    new YoutubeResponse("Download completed successfully", filePath.toString(), Status.COMPLETED)
-            );
+        metrics.cacheMiss();
+        fileSystemManager.checkCapacity();
+        long queuedAt = System.nanoTime();
+        if (processManager.isSplitPipeline()) {
+            DownloadExecutor.Ticket<CompletableFuture<YoutubeResponse>> ticket = schedule(clientId, request, recovered, () -> {
+                metrics.recordStage(DownloadMetrics.Stage.QUEUE, System.nanoTime() - queuedAt);
+                return fetchAndHandOff(flight, url);
+            });
+            flight.queued(ticket);
+            flight.start(ticket.future().thenCompose(Function.identity()));
+        } else {
+            DownloadExecutor.Ticket<YoutubeResponse> ticket = schedule(clientId, request, recovered, () -> {
+                metrics.recordStage(DownloadMetrics.Stage.QUEUE, System.nanoTime() - queuedAt);
+                return runDownload(flight, url);
+            });
+            flight.queued(ticket);
+            flight.start(ticket.future());
+        }
+        return flight;
+    }
 
-        } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt();
+    // jobs recuperados já foram aceitos uma vez; recusá-los agora os marcaria como FAILED para sempre
+    private <T> DownloadExecutor.Ticket<T> schedule(String clientId, YoutubeLinkRequest request, boolean recovered,
+                                                    Supplier<T> task) {
+        return recovered
+                ? downloadExecutor.readmit(clientId, request.priority(), task)
+                : downloadExecutor.schedule(clientId, request.priority(), task);
+    }
+
+    private static CacheKey cacheKeyFor(String videoKey, AudioFormat format) {
+        return new CacheKey(videoKey, format.value(), format.quality());
+    }
+
+    private void finishJob(String jobId, YoutubeResponse response, Throwable error, long elapsedNanos) {
+        boolean applied;
+        if (error == null) {
+            applied = statusManager.complete(jobId, response.message(), Paths.get(response.filePath()).getFileName().toString());
+        } else {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            applied = statusManager.updateStatus(jobId, Status.FAILED, cause.getMessage());
+        }
+        // um job cancelado já foi contado em jobCancelled
+        if (applied) {
+            metrics.recordJob(error == null, elapsedNanos);
+        }
+    }
+
+    /**
+     * Runs yt-dlp in a staging directory owned by this download only, so the produced file is
+     * known without looking at anything another job wrote. The result is moved into the result
+     * cache and the staging directory is always removed afterwards.
+     */
+    private YoutubeResponse runDownload(InFlightDownload flight, String url) {
+        Staging staging = null;
+        try {
+            staging = openStaging(flight, url);
+            ProcessResult result = processManager.executeDownload(url, staging.dir().toString(), flight.format(), flight,
+                    staging.infoJson());
+            Path filePath = producedFile(staging.dir(), result);
+            log.info("The file was downloaded at: {}", filePath);
+            return storeResult(flight.key(), filePath, "Download completed successfully");
+        } catch (RuntimeException e) {
+            forgetInfo(flight, staging);
+            throw e;
+        } catch (IOException e) {
             log.error("Download failed for URL: {}", url, e);
+            throw new DownloadFailedException("Download error", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadCancelledException("Download interrupted");
+        } finally {
+            if (staging != null) {
+                staging.close();
+            }
+        }
+    }
 
-            // Tentativa de recuperação: buscar qualquer arquivo MP3
-            if (filePath == null || !Files.exists(filePath)) {
+    /**
+     * First stage of the split pipeline, on a download worker: gets the audio stream and hands it
+     * to the transcode pool. The worker is free for the next fetch as soon as the hand-off is
+     * accepted; the staging directory then belongs to the transcode stage. Streams that need no
+     * encoding are copied or remuxed right here, without queueing for a transcode worker.
+     * <p>
+     * A fetched stream is kept in the result cache as the {@code original} format of the video,
+     * so a later request for another format converts it again without fetching it a second time.
+     */
+    private CompletableFuture<YoutubeResponse> fetchAndHandOff(InFlightDownload flight, String url) {
+        Staging staging = null;
+        boolean handedOff = false;
+        try {
+            staging = openStaging(flight, url);
+            AudioFormat format = flight.format();
+            Source source = keptSource(flight, staging).orElse(null);
+            if (source == null) {
+                ProcessResult result;
                 try {
-                    try (var files = Files.list(Paths.get(DOWNLOAD_DIR))) {
-                        filePath = files
-                                .filter(path -> path.toString().endsWith(".mp3"))
-                                .findFirst()
-                                .orElse(null);
+                    result = processManager.fetchAudio(url, staging.dir().toString(), format, flight, staging.infoJson());
+                } catch (RuntimeException e) {
+                    forgetInfo(flight, staging);
+                    throw e;
+                }
+                Path fetched = producedFile(staging.dir(), result);
+                source = new Source(fetched, fetched.getFileName().toString());
+                if (keepSources) {
+                    CacheEntry entry = resultCache.put(cacheKeyFor(flight.key().videoKey(), AudioFormat.ORIGINAL),
+                            fetched, source.displayName());
+                    if (format == AudioFormat.ORIGINAL) {
+                        return CompletableFuture.completedFuture(new YoutubeResponse(
+                                "Download completed successfully", resultCache.resolve(entry).toString(), Status.COMPLETED));
                     }
-                } catch (IOException ex) {
-                    log.error("Error while trying to find downloaded file", ex);
+                    FileLease lease = fileLeases.acquire(resultCache.resolve(entry))
+                            .orElseThrow(() -> new DownloadFailedException("Fetched stream was evicted before conversion"));
+                    staging.hold(lease);
+                    source = new Source(lease.path(), entry.displayName());
                 }
             }
 
-            if (filePath != null && Files.exists(filePath)) {
-                log.warn("Using fallback file: {}", filePath);
-                return CompletableFuture.completedFuture(
-                        new YoutubeResponse("Download completed with warnings", filePath.toString(), Status.COMPLETED)
-                );
+            AudioFormat.Conversion conversion = format.conversionFrom(extensionOf(source.displayName()));
+            if (conversion != AudioFormat.Conversion.ENCODE) {
+                return CompletableFuture.completedFuture(convert(flight, staging, source, conversion));
             }
+            log.info("Fetched {}, waiting for a transcode worker", source.path());
 
+            Staging owned = staging;
+            Source fetched = source;
+            long fetchedAt = System.nanoTime();
+            CompletableFuture<YoutubeResponse> transcoded = transcodeExecutor.submit(flight::isCancelled, () -> {
+                metrics.recordStage(DownloadMetrics.Stage.HANDOFF, System.nanoTime() - fetchedAt);
+                try {
+                    return convert(flight, owned, fetched, conversion);
+                } finally {
+                    owned.close();
+                }
+            });
+            handedOff = true;
+            return transcoded;
+        } catch (IOException e) {
+            log.error("Download failed for URL: {}", url, e);
             throw new DownloadFailedException("Download error", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadCancelledException("Download interrupted");
         } finally {
-            if (filePath != null && fileAccessMap.containsKey(filePath.toString())) {
-                fileAccessMap.get(filePath.toString()).setInUse(false);
+            if (staging != null && !handedOff) {
+                staging.close();
             }
         }
     }
 
-    public Resource getFile(String filename) {
+    // os links de stream do JSON guardado podem ter expirado; o próximo download extrai de novo
+    private void forgetInfo(InFlightDownload flight, Staging staging) {
+        if (staging != null && staging.infoJson() != null && !flight.isCancelled()) {
+            videoInfo.invalidate(flight.key().videoKey());
+        }
+    }
+
+    /** The stream fetched by an earlier request for the same video, leased for the conversion. */
+    private Optional<Source> keptSource(InFlightDownload flight, Staging staging) {
+        if (!keepSources || flight.format() == AudioFormat.ORIGINAL) {
+            return Optional.empty();
+        }
+        return resultCache.get(cacheKeyFor(flight.key().videoKey(), AudioFormat.ORIGINAL))
+                .flatMap(entry -> fileLeases.acquire(resultCache.resolve(entry))
+                        .map(lease -> {
+                            staging.hold(lease);
+                            log.info("Converting {} from the stream fetched earlier", flight.key().id());
+                            return new Source(lease.path(), entry.displayName());
+                        }));
+    }
+
+    /** Second stage of the split pipeline: turns the stream into the requested format and stores it. */
+    private YoutubeResponse convert(InFlightDownload flight, Staging staging, Source source,
+                                    AudioFormat.Conversion conversion) {
         try {
-            Path filePath = downloadsDir.resolve(filename).normalize();
-            if (!filePath.startsWith(downloadsDir)) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+            if (flight.isCancelled()) {
+                throw new DownloadCancelledException("Download cancelled before transcoding");
             }
-
-            FileMetadata metadata = fileAccessMap.get(filePath.toString());
-            if (metadata != null) {
-                metadata.setInUse(false);
+            Path filePath;
+            if (conversion == AudioFormat.Conversion.NONE) {
+                filePath = source.path().startsWith(staging.dir())
+                        ? source.path()
+                        : linkIntoStaging(source, staging.dir());
+            } else {
+                String name = source.displayName();
+                int dot = name.lastIndexOf('.');
+                Path target = staging.dir().resolve((dot > 0 ? name.substring(0, dot) : name) + "." + flight.format().value());
+                filePath = producedFile(staging.dir(),
+                        processManager.transcode(source.path(), target, flight.format(), conversion, flight));
             }
+            log.info("The file was downloaded at: {}", filePath);
+            return storeResult(flight.key(), filePath, "Download completed successfully");
+        } catch (IOException e) {
+            log.error("Transcode failed for {}", source.path(), e);
+            throw new DownloadFailedException("Download error", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadCancelledException("Download interrupted");
+        }
+    }
 
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found");
+    // um hard link evita duplicar no disco o stream que já está no cache
+    private static Path linkIntoStaging(Source source, Path stagingDir) throws IOException {
+        Path link = stagingDir.resolve(source.displayName());
+        try {
+            return Files.createLink(link, source.path());
+        } catch (IOException | UnsupportedOperationException e) {
+            return Files.copy(source.path(), link);
+        }
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot + 1) : "";
+    }
+
+    /**
+     * Reserves disk space and creates the staging directory of a download. When the metadata of
+     * the video was read recently, the reservation is sized from its estimated stream size before
+     * anything is fetched, and the metadata JSON is written next to the download for yt-dlp to
+     * load instead of extracting the video again.
+     */
+    private Staging openStaging(InFlightDownload flight, String url) throws IOException {
+        if (flight.isCancelled()) {
+            throw new DownloadCancelledException("Download cancelled before it started");
+        }
+
+        FileSystemManager.Reservation reservation = fileSystemManager.reserve();
+        flight.useReservation(reservation);
+        Path stagingDir = null;
+        try {
+            // o disco pode ter enchido enquanto o job esperava na fila
+            fileSystemManager.checkCapacity();
+            Optional<VideoInfoCache.Entry> info = videoInfo.get(flight.key().videoKey());
+            Long estimatedSize = info.map(entry -> entry.info().estimatedSizeBytes()).orElse(null);
+            if (estimatedSize != null && !reservation.expect(estimatedSize)) {
+                throw new DownloadFailedException("Not enough disk space for a download of " + estimatedSize + " bytes");
+            }
+            stagingDir = Files.createTempDirectory(downloadsDir, "job-");
+            Path infoJson = null;
+            if (info.isPresent()) {
+                infoJson = Files.writeString(stagingDir.resolve("info.json"), info.get().json());
+                log.info("Reusing the metadata of {} read earlier", flight.key().id());
             }
-            return resource;
+            flight.publish(Status.STARTING, "Download starting");
+            log.info("Starting download for: {} in {}", url, stagingDir);
+
+            flight.publish(Status.IN_PROGRESS, "Download in progress");
+            return new Staging(stagingDir, reservation, infoJson);
+        } catch (IOException | RuntimeException e) {
+            deleteStagingDir(stagingDir);
+            reservation.close();
+            throw e;
+        }
+    }
 
-        } catch (MalformedURLException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid URL");
-        } catch (IOException e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading file");
+    private static Path producedFile(Path stagingDir, ProcessResult result) {
+        Path filePath = stagingDir.resolve(result.filepath()).normalize();
+
+        if (!filePath.startsWith(stagingDir) || !Files.isRegularFile(filePath)) {
+            String reason = result.exitCode() != 0 ? result.error() : "File not created: " + filePath.getFileName();
+            throw new DownloadFailedException("Download failed. " + reason);
+        }
+        if (result.exitCode() != 0) {
+            log.warn("Process exited with {} but produced {}", result.exitCode(), filePath);
         }
+        return filePath;
+    }
+
+    /** A stream ready for conversion and the name it was published under. */
+    private record Source(Path path, String displayName) {
     }
 
-    @Scheduled(fixedRate = 60 * 1000)
-    public void scheduledCleanup() {
-        log.info("Running scheduled cleanup...");
-        Instant now = Instant.now();
+    /**
+     * Working directory of one download, the disk space reserved for it and the lease on a cached
+     * source it reads, all released together.
+     */
+    private final class Staging {
+
+        private final Path dir;
+        private final FileSystemManager.Reservation reservation;
+        private final Path infoJson;
+        private FileLease sourceLease;
+
+        Staging(Path dir, FileSystemManager.Reservation reservation, Path infoJson) {
+            this.dir = dir;
+            this.reservation = reservation;
+            this.infoJson = infoJson;
+        }
 
-        Set<String> filesToRemove = new HashSet<>();
+        Path dir() {
+            return dir;
+        }
 
-        fileAccessMap.forEach((filePath, metadata) -> {
-            if (!metadata.isInUse() && metadata.getLastUpdated().isBefore(now.minusSeconds(120))) {
-                filesToRemove.add(filePath);
+        /** Metadata JSON for yt-dlp to load, or null when the video has to be extracted. */
+        Path infoJson() {
+            return infoJson;
+        }
+
+        void hold(FileLease lease) {
+            this.sourceLease = lease;
+        }
+
+        void close() {
+            deleteStagingDir(dir);
+            reservation.close();
+            if (sourceLease != null) {
+                sourceLease.close();
             }
-        });
+        }
+    }
 
-        filesToRemove.parallelStream().forEach(filePath -> {
-            try {
-                Path path = Paths.get(filePath);
-                if (Files.exists(path)) {
-                    Files.delete(path);
-                    log.info("File {} removed by scheduled cleanup", filePath);
+    private YoutubeResponse storeResult(CacheKey key, Path filePath, String message) throws IOException {
+        try {
+            CacheEntry entry = resultCache.put(key, filePath, filePath.getFileName().toString());
+            return new YoutubeResponse(message, resultCache.resolve(entry).toString(), Status.COMPLETED);
+        } catch (IOException e) {
+            // Sem cache, o arquivo fica no diretório de downloads até a limpeza agendada
+            log.error("Could not store {} in the result cache: {}", filePath, e.getMessage());
+            Path served = downloadsDir.resolve(filePath.getFileName());
+            moveAtomically(filePath, served);
+            expiryIndex.track(served);
+            return new YoutubeResponse(message, served.toString(), Status.COMPLETED);
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteStagingDir(Path stagingDir) {
+        if (stagingDir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(stagingDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Could not delete {}: {}", path, e.getMessage());
                 }
-                fileAccessMap.remove(filePath);
-            } catch (IOException e) {
-                log.error("Error deleting {}: {}", filePath, e.getMessage());
-            }
-        });
+            });
+        } catch (IOException e) {
+            log.warn("Could not clean staging directory {}: {}", stagingDir, e.getMessage());
+        }
     }
 
+    /**
+     * Looks up a served file and takes a lease on it, so it cannot be evicted or purged while it
+     * is being sent. The caller must close the returned file once the transfer is over.
+     */
+    public StoredFile getFile(String filename) {
+        Optional<CacheEntry> cached = resultCache.findByStoredName(filename);
+        if (cached.isPresent()) {
+            CacheEntry entry = cached.get();
+            Optional<FileLease> lease = fileLeases.acquire(resultCache.resolve(entry));
+            if (lease.isPresent() && Files.isReadable(lease.get().path())) {
+                // a chave do cache identifica o conteúdo; createdAt diferencia um re-download da mesma chave
+                String eTag = "\"" + entry.key().id() + "-" + Long.toHexString(entry.createdAt()) + "\"";
+                return new StoredFile(lease.get().path(), entry.displayName(), entry.size(), entry.createdAt(), eTag, lease.get());
+            }
+            lease.ifPresent(FileLease::close);
+        }
+
+        // Arquivos que não puderam ir para o cache continuam no diretório de trabalho
+        Path filePath = downloadsDir.resolve(filename).normalize();
+        if (!filePath.startsWith(downloadsDir)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+        if (!Files.isRegularFile(filePath)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found");
+        }
+
+        // a lease vem antes da leitura dos atributos: se a limpeza apagou o arquivo no meio, falha aqui
+        FileLease lease = fileLeases.acquire(filePath)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        try {
+            long size = Files.size(filePath);
+            long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+            String eTag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+            return new StoredFile(filePath, filename, size, lastModified, eTag, lease);
+        } catch (IOException e) {
+            lease.close();
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found");
+        }
+    }
 
     public DownloadStatus getStatus(String url) {
-        return statusManager.getStatus(url);
+        return statusManager.getStatusByKey(VideoIdExtractor.canonicalKey(url));
+    }
+
+    private static String newJobId() {
+        byte[] bytes = new byte[8];
+        JOB_ID_RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
 
     private String getDirectoryPermissions(Path path) {
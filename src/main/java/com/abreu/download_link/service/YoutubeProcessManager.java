@@ -1,8 +1,14 @@
 package com.abreu.download_link.service;
 
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadProgress;
 import com.abreu.download_link.domain.ProcessResult;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import com.abreu.download_link.exceptions.DownloadCancelledException;
 import com.abreu.download_link.exceptions.DownloadFailedException;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -10,17 +16,26 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class YoutubeProcessManager {
 
@@ -28,16 +43,74 @@ public class YoutubeProcessManager {
             System.getProperty("os.name").toLowerCase().contains("win")
                     ? "venv\\Scripts\\yt-dlp.exe"
                     : "/venv/bin/yt-dlp";
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 100;
+    private static final List<String> PARTIAL_SUFFIXES = List.of("", ".part", ".ytdl");
+
+    // listagens não têm progresso nem arquivo de saída; só o watchdog de tempo vale para elas
+    private static final DownloadObserver NO_OBSERVER = new DownloadObserver() {
+        @Override
+        public void onProgress(DownloadProgress progress) {
+        }
+
+        @Override
+        public void onDestination(Path audioFile) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    private static final Pattern VIDEO_ID = Pattern.compile("[a-zA-Z0-9_-]{11}");
+    private static final Pattern DESTINATION_PATTERN = Pattern.compile("\\[ExtractAudio] Destination: (.+\\.\\w+)");
+
+    private final DownloadProperties properties;
+    private final DownloadMetrics metrics;
+    private final YtDlpWorkerPool workerPool;
     private String YT_DLP_PATH;
+    private String FFMPEG_PATH;
+    private boolean splitPipeline;
 
     @PostConstruct
     public void init() {
-        YT_DLP_PATH = Optional.ofNullable(System.getenv("YT_DLP_PATH"))
+        YT_DLP_PATH = Optional.ofNullable(properties.getYtDlpPath())
+                .filter(path -> !path.isBlank())
+                .or(() -> Optional.ofNullable(System.getenv("YT_DLP_PATH")))
                 .orElse(DEFAULT_YT_DLP_PATH);
 
         log.info("Using yt-dlp path: {}", YT_DLP_PATH);
 
         checkYtDlpInstallation();
+        workerPool.start(YT_DLP_PATH);
+
+        FFMPEG_PATH = Optional.ofNullable(properties.getFfmpegPath())
+                .filter(path -> !path.isBlank())
+                .or(() -> Optional.ofNullable(System.getenv("FFMPEG_PATH")))
+                .orElse("ffmpeg");
+
+        splitPipeline = properties.getPipeline().isSplitStages() && isFfmpegAvailable();
+        log.info("Fetch and transcode run as {}", splitPipeline ? "separate stages" : "a single yt-dlp process");
+    }
+
+    private boolean isFfmpegAvailable() {
+        try {
+            Process process = new ProcessBuilder(FFMPEG_PATH, "-version")
+                    .redirectErrorStream(true)
+                    .start();
+            process.getInputStream().transferTo(OutputStream.nullOutputStream());
+            if (process.waitFor() == 0) {
+                log.info("Using ffmpeg path: {}", FFMPEG_PATH);
+                return true;
+            }
+            log.warn("ffmpeg version check failed at {}; transcoding inside yt-dlp instead", FFMPEG_PATH);
+        } catch (IOException e) {
+            log.warn("ffmpeg not found at {}; transcoding inside yt-dlp instead", FFMPEG_PATH);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
     }
 
 
@@ -92,123 +165,555 @@ public class YoutubeProcessManager {
         }
     }
 
-    public ProcessResult executeDownload(String url, String downloadDir) throws IOException, InterruptedException {
-        List<String> command = createCommand(url);
+    /**
+     * Runs yt-dlp once: the same invocation downloads and transcodes the audio and reports the
+     * final file location through {@code --print-to-file after_move:filepath}, so no separate
+     * simulation pass is needed to discover the output name.
+     * <p>
+     * Each phase (metadata, download, transcode) has its own time budget. When a budget runs out,
+     * the observer cancels or aborts, or the calling thread is interrupted, the whole process tree
+     * is stopped and the partial files it announced are removed.
+     * <p>
+     * When {@code infoJson} is given, yt-dlp reads the video metadata from that file, as written
+     * by {@link #fetchInfo}, instead of extracting it again.
+     */
+    public ProcessResult executeDownload(String url, String downloadDir, AudioFormat format, DownloadObserver observer,
+                                         Path infoJson) throws IOException, InterruptedException {
+        return runYtDlp(url, downloadDir, format, observer, format != AudioFormat.ORIGINAL, infoJson);
+    }
+
+    /**
+     * First stage of the split pipeline: downloads an audio stream as it is served, preferring
+     * one already in the requested format, and reports the file written. Timeouts, cancellation
+     * and {@code infoJson} work as in {@link #executeDownload}.
+     */
+    public ProcessResult fetchAudio(String url, String downloadDir, AudioFormat format, DownloadObserver observer,
+                                    Path infoJson) throws IOException, InterruptedException {
+        return runYtDlp(url, downloadDir, format, observer, false, infoJson);
+    }
+
+    /**
+     * Reads the metadata of a video without downloading it and returns the JSON printed by
+     * {@code yt-dlp --dump-json}. The run is under the metadata time budget.
+     */
+    public String fetchInfo(String url) throws IOException, InterruptedException {
+        StringBuilder json = new StringBuilder();
+        OutputScan scan = new OutputScan(properties.getProcess().getOutputTailLines(), metrics, Phase.METADATA,
+                "", destination -> { });
+        List<String> command = List.of(
+                YT_DLP_PATH,
+                "--dump-json",
+                "--skip-download",
+                "--no-playlist",
+                url
+        );
+        int exitCode = run(Tool.YT_DLP, command, Paths.get(System.getProperty("java.io.tmpdir")), scan,
+                NO_OBSERVER, line -> {
+                    if (line.startsWith("{")) {
+                        synchronized (json) {
+                            json.setLength(0);
+                            json.append(line);
+                        }
+                    }
+                });
+        synchronized (json) {
+            if (exitCode != 0 || json.isEmpty()) {
+                log.error("Reading info of {} failed with exit code {}. Output: {}", url, exitCode, scan.tail);
+                throw new DownloadFailedException("Could not read video info. Exit code: " + exitCode);
+            }
+            return json.toString();
+        }
+    }
+
+    /**
+     * Second stage of the split pipeline: converts a fetched stream with ffmpeg, copying the
+     * packets when only the container changes. Streamable targets are announced to the observer
+     * before conversion starts, so they can be sent while they grow.
+     */
+    public ProcessResult transcode(Path source, Path target, AudioFormat format, AudioFormat.Conversion conversion,
+                                   DownloadObserver observer) throws IOException, InterruptedException {
+        OutputScan scan = new OutputScan(properties.getProcess().getOutputTailLines(), metrics, Phase.TRANSCODE,
+                format.value(), destination -> { });
+        scan.announce(target.getFileName().toString());
+        if (format.isStreamable()) {
+            observer.onDestination(target);
+        }
+        observer.onProgress(new DownloadProgress(DownloadPhase.EXTRACTING_AUDIO, 0, -1, -1, -1, -1));
+
+        int exitCode = run(Tool.FFMPEG, createTranscodeCommand(source, target, format.codecArguments(conversion)),
+                target.getParent(), scan, observer, line -> { });
+        String error = "";
+        if (exitCode != 0) {
+            log.error("Transcode of {} failed with exit code {}. Output: {}", source, exitCode, scan.tail);
+            error = "Transcode failed. Exit code: " + exitCode;
+        }
+        return new ProcessResult(exitCode, target.getFileName().toString(), error, scan.tail.lines());
+    }
+
+    /**
+     * Lists the video ids of a playlist without downloading anything, stopping after
+     * {@code maxItems}. The listing runs under the metadata time budget.
+     */
+    public List<String> listPlaylist(String playlistUrl, int maxItems) throws IOException, InterruptedException {
+        List<String> ids = new ArrayList<>();
+        OutputScan scan = new OutputScan(properties.getProcess().getOutputTailLines(), metrics, Phase.METADATA,
+                "", destination -> { });
+        List<String> command = List.of(
+                YT_DLP_PATH,
+                "--flat-playlist",
+                "--print", "id",
+                "--playlist-end", Integer.toString(maxItems),
+                playlistUrl
+        );
+        int exitCode = run(Tool.YT_DLP, command, Paths.get(System.getProperty("java.io.tmpdir")), scan,
+                NO_OBSERVER, line -> {
+                    String id = line.trim();
+                    if (VIDEO_ID.matcher(id).matches()) {
+                        synchronized (ids) {
+                            ids.add(id);
+                        }
+                    }
+                });
+        if (exitCode != 0 && ids.isEmpty()) {
+            log.error("Listing playlist {} failed with exit code {}. Output: {}", playlistUrl, exitCode, scan.tail);
+            throw new DownloadFailedException("Could not list playlist. Exit code: " + exitCode);
+        }
+        return List.copyOf(ids);
+    }
+
+    /** Whether downloads run as separate fetch and transcode stages. */
+    public boolean isSplitPipeline() {
+        return splitPipeline;
+    }
+
+    private ProcessResult runYtDlp(String url, String downloadDir, AudioFormat format, DownloadObserver observer,
+                                   boolean extractAudio, Path infoJson) throws IOException, InterruptedException {
+        Path printFile = Files.createTempFile("yt-dlp-", ".path");
+        try {
+            Path workDir = Paths.get(downloadDir);
+            OutputScan scan = new OutputScan(properties.getProcess().getOutputTailLines(), metrics, Phase.METADATA,
+                    format.value(), destination -> {
+                        if (format.isStreamable()) {
+                            observer.onDestination(workDir.resolve(destination));
+                        }
+                    });
+            ProgressParser progressParser = new ProgressParser();
+
+            int exitCode = run(Tool.YT_DLP, createCommand(url, printFile, format, extractAudio, infoJson), workDir, scan, observer, line -> {
+                if (progressParser.accept(line)) {
+                    DownloadProgress progress = progressParser.snapshot();
+                    scan.countDownloaded(progress);
+                    observer.onProgress(progress);
+                }
+            });
+
+            String filePath = readPrintedFilePath(printFile)
+                    .or(extractAudio ? scan::filePath : scan::sourcePath)
+                    .orElseThrow(() -> new DownloadFailedException("File path not found in output: " + scan.tail));
+
+            String error = "";
+            if (exitCode != 0) {
+                log.error("Download process failed with exit code {}. Output: {}", exitCode, scan.tail);
+                error = "Download failed. Exit code: " + exitCode;
+            }
+
+            return new ProcessResult(exitCode, filePath, error, scan.tail.lines());
+        } finally {
+            Files.deleteIfExists(printFile);
+        }
+    }
+
+    /**
+     * Runs a command under the watchdog and returns its exit code. Every output line goes through
+     * the scan and then to {@code onLine}. yt-dlp runs on a pooled worker when one is free, and as
+     * a process of its own otherwise.
+     */
+    private int run(Tool tool, List<String> command, Path workDir, OutputScan scan, DownloadObserver observer,
+                    Consumer<String> onLine) throws IOException, InterruptedException {
+        if (tool == Tool.YT_DLP) {
+            // o protocolo do worker é de uma linha por argumento
+            Optional<YtDlpWorker> worker = command.stream().anyMatch(arg -> arg.indexOf('\n') >= 0)
+                    ? Optional.empty()
+                    : workerPool.borrow();
+            if (worker.isPresent()) {
+                OptionalInt exitCode = runOnWorker(worker.get(), command.subList(1, command.size()), workDir,
+                        scan, observer, onLine);
+                if (exitCode.isPresent()) {
+                    return exitCode.getAsInt();
+                }
+            }
+            metrics.recordYtDlpRun(false);
+        }
+        return spawn(tool, command, workDir, scan, observer, onLine);
+    }
+
+    /** Starts a process for the command, reading its output on a thread of its own. */
+    private int spawn(Tool tool, List<String> command, Path workDir, OutputScan scan, DownloadObserver observer,
+                      Consumer<String> onLine) throws IOException, InterruptedException {
         Process process = new ProcessBuilder(command)
-                .directory(new File(downloadDir))
+                .directory(workDir.toFile())
                 .redirectErrorStream(true)
                 .start();
-
-        StringBuilder outputBuffer = new StringBuilder();
-        StringBuilder errorBuffer = new StringBuilder();
+        metrics.processStarted();
 
         Thread outputThread = new Thread(() -> {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    outputBuffer.append(line).append("\n");
-                    log.info("Process Output: {}", line);
+                    handleLine(line, scan, onLine);
                 }
             } catch (IOException e) {
                 log.error("Error reading process output: {}", e.getMessage());
             }
         });
-
+        outputThread.setDaemon(true);
         outputThread.start();
 
-        int exitCode = process.waitFor();
+        int exitCode;
+        try {
+            while (!process.waitFor(WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkWatchdog(scan, observer);
+            }
+            exitCode = process.exitValue();
+        } catch (InterruptedException | RuntimeException e) {
+            log.warn("Stopping {} (pid {}): {}", tool.label, process.pid(), stopReason(e));
+            destroyTree(process);
+            removePartialFiles(workDir, scan);
+            metrics.recordKilled(tool.label);
+            throw e;
+        } finally {
+            metrics.processEnded();
+        }
         outputThread.join();
+        scan.finish();
+        metrics.recordExit(tool.label, exitCode);
+        return exitCode;
+    }
 
-        String fullOutput = outputBuffer.toString();
-        String filePath = extractFilePath(fullOutput, downloadDir);
+    /**
+     * Runs a yt-dlp job on a pooled worker. Cancellation and timeouts kill the worker with
+     * everything it spawned, as for a process of its own. Empty when the worker could not take
+     * the job or died before printing anything, so the caller can still spawn yt-dlp.
+     */
+    private OptionalInt runOnWorker(YtDlpWorker worker, List<String> args, Path workDir, OutputScan scan,
+                                    DownloadObserver observer, Consumer<String> onLine) throws InterruptedException {
+        try {
+            worker.send(args, workDir);
+        } catch (IOException e) {
+            log.warn("{} could not take the job, spawning yt-dlp instead: {}", worker, e.getMessage());
+            worker.process().destroyForcibly();
+            workerPool.discard(worker);
+            return OptionalInt.empty();
+        }
+        metrics.processStarted();
+        boolean printed = false;
+        try {
+            while (true) {
+                checkWatchdog(scan, observer);
+                YtDlpWorker.Output output = worker.poll(WATCHDOG_INTERVAL_MILLIS);
+                if (output == null) {
+                    continue;
+                }
+                switch (output.kind()) {
+                    case LINE -> {
+                        printed = true;
+                        handleLine(output.line(), scan, onLine);
+                    }
+                    case DONE -> {
+                        workerPool.giveBack(worker);
+                        scan.finish();
+                        metrics.recordYtDlpRun(true);
+                        metrics.recordExit(Tool.YT_DLP.label, output.exitCode());
+                        return OptionalInt.of(output.exitCode());
+                    }
+                    case CLOSED -> {
+                        workerPool.discard(worker);
+                        if (!printed) {
+                            log.warn("{} exited before starting the job, spawning yt-dlp instead", worker);
+                            return OptionalInt.empty();
+                        }
+                        log.error("{} exited in the middle of a job", worker);
+                        removePartialFiles(workDir, scan);
+                        scan.finish();
+                        metrics.recordYtDlpRun(true);
+                        metrics.recordExit(Tool.YT_DLP.label, -1);
+                        return OptionalInt.of(-1);
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            log.warn("Stopping {}: {}", worker, stopReason(e));
+            destroyTree(worker.process());
+            workerPool.discard(worker);
+            removePartialFiles(workDir, scan);
+            metrics.recordKilled(Tool.YT_DLP.label);
+            throw e;
+        } finally {
+            metrics.processEnded();
+        }
+    }
 
-        if (exitCode != 0) {
-            log.error("Download process failed with exit code {}. Output: {}", exitCode, fullOutput);
-            errorBuffer.append("Download failed. Exit code: ").append(exitCode).append("\n");
-            errorBuffer.append(fullOutput);
+    private void handleLine(String line, OutputScan scan, Consumer<String> onLine) {
+        scan.accept(line);
+        if (line.startsWith(ProgressParser.PROGRESS_PREFIX)) {
+            log.debug("Process Output: {}", line);
+        } else if (line.startsWith("{")) {
+            // o JSON de --dump-json tem centenas de KB; no log fica só o tamanho
+            log.debug("Process Output: JSON of {} chars", line.length());
+        } else {
+            log.info("Process Output: {}", line);
         }
+        onLine.accept(line);
+    }
 
-        return new ProcessResult(
-                exitCode,
-                filePath,
-                errorBuffer.toString(),
-                fullOutput
-        );
+    private void checkWatchdog(OutputScan scan, DownloadObserver observer) {
+        if (observer.isCancelled()) {
+            throw new DownloadCancelledException("Download cancelled");
+        }
+        String abortReason = observer.abortReason();
+        if (abortReason != null) {
+            throw new DownloadFailedException(abortReason);
+        }
+        Phase phase = scan.phase;
+        Duration limit = timeoutFor(phase);
+        if (System.nanoTime() - scan.phaseStartedAt > limit.toNanos()) {
+            throw new DownloadFailedException(
+                    "yt-dlp exceeded the " + phase.label + " timeout of " + limit.toMillis() + " ms");
+        }
+    }
+
+    private Duration timeoutFor(Phase phase) {
+        DownloadProperties.ProcessProperties config = properties.getProcess();
+        return switch (phase) {
+            case METADATA -> config.getMetadataTimeout();
+            case DOWNLOAD -> config.getDownloadTimeout();
+            case TRANSCODE -> config.getTranscodeTimeout();
+        };
     }
 
-    private String extractFilePath(String output, String downloadDir) {
-        Pattern pattern = Pattern.compile("\\[ExtractAudio] Destination: (.+\\.mp3)");
-        for (String line : output.split("\n")) {
-            Matcher matcher = pattern.matcher(line);
-            if (matcher.find()) {
-                return matcher.group(1);
+    // InterruptedException não tem mensagem; o log diria só "null"
+    private static String stopReason(Exception e) {
+        if (e instanceof InterruptedException) {
+            return "interrupted";
+        }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Stops the process and everything it spawned (ffmpeg, helper scripts). The tree is captured
+     * before anything is signalled, since children are re-parented once yt-dlp exits and would no
+     * longer show up as its descendants.
+     */
+    void destroyTree(Process process) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        process.descendants().forEach(tree::add);
+        tree.add(process.toHandle());
+
+        tree.forEach(ProcessHandle::destroy);
+
+        long deadline = System.nanoTime() + properties.getProcess().getKillGracePeriod().toNanos();
+        boolean interrupted = false;
+        for (ProcessHandle handle : tree) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (interrupted) {
+                    remaining = 0;
+                }
+                handle.onExit().get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                log.warn("Process {} ignored SIGTERM, killing it", handle.pid());
+                handle.destroyForcibly();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                handle.destroyForcibly();
             }
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        return Arrays.stream(output.split("\n"))
-                .filter(line -> line.trim().endsWith(".mp3"))
-                .findFirst()
+    private void removePartialFiles(Path workDir, OutputScan scan) {
+        for (String name : scan.announcedFiles()) {
+            Path file = workDir.resolve(name);
+            for (String suffix : PARTIAL_SUFFIXES) {
+                try {
+                    Files.deleteIfExists(Paths.get(file + suffix));
+                } catch (IOException e) {
+                    log.warn("Could not remove partial file {}{}: {}", file, suffix, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Optional<String> readPrintedFilePath(Path printFile) throws IOException {
+        return Files.readAllLines(printFile).stream()
                 .map(String::trim)
-                .orElseThrow(() -> new DownloadFailedException("File path not found in output: " + output));
+                .filter(line -> !line.isEmpty())
+                .reduce((first, second) -> second);
     }
 
-    public String getExpectedFileName(String url, String downloadDir) throws IOException, InterruptedException {
-        List<String> command = new ArrayList<>(createCommand(url));
-        command.add("--simulate");
-        command.add("--print");
-        command.add("after_move:filepath");
-        command.add("--no-simulate");
+    private enum Tool {
+        YT_DLP("yt-dlp"),
+        FFMPEG("ffmpeg");
 
-        Process process = new ProcessBuilder(command)
-                .directory(new File(downloadDir))
-                .redirectErrorStream(true)
-                .start();
+        private final String label;
 
-        StringBuilder outputBuffer = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                outputBuffer.append(line).append("\n");
-                log.info("yt-dlp output: {}", line);
+        Tool(String label) {
+            this.label = label;
+        }
+    }
+
+    private enum Phase {
+        METADATA("metadata", DownloadMetrics.Stage.METADATA),
+        DOWNLOAD("download", DownloadMetrics.Stage.DOWNLOAD),
+        TRANSCODE("transcode", DownloadMetrics.Stage.TRANSCODE);
+
+        private final String label;
+        private final DownloadMetrics.Stage stage;
+
+        Phase(String label, DownloadMetrics.Stage stage) {
+            this.label = label;
+            this.stage = stage;
+        }
+    }
+
+    /**
+     * Consumes the output line by line: keeps only a bounded tail, tracks the current phase for
+     * the watchdog and the phase timers, and remembers the files announced by yt-dlp.
+     */
+    private static final class OutputScan {
+
+        private static final String DESTINATION_PREFIX = "[ExtractAudio] Destination: ";
+        private static final String SOURCE_PREFIX = "[download] Destination: ";
+
+        private final OutputTail tail;
+        private final DownloadMetrics metrics;
+        private final Consumer<String> onDestination;
+        private volatile Phase phase;
+        private volatile long phaseStartedAt = System.nanoTime();
+        private volatile String source;
+        private volatile String destination;
+        private final String extension;
+        private String outputLine;
+        private long downloadedBytes;
+
+        OutputScan(int tailLines, DownloadMetrics metrics, Phase phase, String extension, Consumer<String> onDestination) {
+            this.tail = new OutputTail(tailLines);
+            this.metrics = metrics;
+            this.phase = phase;
+            this.extension = "." + extension;
+            this.onDestination = onDestination;
+        }
+
+        /** Records an output file known up front, so it is removed if the process is stopped. */
+        void announce(String file) {
+            destination = file;
+        }
+
+        void accept(String line) {
+            tail.add(line);
+            if (phase == Phase.METADATA
+                    && (line.startsWith("[download]") || line.startsWith(ProgressParser.PROGRESS_PREFIX))) {
+                enter(Phase.DOWNLOAD);
+            }
+            if (source == null && line.startsWith(SOURCE_PREFIX)) {
+                source = line.substring(SOURCE_PREFIX.length()).trim();
+            }
+            if (destination == null && line.startsWith(DESTINATION_PREFIX)) {
+                enter(Phase.TRANSCODE);
+                Matcher matcher = DESTINATION_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    destination = matcher.group(1);
+                    onDestination.accept(destination);
+                }
+            }
+            if (outputLine == null && line.trim().endsWith(extension)) {
+                outputLine = line.trim();
             }
         }
 
-        int exitCode = process.waitFor();
-        String output = outputBuffer.toString().trim();
+        /** Adds what was fetched since the previous report; a new stream starts again from zero. */
+        void countDownloaded(DownloadProgress progress) {
+            long downloaded = progress.downloadedBytes();
+            if (progress.phase() != DownloadPhase.DOWNLOADING || downloaded <= 0) {
+                return;
+            }
+            long delta = downloaded >= downloadedBytes ? downloaded - downloadedBytes : downloaded;
+            downloadedBytes = downloaded;
+            if (delta > 0) {
+                metrics.addDownloadedBytes(delta);
+            }
+        }
 
-        log.info("yt-dlp command exited with code: {}", exitCode);
-        log.info("Full output: {}", output);
+        /** Closes the timer of the phase the process was in when it exited. */
+        void finish() {
+            metrics.recordStage(phase.stage, System.nanoTime() - phaseStartedAt);
+        }
 
-        if (exitCode != 0) {
-            String errorMsg = "Failed to retrieve file name. Exit code: " + exitCode + "\nOutput: " + output;
-            log.error(errorMsg);
-            throw new IOException(errorMsg);
+        private void enter(Phase next) {
+            long now = System.nanoTime();
+            metrics.recordStage(phase.stage, now - phaseStartedAt);
+            phaseStartedAt = now;
+            phase = next;
         }
 
-        Optional<String> fileLine = Arrays.stream(output.split("\n"))
-                .filter(line -> line.contains(".mp3"))
-                .findFirst();
+        Optional<String> filePath() {
+            return Optional.ofNullable(destination != null ? destination : outputLine);
+        }
 
-        if (fileLine.isPresent()) {
-            String filePath = fileLine.get().trim();
-            log.info("Extracted file path: {}", filePath);
-            return filePath;
+        Optional<String> sourcePath() {
+            return Optional.ofNullable(source);
         }
 
-        throw new IOException("File path not found in output: " + output);
+        List<String> announcedFiles() {
+            return Stream.of(source, destination).filter(Objects::nonNull).toList();
+        }
     }
 
-    private List<String> createCommand(String url) {
-        return List.of(
-                YT_DLP_PATH,
-                "-x",
-                "--audio-format", "mp3",
-                "--audio-quality", "0",
+    // Com -x o yt-dlp só recodifica quando o stream escolhido não está no formato pedido
+    private List<String> createCommand(String url, Path printFile, AudioFormat format, boolean extractAudio,
+                                       Path infoJson) {
+        List<String> command = new ArrayList<>();
+        command.add(YT_DLP_PATH);
+        command.addAll(List.of("-f", format.streamSelector()));
+        if (extractAudio) {
+            command.addAll(List.of(
+                    "-x",
+                    "--audio-format", format.value(),
+                    "--audio-quality", format.quality(),
+                    "--no-keep-video"));
+        }
+        command.addAll(List.of(
                 "-o" ,"%(title)s.%(ext)s",
                 "--restrict-filenames",
                 "--force-overwrites",
-                "--no-keep-video",
-                url
-        );
+                "--print-to-file", "after_move:filepath", printFile.toString(),
+                "--newline",
+                "--progress-template", ProgressParser.PROGRESS_TEMPLATE
+        ));
+        if (infoJson != null) {
+            command.addAll(List.of("--load-info-json", infoJson.toString()));
+        } else {
+            command.add(url);
+        }
+        return command;
+    }
+
+    private List<String> createTranscodeCommand(Path source, Path target, List<String> codecArguments) {
+        List<String> command = new ArrayList<>(List.of(
+                FFMPEG_PATH,
+                "-hide_banner",
+                "-nostdin",
+                "-loglevel", "error",
+                "-y",
+                "-i", source.toString(),
+                "-vn",
+                "-map_metadata", "0"));
+        command.addAll(codecArguments);
+        command.add(target.toString());
+        return command;
     }
 }
@@ -0,0 +1,200 @@
+package com.abreu.download_link.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One long-lived worker process that runs yt-dlp jobs in an interpreter that has already imported
+ * it. The protocol is line based: a job is sent as {@code job <argc>}, the working directory and
+ * one argument per line; the worker answers with the yt-dlp output followed by
+ * {@code @@yt-dlp-worker done <exit code>}. It announces itself with {@code @@yt-dlp-worker ready},
+ * answers {@code ping} with {@code @@yt-dlp-worker pong} and quits when its stdin is closed.
+ * <p>
+ * Output is read on a thread of its own into a queue, so the caller can keep the watchdog running
+ * between lines exactly as it does for a spawned process.
+ */
+@Slf4j
+final class YtDlpWorker {
+
+    static final String CONTROL_PREFIX = "@@yt-dlp-worker ";
+
+    enum Kind { LINE, READY, PONG, DONE, CLOSED }
+
+    record Output(Kind kind, String line, int exitCode) {
+        static final Output CLOSED = new Output(Kind.CLOSED, null, -1);
+    }
+
+    private final String name;
+    private final Process process;
+    private final Writer input;
+    private final BlockingQueue<Output> output = new LinkedBlockingQueue<>();
+    private volatile int completedJobs;
+    private volatile long idleSince = System.nanoTime();
+
+    private YtDlpWorker(String name, Process process) {
+        this.name = name;
+        this.process = process;
+        this.input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        Thread reader = new Thread(this::readOutput, name + "-output");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /** Starts a worker and waits until it has loaded yt-dlp. */
+    static YtDlpWorker start(String name, List<String> command, Duration startTimeout)
+            throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .start();
+        YtDlpWorker worker = new YtDlpWorker(name, process);
+        boolean ready = false;
+        try {
+            ready = worker.await(Kind.READY, startTimeout);
+        } finally {
+            if (!ready) {
+                process.destroyForcibly();
+            }
+        }
+        if (!ready) {
+            throw new IOException(name + " did not report ready within " + startTimeout.toMillis() + " ms");
+        }
+        return worker;
+    }
+
+    /** Hands a job to the worker; its output then comes out of {@link #poll}. */
+    void send(List<String> args, Path workDir) throws IOException {
+        StringBuilder request = new StringBuilder("job ").append(args.size()).append('\n')
+                .append(workDir).append('\n');
+        for (String arg : args) {
+            request.append(arg).append('\n');
+        }
+        input.write(request.toString());
+        input.flush();
+    }
+
+    /** The next output of the running job, or {@code null} when none arrived in time. */
+    Output poll(long timeoutMillis) throws InterruptedException {
+        return output.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Whether the worker still answers. Only called on an idle worker. */
+    boolean ping(Duration timeout) throws InterruptedException {
+        if (!process.isAlive()) {
+            return false;
+        }
+        try {
+            input.write("ping\n");
+            input.flush();
+        } catch (IOException e) {
+            return false;
+        }
+        return await(Kind.PONG, timeout);
+    }
+
+    void jobFinished() {
+        completedJobs++;
+        idleSince = System.nanoTime();
+    }
+
+    int completedJobs() {
+        return completedJobs;
+    }
+
+    long idleNanos() {
+        return System.nanoTime() - idleSince;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    Process process() {
+        return process;
+    }
+
+    /** Asks the worker to quit once it is idle, and kills it if it does not. */
+    void retire() {
+        try {
+            input.close();
+        } catch (IOException e) {
+            log.debug("Could not close the input of {}: {}", name, e.getMessage());
+        }
+        process.onExit()
+                .completeOnTimeout(process, 5, TimeUnit.SECONDS)
+                .thenAccept(p -> {
+                    if (p.isAlive()) {
+                        p.destroyForcibly();
+                    }
+                });
+    }
+
+    private boolean await(Kind kind, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            Output next = output.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null || next.kind() == Kind.CLOSED) {
+                return false;
+            }
+            if (next.kind() == kind) {
+                return true;
+            }
+            // o que o interpretador imprimir ao carregar só vai para o log
+            if (next.kind() == Kind.LINE) {
+                log.debug("{}: {}", name, next.line());
+            }
+        }
+        return false;
+    }
+
+    private void readOutput() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(parse(line));
+            }
+        } catch (IOException e) {
+            log.debug("Output of {} closed: {}", name, e.getMessage());
+        }
+        output.add(Output.CLOSED);
+    }
+
+    private static Output parse(String line) {
+        if (!line.startsWith(CONTROL_PREFIX)) {
+            return new Output(Kind.LINE, line, 0);
+        }
+        String control = line.substring(CONTROL_PREFIX.length()).trim();
+        if (control.equals("ready")) {
+            return new Output(Kind.READY, null, 0);
+        }
+        if (control.equals("pong")) {
+            return new Output(Kind.PONG, null, 0);
+        }
+        if (control.startsWith("done ")) {
+            try {
+                return new Output(Kind.DONE, null, Integer.parseInt(control.substring(5).trim()));
+            } catch (NumberFormatException e) {
+                return new Output(Kind.DONE, null, 1);
+            }
+        }
+        return new Output(Kind.LINE, line, 0);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (pid " + process.pid() + ")";
+    }
+}
@@ -0,0 +1,235 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps yt-dlp loaded in a few long-lived worker processes, so a download does not pay for a
+ * Python interpreter starting and importing yt-dlp and its extractors every time.
+ * <p>
+ * Workers are started in the background and lent to one job at a time. A worker that has run
+ * {@code maxJobsPerWorker} jobs, died, or stayed idle long enough to fail a ping is replaced. The
+ * pool never makes a job wait: when no warm worker is at hand {@link #borrow()} comes back empty
+ * and the caller spawns yt-dlp as usual.
+ */
+@Component
+@Slf4j
+public class YtDlpWorkerPool {
+
+    static final String WORKER_SCRIPT = "yt-dlp-worker.py";
+
+    private final DownloadProperties.WorkerPoolProperties config;
+    private final int size;
+    private final Deque<YtDlpWorker> idle = new ArrayDeque<>();
+    private final AtomicInteger workerIds = new AtomicInteger();
+    // guardados pelo monitor do pool
+    private int workers;
+    private int busy;
+    private long lastStartFailure;
+    private boolean running;
+    private List<String> command;
+    private ExecutorService starter;
+
+    public YtDlpWorkerPool(DownloadProperties properties) {
+        this.config = properties.getWorkerPool();
+        this.size = config.effectiveSize(properties.getExecutor().getWorkers());
+    }
+
+    /**
+     * Starts warming up the workers when the pool is enabled. Without a configured command the
+     * bundled worker script runs on the python3 installed next to {@code ytDlpPath}.
+     */
+    public synchronized void start(String ytDlpPath) {
+        if (!config.isEnabled() || running) {
+            return;
+        }
+        try {
+            command = config.getCommand().isEmpty() ? defaultCommand(ytDlpPath) : List.copyOf(config.getCommand());
+        } catch (IOException e) {
+            log.warn("Could not prepare the yt-dlp worker script, spawning yt-dlp for every download: {}", e.getMessage());
+            return;
+        }
+        starter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "yt-dlp-worker-starter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        log.info("Starting {} yt-dlp workers: {}", size, command);
+        for (int i = 0; i < size; i++) {
+            startWorker();
+        }
+    }
+
+    /**
+     * Lends an idle worker that is alive and, when it sat idle past the health check interval,
+     * answered a ping. Empty when the pool is off or every worker is busy or still starting.
+     */
+    public Optional<YtDlpWorker> borrow() throws InterruptedException {
+        while (true) {
+            YtDlpWorker worker;
+            synchronized (this) {
+                if (!running) {
+                    return Optional.empty();
+                }
+                worker = idle.pollFirst();
+                if (worker == null) {
+                    replenish();
+                    return Optional.empty();
+                }
+                busy++;
+            }
+            if (isHealthy(worker)) {
+                return Optional.of(worker);
+            }
+            log.warn("{} failed its health check, replacing it", worker);
+            worker.process().destroyForcibly();
+            discard(worker);
+        }
+    }
+
+    /** Takes back a worker whose job finished, replacing it once it has run its share of jobs. */
+    public void giveBack(YtDlpWorker worker) {
+        worker.jobFinished();
+        boolean retire;
+        synchronized (this) {
+            busy--;
+            retire = !running || !worker.isAlive() || worker.completedJobs() >= config.getMaxJobsPerWorker();
+            if (retire) {
+                workers--;
+                replenish();
+            } else {
+                // o último devolvido é o primeiro emprestado: os workers quentes ficam em uso
+                idle.addFirst(worker);
+            }
+        }
+        if (retire) {
+            log.debug("Retiring {} after {} jobs", worker, worker.completedJobs());
+            worker.retire();
+        }
+    }
+
+    /** Forgets a worker that was killed or died; a replacement is started in its place. */
+    public synchronized void discard(YtDlpWorker worker) {
+        busy--;
+        workers--;
+        replenish();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized int getBusyCount() {
+        return busy;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<YtDlpWorker> idleWorkers;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            starter.shutdownNow();
+            idleWorkers = new ArrayList<>(idle);
+            idle.clear();
+        }
+        // os que estão ocupados são aposentados quando o job devolver o worker
+        idleWorkers.forEach(YtDlpWorker::retire);
+    }
+
+    private boolean isHealthy(YtDlpWorker worker) throws InterruptedException {
+        if (!worker.isAlive()) {
+            return false;
+        }
+        if (worker.idleNanos() < config.getHealthCheckInterval().toNanos()) {
+            return true;
+        }
+        return worker.ping(config.getHealthCheckTimeout());
+    }
+
+    // chamado com o monitor do pool; depois de uma falha ao iniciar, espera o backoff antes de tentar de novo
+    private void replenish() {
+        if (!running || workers >= size) {
+            return;
+        }
+        if (lastStartFailure != 0 && System.nanoTime() - lastStartFailure < config.getRestartBackoff().toNanos()) {
+            return;
+        }
+        startWorker();
+    }
+
+    private void startWorker() {
+        workers++;
+        String name = "yt-dlp-worker-" + workerIds.incrementAndGet();
+        starter.execute(() -> {
+            try {
+                YtDlpWorker worker = YtDlpWorker.start(name, command, config.getStartTimeout());
+                boolean keep;
+                synchronized (this) {
+                    keep = running;
+                    if (keep) {
+                        lastStartFailure = 0;
+                        idle.addFirst(worker);
+                    } else {
+                        workers--;
+                    }
+                }
+                if (keep) {
+                    log.debug("{} ready", worker);
+                } else {
+                    worker.retire();
+                }
+            } catch (IOException e) {
+                log.warn("Could not start {}, downloads spawn yt-dlp until it is: {}", name, e.getMessage());
+                synchronized (this) {
+                    workers--;
+                    lastStartFailure = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    workers--;
+                }
+            }
+        });
+    }
+
+    private static List<String> defaultCommand(String ytDlpPath) throws IOException {
+        Path script = Files.createTempFile("yt-dlp-worker-", ".py");
+        script.toFile().deleteOnExit();
+        try (InputStream resource = YtDlpWorkerPool.class.getClassLoader().getResourceAsStream(WORKER_SCRIPT)) {
+            if (resource == null) {
+                throw new IOException(WORKER_SCRIPT + " is missing from the classpath");
+            }
+            Files.copy(resource, script, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // o python do venv do yt-dlp é o que consegue importá-lo
+        Path venvPython = Paths.get(ytDlpPath).resolveSibling("python3");
+        String python = Files.isExecutable(venvPython) ? venvPython.toString() : "python3";
+        return List.of(python, "-u", script.toString());
+    }
+}
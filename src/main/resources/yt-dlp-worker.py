@@ -0,0 +1,79 @@
+"""Long-lived yt-dlp worker used by YtDlpWorkerPool.
+
+yt-dlp is imported once and every job runs in this interpreter, so a download does not pay for
+the interpreter start and the import. Requests come on stdin, one field per line:
+
+    job <argc>        run yt-dlp with the <argc> arguments that follow
+    <working dir>
+    <arg 1>
+    ...
+    ping              answered with "@@yt-dlp-worker pong"
+
+The yt-dlp output of a job (stdout and stderr) is written to stdout as is, followed by
+"@@yt-dlp-worker done <exit code>". The worker quits when stdin is closed.
+"""
+import os
+import sys
+import traceback
+
+import yt_dlp
+
+CONTROL = "@@yt-dlp-worker "
+
+
+def emit(message):
+    sys.stdout.write(CONTROL + message + "\n")
+    sys.stdout.flush()
+
+
+def exit_code(code):
+    if code is None:
+        return 0
+    if isinstance(code, int):
+        return code
+    # sys.exit("ERROR: ...") imprime a mensagem e sai com 1
+    print(code)
+    return 1
+
+
+def run(workdir, args):
+    os.chdir(workdir)
+    try:
+        yt_dlp.main(args)
+        return 0
+    except SystemExit as e:
+        return exit_code(e.code)
+    except BaseException:
+        traceback.print_exc(file=sys.stdout)
+        return 1
+    finally:
+        sys.stdout.flush()
+
+
+def read_line():
+    line = sys.stdin.readline()
+    if not line:
+        raise EOFError
+    return line.rstrip("\n")
+
+
+def main():
+    sys.stderr = sys.stdout
+    emit("ready")
+    while True:
+        try:
+            request = read_line().split()
+            if not request:
+                continue
+            if request[0] == "ping":
+                emit("pong")
+            elif request[0] == "job":
+                workdir = read_line()
+                args = [read_line() for _ in range(int(request[1]))]
+                emit("done %d" % run(workdir, args))
+        except EOFError:
+            return
+
+
+if __name__ == "__main__":
+    main()
@@ -1,13 +1,37 @@
 package com.abreu.download_link;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
 class DownloadLinkApplicationTests {
 
+	@Autowired
+	private MockMvc mvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void prometheusEndpointExportsPipelineMetrics() throws Exception {
+		mvc.perform(get("/actuator/prometheus"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("downloader_stage_duration_seconds_bucket{application=\"download-link\",stage=\"download\"")))
+				.andExpect(content().string(containsString("downloader_queue_depth")))
+				.andExpect(content().string(containsString("downloader_storage_free_bytes")))
+				.andExpect(content().string(containsString("downloader_leases_active")));
+	}
+
 }
@@ -0,0 +1,168 @@
+package com.abreu.download_link.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old file endpoint path (stream copy through an 8 KB heap buffer, as done by
+ * {@code ResourceHttpMessageConverter}) with {@link FileChannel#transferTo} straight into a
+ * socket, which is what Tomcat's sendfile does for {@code FileResponseWriter}. Each operation
+ * sends the whole file over a loopback connection drained by another thread.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.abreu.download_link.benchmark.FileServingBenchmark"}.
+ * Throughput is reported in ops/s (one op = one file). The {@code cpuMillis} and {@code sentGb}
+ * counters hold the CPU time of the sending thread and the volume sent during measurement; their
+ * ratio is the CPU cost per gigabyte.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FileServingBenchmark {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({"8", "64"})
+    public int fileSizeMb;
+
+    private Path file;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private Thread drain;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounters {
+        private long cpuNanos;
+        private long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuNanos = 0;
+            bytes = 0;
+        }
+
+        public double cpuMillis() {
+            return cpuNanos / 1_000_000.0;
+        }
+
+        public double sentGb() {
+            return bytes / (double) (1L << 30);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("file-serving-", ".mp3");
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileSizeMb; i++) {
+                out.write(chunk);
+            }
+        }
+
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel peer = server.accept();
+        drain = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            try {
+                while (peer.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException ignored) {
+                // conexão fechada no tearDown
+            }
+        }, "benchmark-drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        client.close();
+        server.close();
+        drain.join(1000);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long streamCopy(CpuCounters counters) throws IOException {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long sent = 0;
+        OutputStream out = Channels.newOutputStream(client);
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                sent += read;
+            }
+        }
+        return record(counters, cpuStart, sent);
+    }
+
+    @Benchmark
+    public long transferTo(CpuCounters counters) throws IOException {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long sent = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            while (sent < size) {
+                sent += channel.transferTo(sent, size - sent, client);
+            }
+        }
+        return record(counters, cpuStart, sent);
+    }
+
+    private static long record(CpuCounters counters, long cpuStart, long sent) {
+        counters.cpuNanos += THREADS.getCurrentThreadCpuTime() - cpuStart;
+        counters.bytes += sent;
+        return sent;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(FileServingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
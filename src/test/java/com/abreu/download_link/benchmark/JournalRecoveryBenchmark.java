@@ -0,0 +1,114 @@
+package com.abreu.download_link.benchmark;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.service.JobJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to start with a journal that was never compacted: about {@code entries} records, four per
+ * finished job (submitted, starting, in progress, completed) and three for the one in ten still
+ * running, all recent enough to be kept. Each run replays the journal and writes the compacted
+ * file, as a restart does.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.abreu.download_link.benchmark.JournalRecoveryBenchmark"}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalRecoveryBenchmark {
+
+    @Param({"100000"})
+    public int entries;
+
+    private Path dir;
+    private Path template;
+    private DownloadProperties properties;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws Exception {
+        dir = Files.createTempDirectory("journal-bench-");
+        properties = new DownloadProperties();
+        properties.getJournal().setDirectory(dir.resolve("journal").toString());
+        properties.getJournal().setCompactionInterval(Duration.ofDays(1));
+
+        JobJournal journal = new JobJournal(properties);
+        journal.init();
+        for (int job = 0; job < entries / 4; job++) {
+            String jobId = String.format("job%08d", job);
+            String videoId = String.format("v%010d", job);
+            journal.recordSubmitted(jobId, "https://www.youtube.com/watch?v=" + videoId, videoId, AudioFormat.MP3);
+            journal.onStatus(jobId, new DownloadStatus(Status.STARTING, "Download starting"));
+            journal.onStatus(jobId, new DownloadStatus(Status.IN_PROGRESS, "Download in progress"));
+            // um em cada dez ainda rodava quando o processo caiu
+            if (job % 10 != 0) {
+                journal.onStatus(jobId, new DownloadStatus(Status.COMPLETED, "Download completed successfully", videoId + "-mp3-0.mp3"));
+            }
+        }
+        journal.close();
+        template = dir.resolve("journal.template");
+        Files.copy(journalFile(), template);
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreJournal() throws Exception {
+        Files.copy(template, journalFile(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int recover() throws Exception {
+        JobJournal journal = new JobJournal(properties);
+        journal.init();
+        int jobs = journal.recoveredJobs().size();
+        journal.close();
+        return jobs;
+    }
+
+    private Path journalFile() {
+        return dir.resolve("journal").resolve("journal.log");
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(JournalRecoveryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
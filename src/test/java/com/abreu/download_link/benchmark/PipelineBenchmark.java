@@ -0,0 +1,111 @@
+package com.abreu.download_link.benchmark;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.YoutubeResponse;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs a batch of distinct downloads through the real service, with stub scripts standing in for
+ * yt-dlp and ffmpeg: the fetch sleeps like a transfer limited by the network and the conversion
+ * spins a busy loop like an encode limited by the CPU. With {@code splitStages=false} every
+ * download worker holds its network slot through the conversion; with {@code true} it hands the
+ * file over and fetches the next one while a transcode worker encodes.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.abreu.download_link.benchmark.PipelineBenchmark"}.
+ * The score is the time to finish one batch; lower is better. {@code transcodeCpu} is the number
+ * of busy-loop iterations per conversion (about 0.2 s of one core with dash).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    private static final int BATCH = 16;
+    private static final int NETWORK_SLOTS = 2;
+    private static final double FETCH_SECONDS = 0.4;
+
+    @Param({"false", "true"})
+    public boolean splitStages;
+
+    @Param({"120000"})
+    public long transcodeCpu;
+
+    private Path dir;
+    private ServiceFixture fixture;
+    private int batches;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("pipeline-bench-");
+        StubYtDlp stub = StubYtDlp.builder(dir)
+                .delaySeconds(FETCH_SECONDS)
+                .transcodeCpu(transcodeCpu)
+                .build();
+
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(NETWORK_SLOTS);
+        properties.getExecutor().setQueueCapacity(BATCH);
+        properties.getExecutor().setClientQueueLimit(0);
+        properties.getPipeline().setSplitStages(splitStages);
+        fixture = new ServiceFixture(stub, properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<YoutubeResponse> batch() {
+        // ids novos a cada lote: nada pode sair do cache de resultados
+        int base = batches++ * BATCH;
+        List<CompletableFuture<YoutubeResponse>> results = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            String videoId = String.format("bench%06d", base + i);
+            results.add(fixture.service.submit(new YoutubeLinkRequest("https://www.youtube.com/watch?v=" + videoId)).result());
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PipelineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
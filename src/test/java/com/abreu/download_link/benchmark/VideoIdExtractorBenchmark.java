@@ -0,0 +1,69 @@
+package com.abreu.download_link.benchmark;
+
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.service.VideoIdExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link VideoIdExtractor} with the regex used by {@link YoutubeLinkRequest} validation.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * -Dexec.args="-cp %classpath com.abreu.download_link.benchmark.VideoIdExtractorBenchmark"}.
+ * Passing {@code -prof gc} after the class name also reports allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoIdExtractorBenchmark {
+
+    private static final Pattern REQUEST_PATTERN = Pattern.compile(YoutubeLinkRequest.URL_PATTERN);
+
+    @Param({
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+            "https://youtu.be/dQw4w9WgXcQ?si=abcdef",
+            "https://www.youtube.com/watch?feature=share&t=42&v=dQw4w9WgXcQ"
+    })
+    public String url;
+
+    @Benchmark
+    public boolean requestRegexValidation() {
+        return REQUEST_PATTERN.matcher(url).matches();
+    }
+
+    @Benchmark
+    public String extractor() {
+        return VideoIdExtractor.videoId(url);
+    }
+
+    @Benchmark
+    public String canonicalKey() {
+        return VideoIdExtractor.canonicalKey(url);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(VideoIdExtractorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,163 @@
+package com.abreu.download_link.controller;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.exceptions.handler.GlobalExceptionHandler;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class BatchControllerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void submittedBatchReportsProgressAndStreamsItsZip() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir));
+
+        String body = mvc.perform(post("/api/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"urls\":[\"https://www.youtube.com/watch?v=aaaaaaaaaaa\","
+                                + "\"https://youtu.be/bbbbbbbbbbb\"],\"format\":\"opus\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", containsString("/api/batch/")))
+                .andExpect(jsonPath("$.zipUrl").value(endsWith("/zip")))
+                .andReturn().getResponse().getContentAsString();
+        String batchId = JsonPath.read(body, "$.batchId");
+
+        await().untilAsserted(() -> mvc.perform(get("/api/batch/{id}", batchId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.total").value(2))
+                .andExpect(jsonPath("$.items[1].fileName").value("bbbbbbbbbbb-opus-160K.opus")));
+
+        MvcResult zip = mvc.perform(get("/api/batch/{id}/zip", batchId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] archive = mvc.perform(asyncDispatch(zip))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/zip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"batch-" + batchId + ".zip\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(entryNames(archive)).containsExactlyInAnyOrder("stub_aaaaaaaaaaa.opus", "stub_bbbbbbbbbbb.opus");
+    }
+
+    @Test
+    void zipOfASlowBatchOutlivesTheAsyncRequestTimeout() throws Exception {
+        // cada item leva ~1s, bem mais que o timeout async de 100ms configurado abaixo
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).delaySeconds(0.5).build());
+
+        String body = mvc.perform(post("/api/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"urls\":[\"https://youtu.be/aaaaaaaaaaa\",\"https://youtu.be/bbbbbbbbbbb\"]}"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        String batchId = JsonPath.read(body, "$.batchId");
+
+        MvcResult zip = mvc.perform(get("/api/batch/{id}/zip", batchId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(zip.getRequest().getAsyncContext().getTimeout())
+                .isEqualTo(fixture.properties.getBatch().getStreamTimeout().toMillis());
+        byte[] archive = mvc.perform(asyncDispatch(zip))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(entryNames(archive)).containsExactlyInAnyOrder("stub_aaaaaaaaaaa.mp3", "stub_bbbbbbbbbbb.mp3");
+    }
+
+    @Test
+    void clientWithTooManyRunningBatchesIsToldWhenToRetry() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getBatch().setClientLimit(1);
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).delaySeconds(1).build(), properties);
+        String batch = "{\"urls\":[\"https://youtu.be/aaaaaaaaaaa\"]}";
+
+        mvc.perform(post("/api/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isAccepted());
+        mvc.perform(post("/api/batch").contentType(MediaType.APPLICATION_JSON).content(batch))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void invalidBatchesAndUnknownIdsAreRejected() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir));
+
+        mvc.perform(post("/api/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"urls\":[\"https://example.com/a\"]}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(post("/api/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"urls\":[\"https://youtu.be/aaaaaaaaaaa\"],"
+                                + "\"playlistUrl\":\"https://www.youtube.com/playlist?list=PLstub\"}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/batch/{id}", "missing"))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/api/batch/{id}/zip", "missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    private MockMvc createMvc(StubYtDlp stub) throws Exception {
+        return createMvc(stub, new DownloadProperties());
+    }
+
+    private MockMvc createMvc(StubYtDlp stub, DownloadProperties properties) throws Exception {
+        fixture = new ServiceFixture(stub, properties);
+        BatchController controller = new BatchController(
+                fixture.batchService, fixture.metrics, new ClientIds(fixture.properties), fixture.properties);
+        return MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                // faz o papel de spring.mvc.async.request-timeout, bem mais curto
+                .setAsyncRequestTimeout(100)
+                .build();
+    }
+
+    private static List<String> entryNames(byte[] archive) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+}
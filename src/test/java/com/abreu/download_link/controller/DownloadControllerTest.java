@@ -0,0 +1,401 @@
+package com.abreu.download_link.controller;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.exceptions.handler.GlobalExceptionHandler;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import jakarta.servlet.ServletOutputStream;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.containsString;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.endsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class DownloadControllerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void submitReturnsJobAndCompletedJobExposesDownloadLink() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir), new DownloadProperties());
+
+        String body = mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json("dQw4w9WgXcQ")))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.jobId").isNotEmpty())
+                .andExpect(header().string("Location", containsString("/api/jobs/")))
+                .andReturn().getResponse().getContentAsString();
+        String jobId = JsonPath.read(body, "$.jobId");
+
+        await().untilAsserted(() -> mvc.perform(get("/api/jobs/{id}", jobId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.downloadUrl").value(endsWith("/api/download/dQw4w9WgXcQ-mp3-0.mp3"))));
+
+        mvc.perform(get("/api/download/{filename}", "dQw4w9WgXcQ-mp3-0.mp3"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", containsString("stub_dQw4w9WgXcQ.mp3")));
+    }
+
+    @Test
+    void fileEndpointServesRangesAndConditionalRequests() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir), new DownloadProperties());
+        String fileName = completeDownload(mvc, "dQw4w9WgXcQ");
+        long leasesBefore = fixture.leases.getAcquiredTotal();
+        String content = "ID3stub-audio-dQw4w9WgXcQ";
+
+        String eTag = mvc.perform(get("/api/download/{filename}", fileName))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().exists("Last-Modified"))
+                .andExpect(content().string(content))
+                .andReturn().getResponse().getHeader("ETag");
+        assertThat(eTag).startsWith("\"dQw4w9WgXcQ-mp3-0-");
+
+        mvc.perform(get("/api/download/{filename}", fileName).header("Range", "bytes=3-6"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 3-6/" + content.length()))
+                .andExpect(content().string("stub"));
+
+        mvc.perform(get("/api/download/{filename}", fileName).header("Range", "bytes=-11"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("dQw4w9WgXcQ"));
+
+        mvc.perform(get("/api/download/{filename}", fileName).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        mvc.perform(get("/api/download/{filename}", fileName)
+                        .header("Range", "bytes=3-6")
+                        .header("If-Range", "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(content));
+
+        mvc.perform(get("/api/download/{filename}", fileName)
+                        .header("Range", "bytes=3-6")
+                        .header("If-Range", eTag))
+                .andExpect(status().isPartialContent());
+
+        mvc.perform(get("/api/download/{filename}", fileName).header("Range", "bytes=100-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */" + content.length()));
+
+        assertThat(fixture.leases.getAcquiredTotal() - leasesBefore).isEqualTo(7);
+        assertThat(fixture.leases.getActiveLeases()).isZero();
+    }
+
+    @Test
+    void abortedTransferReleasesItsLease() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir), new DownloadProperties());
+        String fileName = completeDownload(mvc, "dQw4w9WgXcQ");
+        long leasesBefore = fixture.leases.getAcquiredTotal();
+        DownloadController controller = new DownloadController(fixture.service, fixture.events, fixture.videoInfo, fixture.metrics,
+                new ClientIds(fixture.properties), fixture.properties);
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                throw new UncheckedIOException(new IOException("Connection reset by peer"));
+            }
+        };
+
+        assertThatThrownBy(() -> controller.getFile(fileName, new MockHttpServletRequest("GET", "/"), response))
+                .isInstanceOf(UncheckedIOException.class);
+        assertThat(fixture.leases.getAcquiredTotal() - leasesBefore).isEqualTo(1);
+        assertThat(fixture.leases.getActiveLeases()).isZero();
+    }
+
+    @Test
+    void audioStreamStartsBeforeTranscodingEndsForEveryListener() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).transcodeDelaySeconds(2).build(), new DownloadProperties());
+
+        String body = mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json("dQw4w9WgXcQ")))
+                .andReturn().getResponse().getContentAsString();
+        String jobId = JsonPath.read(body, "$.jobId");
+
+        MvcResult first = mvc.perform(get("/api/download/{id}/stream", jobId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult second = mvc.perform(get("/api/download/{id}/stream", jobId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // o transcode de 2s passa do timeout async de 100ms; o stream tem o seu próprio
+        assertThat(first.getRequest().getAsyncContext().getTimeout())
+                .isEqualTo(fixture.properties.getPipeline().getStreamTimeout().toMillis());
+
+        await().atMost(Duration.ofMillis(1500)).until(() ->
+                first.getResponse().getContentAsString().equals("ID3stub-")
+                        && second.getResponse().getContentAsString().equals("ID3stub-"));
+        assertThat(fixture.service.getJobStatus(jobId).status()).isNotEqualTo(Status.COMPLETED);
+
+        for (MvcResult result : new MvcResult[]{first, second}) {
+            mvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Content-Type", "audio/mpeg"));
+            assertThat(result.getResponse().getContentAsString()).isEqualTo("ID3stub-audio-dQw4w9WgXcQ");
+        }
+
+        mvc.perform(get("/api/download/{id}/stream", jobId))
+                .andExpect(request().asyncStarted())
+                .andDo(result -> mvc.perform(asyncDispatch(result)))
+                .andExpect(content().string("ID3stub-audio-dQw4w9WgXcQ"));
+    }
+
+    @Test
+    void deleteCancelsARunningJob() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).hang().build(), new DownloadProperties());
+
+        String body = mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json("dQw4w9WgXcQ")))
+                .andReturn().getResponse().getContentAsString();
+        String jobId = JsonPath.read(body, "$.jobId");
+
+        mvc.perform(delete("/api/jobs/{id}", jobId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("CANCELLED"));
+        mvc.perform(delete("/api/jobs/{id}", jobId))
+                .andExpect(status().isConflict());
+        mvc.perform(delete("/api/jobs/{id}", "doesNotExist"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void unknownJobReturnsNotFound() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir), new DownloadProperties());
+
+        mvc.perform(get("/api/jobs/{id}", "doesNotExist"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void eventStreamPushesStatusToEverySubscriberAndClosesOnCompletion() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).delaySeconds(1).build(), new DownloadProperties());
+
+        String body = mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json("dQw4w9WgXcQ")))
+                .andReturn().getResponse().getContentAsString();
+        String jobId = JsonPath.read(body, "$.jobId");
+
+        MvcResult first = mvc.perform(get("/api/jobs/{id}/events", jobId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult second = mvc.perform(get("/api/jobs/{id}/events", jobId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(fixture.events.getChannelCount()).isEqualTo(1);
+        assertThat(fixture.events.getSubscriberCount()).isEqualTo(2);
+
+        await().until(() -> fixture.events.getChannelCount() == 0);
+        for (MvcResult result : new MvcResult[]{first, second}) {
+            String stream = result.getResponse().getContentAsString();
+            assertThat(stream).contains("event:status");
+            assertThat(stream).contains("\"status\":\"COMPLETED\"");
+            assertThat(stream).contains("/api/download/dQw4w9WgXcQ-mp3-0.mp3");
+        }
+    }
+
+    @Test
+    void eventStreamForUnknownJobReturnsNotFound() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir), new DownloadProperties());
+
+        mvc.perform(get("/api/jobs/{id}/events", "doesNotExist"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void saturatedExecutorReturnsTooManyRequestsWithRetryAfter() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getExecutor().setQueueCapacity(1);
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).delaySeconds(2).build(), properties);
+
+        for (String videoId : new String[]{"aaaaaaaaaaa", "bbbbbbbbbbb"}) {
+            mvc.perform(post("/api/download").contentType(MediaType.APPLICATION_JSON).content(json(videoId)))
+                    .andExpect(status().isAccepted());
+        }
+
+        mvc.perform(post("/api/download").contentType(MediaType.APPLICATION_JSON).content(json("ccccccccccc")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void queuedJobsShowTheirPlaceAndEachClientHasItsOwnShareOfTheQueue() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getExecutor().setClientQueueLimit(1);
+        properties.getExecutor().setApiKeys(List.of("heavy"));
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).delaySeconds(1).build(), properties);
+
+        submit(mvc, "aaaaaaaaaaa", "key:heavy");
+        await().until(() -> fixture.executor.getActiveCount() == 1);
+        String heavy = submit(mvc, "bbbbbbbbbbb", "key:heavy");
+        mvc.perform(post("/api/download").header("X-API-Key", "heavy")
+                        .contentType(MediaType.APPLICATION_JSON).content(json("ccccccccccc")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+        String light = submit(mvc, "ddddddddddd", "ip:203.0.113.7");
+
+        mvc.perform(get("/api/jobs/{id}", heavy))
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andExpect(jsonPath("$.queuePosition").value(1));
+        mvc.perform(get("/api/jobs/{id}", light))
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andExpect(jsonPath("$.queuePosition").value(2));
+
+        await().untilAsserted(() -> mvc.perform(get("/api/jobs/{id}", light))
+                .andExpect(jsonPath("$.status").value("IN_PROGRESS"))
+                .andExpect(jsonPath("$.queuePosition").doesNotExist()));
+    }
+
+    @Test
+    void madeUpApiKeysDoNotBuyAnotherShareOfTheQueue() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getExecutor().setClientQueueLimit(1);
+        properties.getExecutor().setApiKeys(List.of("partner"));
+        MockMvc mvc = createMvc(StubYtDlp.builder(tempDir).delaySeconds(1).build(), properties);
+
+        submit(mvc, "aaaaaaaaaaa", "ip:198.51.100.9");
+        await().until(() -> fixture.executor.getActiveCount() == 1);
+        submit(mvc, "bbbbbbbbbbb", "key:made-up-1");
+        mvc.perform(post("/api/download").header("X-API-Key", "made-up-2")
+                        .contentType(MediaType.APPLICATION_JSON).content(json("ccccccccccc")))
+                .andExpect(status().isTooManyRequests());
+
+        // uma chave configurada é o mesmo cliente venha de onde vier
+        submit(mvc, "ddddddddddd", "key:partner");
+        mvc.perform(post("/api/download").header("X-API-Key", "partner")
+                        .with(request -> {
+                            request.setRemoteAddr("203.0.113.50");
+                            return request;
+                        })
+                        .contentType(MediaType.APPLICATION_JSON).content(json("eeeeeeeeeee")))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    void requestedFormatSelectsTheStoredFileAndUnknownFormatsAreRejected() throws Exception {
+        MockMvc mvc = createMvc(StubYtDlp.create(tempDir), new DownloadProperties());
+
+        String body = mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"url\":\"https://www.youtube.com/watch?v=dQw4w9WgXcQ\",\"format\":\"opus\"}"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        String jobId = JsonPath.read(body, "$.jobId");
+        await().untilAsserted(() -> mvc.perform(get("/api/jobs/{id}", jobId))
+                .andExpect(jsonPath("$.downloadUrl").value(endsWith("/api/download/dQw4w9WgXcQ-opus-160K.opus"))));
+        mvc.perform(get("/api/download/{id}/stream", jobId))
+                .andExpect(request().asyncStarted())
+                .andDo(result -> mvc.perform(asyncDispatch(result)))
+                .andExpect(header().string("Content-Type", "audio/ogg"));
+
+        mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"url\":\"https://www.youtube.com/watch?v=dQw4w9WgXcQ\",\"format\":\"flac\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value(containsString("Unsupported audio format: flac")));
+    }
+
+    @Test
+    void infoDescribesTheVideoWithoutDownloadingIt() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        MockMvc mvc = createMvc(stub, new DownloadProperties());
+
+        mvc.perform(get("/api/info").param("url", "https://youtu.be/dQw4w9WgXcQ?si=share"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.videoId").value("dQw4w9WgXcQ"))
+                .andExpect(jsonPath("$.title").value("Stub video dQw4w9WgXcQ"))
+                .andExpect(jsonPath("$.durationSeconds").value(212))
+                .andExpect(jsonPath("$.thumbnailUrl").value(endsWith("/dQw4w9WgXcQ/hqdefault.jpg")))
+                .andExpect(jsonPath("$.estimatedSizeBytes").value(1048576));
+        mvc.perform(get("/api/info").param("url", "https://www.youtube.com/playlist?list=PLstub"))
+                .andExpect(status().isBadRequest());
+
+        assertThat(stub.invocations()).isZero();
+    }
+
+    private String completeDownload(MockMvc mvc, String videoId) throws Exception {
+        String body = mvc.perform(post("/api/download")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(videoId)))
+                .andReturn().getResponse().getContentAsString();
+        String jobId = JsonPath.read(body, "$.jobId");
+
+        await().untilAsserted(() -> mvc.perform(get("/api/jobs/{id}", jobId))
+                .andExpect(jsonPath("$.status").value("COMPLETED")));
+        return videoId + "-mp3-0.mp3";
+    }
+
+    private String submit(MockMvc mvc, String videoId, String client) throws Exception {
+        String body = mvc.perform(post("/api/download")
+                        .with(request -> {
+                            if (client.startsWith("key:")) {
+                                request.addHeader("X-API-Key", client.substring(4));
+                            } else {
+                                request.setRemoteAddr(client.substring(3));
+                            }
+                            return request;
+                        })
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(videoId)))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(body, "$.jobId");
+    }
+
+    private MockMvc createMvc(StubYtDlp stub, DownloadProperties properties) throws Exception {
+        fixture = new ServiceFixture(stub, properties);
+        return MockMvcBuilders.standaloneSetup(new DownloadController(fixture.service, fixture.events, fixture.videoInfo, fixture.metrics,
+                new ClientIds(fixture.properties), fixture.properties))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                // faz o papel de spring.mvc.async.request-timeout, bem mais curto que qualquer transcode
+                .setAsyncRequestTimeout(100)
+                .build();
+    }
+
+    private static String json(String videoId) {
+        return "{\"url\":\"https://www.youtube.com/watch?v=" + videoId + "\"}";
+    }
+}
@@ -0,0 +1,159 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.BatchRequest;
+import com.abreu.download_link.domain.BatchStatusResponse;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.exceptions.DownloadRejectedException;
+import com.abreu.download_link.exceptions.InvalidBatchException;
+import com.abreu.download_link.exceptions.JobNotFoundException;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class BatchServiceTest {
+
+    private static final String WATCH = "https://www.youtube.com/watch?v=";
+    private static final String PLAYLIST = "https://www.youtube.com/playlist?list=PLstub";
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void batchKeepsAtMostConcurrencyJobsRunningAndReusesCachedVideos() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(0.4).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getBatch().setConcurrency(2);
+        fixture = new ServiceFixture(stub, properties);
+        fixture.service.submit(new YoutubeLinkRequest(WATCH + "aaaaaaaaaaa")).result().get();
+
+        List<String> urls = List.of("aaaaaaaaaaa", "bbbbbbbbbbb", "ccccccccccc", "ddddddddddd", "eeeeeeeeeee")
+                .stream().map(id -> WATCH + id).toList();
+        String batchId = fixture.batchService.submit(new BatchRequest(urls, null, null));
+
+        int maxPending = 0;
+        BatchStatusResponse status = fixture.batchService.getStatus(batchId);
+        while (status.status() != Status.COMPLETED) {
+            long pending = status.items().stream()
+                    .filter(item -> item.jobId() != null && !item.status().isTerminal())
+                    .count();
+            maxPending = Math.max(maxPending, (int) pending);
+            assertThat(status.status()).isEqualTo(Status.IN_PROGRESS);
+            Thread.sleep(50);
+            status = fixture.batchService.getStatus(batchId);
+        }
+
+        assertThat(maxPending).isEqualTo(2);
+        assertThat(status.completed()).isEqualTo(5);
+        assertThat(status.percent()).isEqualTo(100.0);
+        assertThat(status.items()).extracting(BatchStatusResponse.Item::url).containsExactlyElementsOf(urls);
+        // o primeiro vídeo já estava no cache: só os outros quatro chamam o yt-dlp
+        assertThat(stub.invocations()).isEqualTo(5);
+    }
+
+    @Test
+    void playlistZipHoldsEveryDownloadedFileAndListsTheFailures() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir)
+                .playlist("aaaaaaaaaaa", "bbbbbbbbbbb", "ccccccccccc")
+                .failFor("bbbbbbbbbbb")
+                .build();
+        fixture = new ServiceFixture(stub, new DownloadProperties());
+
+        String batchId = fixture.batchService.submit(new BatchRequest(null, PLAYLIST, null));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = fixture.batchService.writeZip(batchId, out);
+
+        Map<String, String> entries = unzip(out.toByteArray());
+        assertThat(written).isEqualTo(out.size());
+        assertThat(entries).containsOnlyKeys("stub_aaaaaaaaaaa.mp3", "stub_ccccccccccc.mp3", "errors.txt");
+        assertThat(entries.get("stub_ccccccccccc.mp3")).isEqualTo("ID3stub-audio-ccccccccccc");
+        assertThat(entries.get("errors.txt")).startsWith(WATCH + "bbbbbbbbbbb: FAILED");
+
+        BatchStatusResponse status = fixture.batchService.getStatus(batchId);
+        assertThat(status.status()).isEqualTo(Status.COMPLETED);
+        assertThat(status.total()).isEqualTo(3);
+        assertThat(status.completed()).isEqualTo(2);
+        assertThat(status.failed()).isEqualTo(1);
+        assertThat(fixture.leases.getActiveLeases()).isZero();
+    }
+
+    @Test
+    void emptyPlaylistFailsTheBatch() throws Exception {
+        fixture = new ServiceFixture(StubYtDlp.builder(tempDir).playlist().build(), new DownloadProperties());
+
+        String batchId = fixture.batchService.submit(new BatchRequest(null, PLAYLIST, null));
+
+        await().untilAsserted(() -> assertThat(fixture.batchService.getStatus(batchId).status()).isEqualTo(Status.FAILED));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fixture.batchService.writeZip(batchId, out);
+        assertThat(unzip(out.toByteArray())).containsEntry("errors.txt", "Playlist has no videos\n");
+    }
+
+    @Test
+    void eachClientMayOnlyHaveAFewUnfinishedBatches() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getBatch().setClientLimit(1);
+        fixture = new ServiceFixture(StubYtDlp.builder(tempDir).delaySeconds(0.3).build(), properties);
+        BatchRequest request = new BatchRequest(List.of(WATCH + "aaaaaaaaaaa", WATCH + "bbbbbbbbbbb"), null, null);
+
+        String first = fixture.batchService.submit(request, "key:heavy");
+        assertThatThrownBy(() -> fixture.batchService.submit(request, "key:heavy"))
+                .isInstanceOfSatisfying(DownloadRejectedException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isPositive());
+        fixture.batchService.submit(request, "ip:10.0.0.1");
+
+        await().until(() -> fixture.batchService.getStatus(first).status() == Status.COMPLETED);
+        fixture.batchService.submit(request, "key:heavy");
+    }
+
+    @Test
+    void rejectsBatchesAboveTheItemLimitAndUnknownIds() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getBatch().setMaxItems(2);
+        fixture = new ServiceFixture(StubYtDlp.create(tempDir), properties);
+
+        List<String> urls = Collections.nCopies(3, WATCH + "dQw4w9WgXcQ");
+        assertThatThrownBy(() -> fixture.batchService.submit(new BatchRequest(urls, null, null)))
+                .isInstanceOf(InvalidBatchException.class);
+        assertThatThrownBy(() -> fixture.batchService.getStatus("missing"))
+                .isInstanceOf(JobNotFoundException.class);
+    }
+
+    private static Map<String, String> unzip(byte[] zip) throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,71 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.enums.JobPriority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FairJobQueueTest {
+
+    @Test
+    void clientsTakeTurnsWhateverTheirBacklog() throws Exception {
+        FairJobQueue<String> queue = new FairJobQueue<>(16, 0, 4);
+        for (int i = 1; i <= 4; i++) {
+            queue.offer("heavy", JobPriority.INTERACTIVE, "h" + i);
+        }
+        queue.offer("light-1", JobPriority.INTERACTIVE, "a1");
+        queue.offer("light-2", JobPriority.INTERACTIVE, "b1");
+        queue.offer("light-1", JobPriority.INTERACTIVE, "a2");
+
+        assertThat(queue.position("b1")).isEqualTo(3);
+        assertThat(queue.position("h4")).isEqualTo(7);
+        assertThat(takeAll(queue)).containsExactly("h1", "a1", "b1", "h2", "a2", "h3", "h4");
+        assertThat(queue.position("h4")).isZero();
+    }
+
+    @Test
+    void bulkWorkWaitsBehindInteractiveButIsNotStarved() throws Exception {
+        FairJobQueue<String> queue = new FairJobQueue<>(16, 0, 2);
+        for (int i = 1; i <= 3; i++) {
+            queue.offer("batch", JobPriority.BULK, "b" + i);
+        }
+        for (int i = 1; i <= 5; i++) {
+            queue.offer("user", JobPriority.INTERACTIVE, "i" + i);
+        }
+
+        List<String> order = List.of("i1", "i2", "b1", "i3", "i4", "b2", "i5", "b3");
+        for (int i = 0; i < order.size(); i++) {
+            assertThat(queue.position(order.get(i))).isEqualTo(i + 1);
+        }
+        assertThat(takeAll(queue)).isEqualTo(order);
+    }
+
+    @Test
+    void limitsWhatOneClientMayHaveWaiting() throws Exception {
+        FairJobQueue<String> queue = new FairJobQueue<>(3, 2, 4);
+
+        assertThat(queue.offer("heavy", JobPriority.INTERACTIVE, "h1")).isEqualTo(FairJobQueue.Offer.ACCEPTED);
+        assertThat(queue.offer("heavy", JobPriority.BULK, "h2")).isEqualTo(FairJobQueue.Offer.ACCEPTED);
+        assertThat(queue.offer("heavy", JobPriority.INTERACTIVE, "h3")).isEqualTo(FairJobQueue.Offer.CLIENT_LIMIT);
+        assertThat(queue.offer("light", JobPriority.INTERACTIVE, "l1")).isEqualTo(FairJobQueue.Offer.ACCEPTED);
+        assertThat(queue.offer("other", JobPriority.INTERACTIVE, "o1")).isEqualTo(FairJobQueue.Offer.QUEUE_FULL);
+
+        assertThat(queue.remove("h2")).isTrue();
+        assertThat(queue.remove("h2")).isFalse();
+        assertThat(queue.queuedBy("heavy")).isEqualTo(1);
+        assertThat(queue.offer("heavy", JobPriority.INTERACTIVE, "h3")).isEqualTo(FairJobQueue.Offer.ACCEPTED);
+        assertThat(takeAll(queue)).containsExactly("h1", "l1", "h3");
+        assertThat(queue.queuedBy("heavy")).isZero();
+    }
+
+    private static List<String> takeAll(FairJobQueue<String> queue) throws InterruptedException {
+        List<String> taken = new ArrayList<>();
+        while (queue.size() > 0) {
+            taken.add(queue.take());
+        }
+        return taken;
+    }
+}
@@ -0,0 +1,87 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadJob;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * One client floods the service with downloads, then a few other clients ask for one each. With
+ * a FIFO queue they would wait for the whole flood; with the fair queue each light download
+ * starts within a round of the clients waiting.
+ */
+class FairSchedulingTest {
+
+    private static final int WORKERS = 2;
+    private static final int FLOOD = 24;
+    private static final int LIGHT_CLIENTS = 3;
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void lightClientsWaitBoundedUnderAHeavyClientFlood() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(0.1).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(WORKERS);
+        properties.getExecutor().setQueueCapacity(FLOOD + LIGHT_CLIENTS);
+        properties.getExecutor().setClientQueueLimit(0);
+        fixture = new ServiceFixture(stub, properties);
+        YoutubeDownloadService service = fixture.service;
+
+        AtomicInteger heavyFinished = new AtomicInteger();
+        List<CompletableFuture<?>> heavy = new ArrayList<>();
+        for (int i = 0; i < FLOOD; i++) {
+            DownloadJob job = service.submit(request("heavy", i), "key:heavy");
+            heavy.add(job.result().whenComplete((response, error) -> heavyFinished.incrementAndGet()));
+        }
+        await().until(() -> fixture.executor.getActiveCount() == WORKERS);
+
+        List<DownloadJob> light = new ArrayList<>();
+        List<Integer> heavyFinishedBeforeLight = new ArrayList<>();
+        for (int i = 0; i < LIGHT_CLIENTS; i++) {
+            DownloadJob job = service.submit(request("light", i), "ip:10.0.0." + i);
+            light.add(job);
+            // o cliente leve entra na rodada logo atrás do pesado
+            assertThat(service.queuePosition(job.id())).isBetween(1, i + 2);
+        }
+        for (DownloadJob job : light) {
+            assertThat(job.result().get(30, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+            heavyFinishedBeforeLight.add(heavyFinished.get());
+        }
+
+        // cada download leve espera no máximo uma rodada: os jobs em execução mais um do pesado
+        assertThat(heavyFinishedBeforeLight).allMatch(finished -> finished <= WORKERS + LIGHT_CLIENTS + 1);
+        CompletableFuture.allOf(heavy.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        assertThat(heavyFinished.get()).isEqualTo(FLOOD);
+    }
+
+    private static YoutubeLinkRequest request(String client, int n) {
+        // IDs de 11 caracteres, diferentes entre si para não reaproveitar downloads em andamento
+        return new YoutubeLinkRequest("https://www.youtube.com/watch?v=" + String.format("%s%06d", client, n));
+    }
+}
@@ -0,0 +1,120 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.FileLease;
+import com.abreu.download_link.support.MutableClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class FileExpiryIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MutableClock clock = new MutableClock();
+    private FileLeases leases;
+    private FileExpiryIndex index;
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    void nothingIsTouchedBeforeTheDeadline() throws IOException {
+        index = createIndex(Duration.ofSeconds(120));
+        Path file = createFile("a.mp3");
+        index.track(file);
+
+        clock.advance(Duration.ofSeconds(119));
+
+        assertThat(index.purgeExpired()).isZero();
+        assertThat(index.isTracked(file)).isTrue();
+        assertThat(file).exists();
+    }
+
+    @Test
+    void expiredFilesAreDeletedOnTheIoThread() throws IOException {
+        index = createIndex(Duration.ofSeconds(120));
+        Path first = createFile("a.mp3");
+        Path second = createFile("b.mp3");
+        index.track(first);
+        clock.advance(Duration.ofSeconds(60));
+        index.track(second);
+
+        clock.advance(Duration.ofSeconds(61));
+        assertThat(index.purgeExpired()).isEqualTo(1);
+        await().until(() -> !Files.exists(first));
+        assertThat(second).exists();
+
+        clock.advance(Duration.ofSeconds(60));
+        assertThat(index.purgeExpired()).isEqualTo(1);
+        await().until(() -> !Files.exists(second));
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void releasedFileGetsAFreshIdlePeriod() throws IOException {
+        index = createIndex(Duration.ofSeconds(120));
+        Path file = createFile("a.mp3");
+        index.track(file);
+
+        clock.advance(Duration.ofSeconds(100));
+        index.release(file);
+        clock.advance(Duration.ofSeconds(30));
+
+        assertThat(index.purgeExpired()).isZero();
+        assertThat(file).exists();
+
+        clock.advance(Duration.ofSeconds(91));
+        assertThat(index.purgeExpired()).isEqualTo(1);
+        await().until(() -> !Files.exists(file));
+    }
+
+    @Test
+    void leasedFileIsKeptUntilTheLastTransferEndsAndItIdlesAgain() throws IOException {
+        index = createIndex(Duration.ofSeconds(120));
+        Path file = createFile("a.mp3");
+        index.track(file);
+        FileLease first = leases.acquire(file).orElseThrow();
+        FileLease second = leases.acquire(file).orElseThrow();
+
+        clock.advance(Duration.ofSeconds(300));
+        assertThat(index.purgeExpired()).isZero();
+
+        first.close();
+        clock.advance(Duration.ofSeconds(300));
+        assertThat(index.purgeExpired()).isZero();
+        assertThat(file).exists();
+
+        second.close();
+        clock.advance(Duration.ofSeconds(119));
+        assertThat(index.purgeExpired()).isZero();
+
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(index.purgeExpired()).isEqualTo(1);
+        await().until(() -> !Files.exists(file));
+        assertThat(leases.getActiveLeases()).isZero();
+    }
+
+    private FileExpiryIndex createIndex(Duration idleTtl) {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getCleanup().setIdleTtl(idleTtl);
+        properties.getCleanup().setLeaseGrace(Duration.ofSeconds(30));
+        leases = new FileLeases(properties, clock);
+        return new FileExpiryIndex(properties, leases, clock);
+    }
+
+    private Path createFile(String name) throws IOException {
+        return Files.writeString(tempDir.resolve(name), name);
+    }
+}
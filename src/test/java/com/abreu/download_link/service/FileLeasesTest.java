@@ -0,0 +1,67 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.FileLease;
+import com.abreu.download_link.support.MutableClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileLeasesTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final Path file = Path.of("/tmp/leases/a.mp3");
+    private FileLeases leases;
+
+    @BeforeEach
+    void setUp() {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getCleanup().setLeaseGrace(Duration.ofSeconds(30));
+        leases = new FileLeases(properties, clock);
+    }
+
+    @Test
+    void countsConcurrentReadersAndIgnoresDoubleRelease() {
+        FileLease first = leases.acquire(file).orElseThrow();
+        FileLease second = leases.acquire(file).orElseThrow();
+        assertThat(leases.getActiveLeases()).isEqualTo(2);
+        assertThat(leases.getLeasedFileCount()).isEqualTo(1);
+
+        first.close();
+        first.close();
+        assertThat(leases.getActiveLeases()).isEqualTo(1);
+        assertThat(leases.isLeased(file)).isTrue();
+
+        second.close();
+        assertThat(leases.isLeased(file)).isFalse();
+        assertThat(leases.getAcquiredTotal()).isEqualTo(2);
+    }
+
+    @Test
+    void fileCanOnlyBeRetiredOnceTheGracePeriodAfterTheLastLeaseIsOver() {
+        FileLease lease = leases.acquire(file).orElseThrow();
+        assertThat(leases.tryRetire(file)).isFalse();
+
+        lease.close();
+        clock.advance(Duration.ofSeconds(29));
+        assertThat(leases.tryRetire(file)).isFalse();
+
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(leases.tryRetire(file)).isTrue();
+    }
+
+    @Test
+    void retiredFileRefusesLeasesUntilForgotten() {
+        assertThat(leases.tryRetire(file)).isTrue();
+        assertThat(leases.acquire(file)).isEmpty();
+        assertThat(leases.tryRetire(file)).isFalse();
+
+        leases.forget(file);
+
+        assertThat(leases.acquire(file)).isPresent();
+    }
+}
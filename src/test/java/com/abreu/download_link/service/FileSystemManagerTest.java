@@ -0,0 +1,114 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.CacheKey;
+import com.abreu.download_link.domain.FileLease;
+import com.abreu.download_link.exceptions.InsufficientStorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSystemManagerTest {
+
+    // disco simulado: o espaço livre é o que o cache ainda não ocupa
+    private static final long DISK_SIZE = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    private FileLeases leases;
+    private ResultCache cache;
+    private FileExpiryIndex expiryIndex;
+    private FileSystemManager storage;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getCache().setDirectory(tempDir.resolve("cache").toString());
+        properties.getCache().setMaxSize(DataSize.ofBytes(DISK_SIZE));
+        properties.getCleanup().setLeaseGrace(Duration.ZERO);
+        properties.getStorage().setMinFreeSpace(DataSize.ofBytes(300));
+        properties.getStorage().setTargetFreeSpace(DataSize.ofBytes(500));
+        properties.getStorage().setExpectedSizeFactor(2.0);
+
+        leases = new FileLeases(properties);
+        cache = new ResultCache(properties, leases);
+        cache.init();
+        expiryIndex = new FileExpiryIndex(properties, leases);
+        storage = new FileSystemManager(properties, cache, expiryIndex, path -> DISK_SIZE - cache.getUsedBytes());
+        storage.createDirectoryWithPermissions(tempDir.resolve("downloads").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        expiryIndex.shutdown();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedResultsDownToTheTargetWatermark() throws Exception {
+        for (String id : new String[]{"aaaaaaaaaaa", "bbbbbbbbbbb", "ccccccccccc", "ddddddddddd", "eeeeeeeeeee"}) {
+            cache.put(key(id), file(id, 150), id + ".mp3");
+        }
+        cache.get(key("aaaaaaaaaaa"));
+        assertThat(storage.getFreeBytes()).isEqualTo(250);
+
+        storage.checkCapacity();
+
+        assertThat(storage.getFreeBytes()).isEqualTo(550);
+        assertThat(cache.get(key("aaaaaaaaaaa"))).isPresent();
+        assertThat(cache.get(key("bbbbbbbbbbb"))).isEmpty();
+        assertThat(cache.get(key("ccccccccccc"))).isEmpty();
+        assertThat(storage.getBytesInUse()).isEqualTo(450);
+    }
+
+    @Test
+    void refusesNewDownloadsWhenOnlyLeasedFilesAreLeft() throws Exception {
+        cache.put(key("aaaaaaaaaaa"), file("a", 400), "a.mp3");
+        cache.put(key("bbbbbbbbbbb"), file("b", 400), "b.mp3");
+        FileLease first = leases.acquire(cache.getDirectory().resolve("aaaaaaaaaaa-mp3-0.mp3")).orElseThrow();
+        FileLease second = leases.acquire(cache.getDirectory().resolve("bbbbbbbbbbb-mp3-0.mp3")).orElseThrow();
+
+        assertThatThrownBy(storage::checkCapacity)
+                .isInstanceOf(InsufficientStorageException.class)
+                .hasMessageContaining("200 bytes free");
+
+        first.close();
+        second.close();
+        storage.checkCapacity();
+        assertThat(storage.getFreeBytes()).isGreaterThanOrEqualTo(500);
+    }
+
+    @Test
+    void reservationIsSizedFromTheSourceAndReleasedOnClose() {
+        FileSystemManager.Reservation small = storage.reserve();
+        FileSystemManager.Reservation large = storage.reserve();
+
+        assertThat(small.expect(200)).isTrue();
+        assertThat(storage.getReservedBytes()).isEqualTo(400);
+        assertThat(storage.getFreeBytes()).isEqualTo(600);
+
+        assertThat(large.expect(200)).isFalse();
+        assertThat(storage.getReservedBytes()).isEqualTo(400);
+
+        small.close();
+        small.close();
+        assertThat(storage.getReservedBytes()).isZero();
+    }
+
+    private Path file(String name, int size) throws Exception {
+        return Files.write(tempDir.resolve(name + ".mp3"), new byte[size]);
+    }
+
+    private static CacheKey key(String videoId) {
+        return new CacheKey(videoId, "mp3", "0");
+    }
+}
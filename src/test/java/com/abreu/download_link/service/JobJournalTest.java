@@ -0,0 +1,159 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadProgress;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.JournalRecord;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.support.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class JobJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void replayRestoresTheLastStateOfEveryJob() throws Exception {
+        JobJournal journal = open();
+        journal.recordDownloadsDir(tempDir.resolve("downloads"));
+        journal.recordSubmitted("job-a", "https://youtu.be/aaaaaaaaaaa", "aaaaaaaaaaa", AudioFormat.OPUS);
+        journal.recordSubmitted("job-b", "https://youtu.be/bbbbbbbbbbb", "bbbbbbbbbbb", AudioFormat.MP3);
+        journal.recordSubmitted("job-c", "https://youtu.be/ccccccccccc", "ccccccccccc", AudioFormat.MP3);
+        journal.onStatus("job-a", new DownloadStatus(Status.IN_PROGRESS, "Download in progress"));
+        journal.onStatus("job-a", new DownloadStatus(Status.COMPLETED, "done", "aaaaaaaaaaa-opus-160K.opus"));
+        journal.onStatus("job-b", new DownloadStatus(Status.IN_PROGRESS, "Download in progress"));
+        journal.recordRemoved("job-c");
+        journal.close();
+
+        JobJournal reopened = open();
+
+        assertThat(reopened.recoveredJobs())
+                .extracting(JournalRecord::jobId, JournalRecord::status, JournalRecord::fileName)
+                .containsExactly(
+                        tuple("job-a", Status.COMPLETED, "aaaaaaaaaaa-opus-160K.opus"),
+                        tuple("job-b", Status.IN_PROGRESS, null));
+        assertThat(reopened.recoveredJobs().get(0).format()).isEqualTo(AudioFormat.OPUS);
+        assertThat(reopened.previousDownloadsDir()).contains(tempDir.resolve("downloads"));
+        reopened.close();
+    }
+
+    @Test
+    void progressUpdatesAndUnknownJobsAreNotWritten() throws Exception {
+        JobJournal journal = open();
+        journal.recordSubmitted("job-a", "https://youtu.be/aaaaaaaaaaa", "aaaaaaaaaaa", AudioFormat.MP3);
+        journal.sync();
+        long before = Files.size(journalFile());
+
+        journal.onStatus("job-a", new DownloadStatus(Status.QUEUED, "Waiting for a free worker"));
+        journal.onStatus("job-a", new DownloadStatus(Status.IN_PROGRESS, null, null,
+                new DownloadProgress(DownloadPhase.DOWNLOADING, 42, 1, 2, 3, 4)));
+        journal.onStatus("someone-else", new DownloadStatus(Status.FAILED, "boom"));
+        journal.sync();
+
+        assertThat(Files.size(journalFile())).isEqualTo(before);
+        journal.close();
+    }
+
+    @Test
+    void statusUpdatesLeaveTheWritingToTheJournalThread() throws Exception {
+        DownloadProperties properties = properties();
+        properties.getJournal().setSyncInterval(Duration.ofHours(1));
+        JobJournal journal = open(properties);
+        journal.recordSubmitted("job-a", "https://youtu.be/aaaaaaaaaaa", "aaaaaaaaaaa", AudioFormat.MP3);
+        journal.onStatus("job-a", new DownloadStatus(Status.COMPLETED, "done", "aaaaaaaaaaa-mp3-0.mp3"));
+
+        // nada chega ao disco na thread de quem mudou o status
+        assertThat(Files.size(journalFile())).isZero();
+        journal.sync();
+        assertThat(Files.readAllLines(journalFile())).hasSize(2);
+        journal.close();
+    }
+
+    @Test
+    void remembersAtMostAsManyJobsAsTheStatusStore() throws Exception {
+        DownloadProperties properties = properties();
+        properties.getStatus().setMaxEntries(3);
+        JobJournal journal = open(properties);
+        journal.recordSubmitted("running", "https://youtu.be/aaaaaaaaaaa", "aaaaaaaaaaa", AudioFormat.MP3);
+        for (int i = 0; i < 5; i++) {
+            journal.recordSubmitted("job-" + i, "https://youtu.be/bbbbbbbbbbb", "bbbbbbbbbbb", AudioFormat.MP3);
+            journal.onStatus("job-" + i, new DownloadStatus(Status.FAILED, "boom"));
+        }
+
+        assertThat(journal.size()).isEqualTo(3);
+        journal.close();
+        assertThat(open(properties).recoveredJobs()).extracting(JournalRecord::jobId)
+                .containsExactly("running", "job-3", "job-4");
+    }
+
+    @Test
+    void compactionKeepsOneRecordPerJobAndForgetsExpiredOnes() throws Exception {
+        JobJournal journal = open();
+        for (int i = 0; i < 50; i++) {
+            journal.recordSubmitted("job-" + i, "https://youtu.be/aaaaaaaaaaa", "aaaaaaaaaaa", AudioFormat.MP3);
+            journal.onStatus("job-" + i, new DownloadStatus(Status.STARTING, "Download starting"));
+            journal.onStatus("job-" + i, new DownloadStatus(Status.FAILED, "boom"));
+        }
+        journal.recordSubmitted("live", "https://youtu.be/bbbbbbbbbbb", "bbbbbbbbbbb", AudioFormat.MP3);
+        clock.advance(Duration.ofMinutes(31));
+        journal.recordSubmitted("recent", "https://youtu.be/ccccccccccc", "ccccccccccc", AudioFormat.MP3);
+        journal.onStatus("recent", new DownloadStatus(Status.COMPLETED, "done", "ccccccccccc-mp3-0.mp3"));
+
+        journal.compact();
+
+        assertThat(journal.size()).isEqualTo(2);
+        assertThat(Files.readAllLines(journalFile())).hasSize(2);
+        journal.close();
+        assertThat(open().recoveredJobs()).extracting(JournalRecord::jobId).containsExactly("live", "recent");
+    }
+
+    @Test
+    void recordTornByACrashIsSkipped() throws Exception {
+        JobJournal journal = open();
+        journal.recordSubmitted("job-a", "https://youtu.be/aaaaaaaaaaa", "aaaaaaaaaaa", AudioFormat.MP3);
+        journal.close();
+        Files.write(journalFile(), "{\"type\":\"SUBMITTED\",\"jobId\":\"job-b\",\"u".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        JobJournal reopened = open();
+        reopened.recordSubmitted("job-c", "https://youtu.be/ccccccccccc", "ccccccccccc", AudioFormat.MP3);
+        reopened.close();
+
+        assertThat(open().recoveredJobs()).extracting(JournalRecord::jobId).containsExactly("job-a", "job-c");
+    }
+
+    private JobJournal open() throws Exception {
+        return open(properties());
+    }
+
+    private JobJournal open(DownloadProperties properties) throws Exception {
+        JobJournal journal = new JobJournal(properties, clock);
+        journal.init();
+        return journal;
+    }
+
+    private DownloadProperties properties() {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getJournal().setDirectory(tempDir.resolve("journal").toString());
+        return properties;
+    }
+
+    private Path journalFile() {
+        return tempDir.resolve("journal").resolve(JobJournal.JOURNAL_FILE);
+    }
+}
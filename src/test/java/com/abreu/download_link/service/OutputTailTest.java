@@ -0,0 +1,39 @@
+package com.abreu.download_link.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputTailTest {
+
+    @Test
+    void keepsEverythingBelowCapacity() {
+        OutputTail tail = new OutputTail(3);
+        tail.add("a");
+        tail.add("b");
+
+        assertThat(tail.lines()).containsExactly("a", "b");
+        assertThat(tail.dropped()).isZero();
+        assertThat(tail.toString()).isEqualTo("a\nb");
+    }
+
+    @Test
+    void keepsOnlyTheLastLinesInOrder() {
+        OutputTail tail = new OutputTail(3);
+        for (int i = 1; i <= 10_000; i++) {
+            tail.add("line " + i);
+        }
+
+        assertThat(tail.lines()).containsExactly("line 9998", "line 9999", "line 10000");
+        assertThat(tail.dropped()).isEqualTo(9_997);
+        assertThat(tail.toString()).startsWith("... (9997 earlier lines omitted)\nline 9998");
+    }
+
+    @Test
+    void truncatesLongLines() {
+        OutputTail tail = new OutputTail(1);
+        tail.add("x".repeat(OutputTail.MAX_LINE_LENGTH * 4));
+
+        assertThat(tail.lines().get(0)).hasSize(OutputTail.MAX_LINE_LENGTH + 3).endsWith("...");
+    }
+}
@@ -0,0 +1,80 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.domain.DownloadProgress;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProgressParserTest {
+
+    private final AtomicLong nanos = new AtomicLong(TimeUnit.SECONDS.toNanos(10));
+    private final ProgressParser parser = new ProgressParser(nanos::get);
+
+    @Test
+    void parsesTemplateLines() {
+        assertThat(parser.accept("[progress] 2202009 5347737 NA 1258291.5 3")).isTrue();
+
+        DownloadProgress progress = parser.snapshot();
+        assertThat(progress.phase()).isEqualTo(DownloadPhase.DOWNLOADING);
+        assertThat(progress.downloadedBytes()).isEqualTo(2202009);
+        assertThat(progress.totalBytes()).isEqualTo(5347737);
+        assertThat(progress.speedBytesPerSecond()).isEqualTo(1258291);
+        assertThat(progress.etaSeconds()).isEqualTo(3);
+        assertThat(progress.percent()).isEqualTo(41.2);
+    }
+
+    @Test
+    void fallsBackToEstimatedTotal() {
+        parser.accept("[progress] 500 NA 1000.0 NA NA");
+
+        DownloadProgress progress = parser.snapshot();
+        assertThat(progress.totalBytes()).isEqualTo(1000);
+        assertThat(progress.percent()).isEqualTo(50.0);
+        assertThat(progress.speedBytesPerSecond()).isEqualTo(-1);
+        assertThat(progress.etaSeconds()).isEqualTo(-1);
+    }
+
+    @Test
+    void parsesHumanReadableLines() {
+        assertThat(parser.accept("[download]  42.3% of ~  5.10MiB at    1.20MiB/s ETA 01:03")).isTrue();
+
+        DownloadProgress progress = parser.snapshot();
+        assertThat(progress.percent()).isEqualTo(42.3);
+        assertThat(progress.totalBytes()).isEqualTo((long) (5.10 * 1024 * 1024));
+        assertThat(progress.speedBytesPerSecond()).isEqualTo((long) (1.20 * 1024 * 1024));
+        assertThat(progress.etaSeconds()).isEqualTo(63);
+    }
+
+    @Test
+    void detectsAudioExtractionPhase() {
+        parser.accept("[progress] 1000 1000 NA 10 0");
+        assertThat(parser.accept("[ExtractAudio] Destination: /tmp/x.mp3")).isTrue();
+
+        assertThat(parser.snapshot().phase()).isEqualTo(DownloadPhase.EXTRACTING_AUDIO);
+        assertThat(parser.snapshot().downloadedBytes()).isEqualTo(1000);
+    }
+
+    @Test
+    void ignoresLinesWithoutProgress() {
+        assertThat(parser.accept("[youtube] Extracting URL: https://youtu.be/dQw4w9WgXcQ")).isFalse();
+        assertThat(parser.accept("[download] Destination: /tmp/100% real.webm")).isFalse();
+        assertThat(parser.accept("[progress] NA NA NA NA NA")).isFalse();
+    }
+
+    @Test
+    void throttlesSmallOrFrequentUpdates() {
+        assertThat(parser.accept("[progress] 100 10000 NA 1 1")).isTrue();
+        assertThat(parser.accept("[progress] 150 10000 NA 1 1")).isFalse();
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(parser.accept("[progress] 5000 10000 NA 1 1")).isFalse();
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(parser.accept("[progress] 5100 10000 NA 1 1")).isTrue();
+        assertThat(parser.accept("[progress] 10000 10000 NA 1 0")).isTrue();
+    }
+}
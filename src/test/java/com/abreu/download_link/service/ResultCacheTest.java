@@ -0,0 +1,172 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.CacheEntry;
+import com.abreu.download_link.domain.CacheKey;
+import com.abreu.download_link.domain.FileLease;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesOverBudget() throws Exception {
+        ResultCache cache = createCache(DataSize.ofBytes(250));
+
+        cache.put(key("aaaaaaaaaaa"), file("a.mp3", 100), "a.mp3");
+        cache.put(key("bbbbbbbbbbb"), file("b.mp3", 100), "b.mp3");
+        cache.get(key("aaaaaaaaaaa"));
+        cache.put(key("ccccccccccc"), file("c.mp3", 100), "c.mp3");
+
+        assertThat(cache.get(key("aaaaaaaaaaa"))).isPresent();
+        assertThat(cache.get(key("bbbbbbbbbbb"))).isEmpty();
+        assertThat(cache.get(key("ccccccccccc"))).isPresent();
+        assertThat(cache.getUsedBytes()).isEqualTo(200);
+        assertThat(cacheDir().resolve("bbbbbbbbbbb-mp3-0.mp3")).doesNotExist();
+        assertThat(cacheDir().resolve("bbbbbbbbbbb-mp3-0.mp3" + ResultCache.NAME_SUFFIX)).doesNotExist();
+    }
+
+    @Test
+    void leasedEntriesAreNotEvictedUntilReleased() throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getCache().setDirectory(cacheDir().toString());
+        properties.getCache().setMaxSize(DataSize.ofBytes(250));
+        properties.getCleanup().setLeaseGrace(Duration.ZERO);
+        FileLeases leases = new FileLeases(properties);
+        ResultCache cache = new ResultCache(properties, leases);
+        cache.init();
+
+        CacheEntry first = cache.put(key("aaaaaaaaaaa"), file("a.mp3", 100), "a.mp3");
+        cache.put(key("bbbbbbbbbbb"), file("b.mp3", 100), "b.mp3");
+        FileLease lease = leases.acquire(cache.resolve(first)).orElseThrow();
+
+        cache.put(key("ccccccccccc"), file("c.mp3", 100), "c.mp3");
+
+        assertThat(cache.resolve(first)).exists();
+        assertThat(cache.get(key("bbbbbbbbbbb"))).isEmpty();
+
+        lease.close();
+        cache.put(key("ddddddddddd"), file("d.mp3", 100), "d.mp3");
+
+        assertThat(cache.resolve(first)).doesNotExist();
+        assertThat(cache.getUsedBytes()).isEqualTo(200);
+    }
+
+    @Test
+    void survivesRestart() throws Exception {
+        ResultCache cache = createCache(DataSize.ofMegabytes(1));
+        CacheEntry entry = cache.put(key("aaaaaaaaaaa"), file("Some_Title.mp3", 42), "Some_Title.mp3");
+        cache.shutdown();
+
+        ResultCache restarted = createCache(DataSize.ofMegabytes(1));
+
+        assertThat(restarted.findByStoredName(entry.storedName()))
+                .hasValueSatisfying(e -> assertThat(e.displayName()).isEqualTo("Some_Title.mp3"));
+        assertThat(restarted.getUsedBytes()).isEqualTo(42);
+    }
+
+    @Test
+    void dropsIndexEntriesWithoutFilesAndOrphanFiles() throws Exception {
+        ResultCache cache = createCache(DataSize.ofMegabytes(1));
+        CacheEntry entry = cache.put(key("aaaaaaaaaaa"), file("a.mp3", 10), "a.mp3");
+        cache.shutdown();
+        Files.delete(cache.resolve(entry));
+        Path orphan = Files.writeString(cacheDir().resolve("leftover.part"), "x");
+
+        ResultCache restarted = createCache(DataSize.ofMegabytes(1));
+
+        assertThat(restarted.size()).isZero();
+        assertThat(orphan).doesNotExist();
+    }
+
+    @Test
+    void concurrentPutsLeaveAnIndexWithEveryEntry() throws Exception {
+        ResultCache cache = createCache(DataSize.ofMegabytes(1));
+        List<CompletableFuture<CacheEntry>> puts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String videoId = "video" + String.format("%06d", i);
+            Path source = file(videoId + ".mp3", 10);
+            puts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return cache.put(key(videoId), source, videoId + ".mp3");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        List<?> index = new ObjectMapper().readValue(cacheDir().resolve(ResultCache.INDEX_FILE).toFile(), List.class);
+        assertThat(index).hasSize(8);
+        assertThat(cacheDir().resolve(ResultCache.INDEX_FILE + ".tmp")).doesNotExist();
+    }
+
+    @Test
+    void unreadableIndexKeepsTheCachedFiles() throws Exception {
+        ResultCache cache = createCache(DataSize.ofMegabytes(1));
+        CacheEntry entry = cache.put(key("aaaaaaaaaaa"), file("a.mp3", 10), "a.mp3");
+        cache.shutdown();
+        Files.writeString(cacheDir().resolve(ResultCache.INDEX_FILE), "[{\"key\": ");
+
+        ResultCache restarted = createCache(DataSize.ofMegabytes(1));
+
+        assertThat(restarted.resolve(entry)).exists();
+        assertThat(restarted.get(key("aaaaaaaaaaa")))
+                .hasValueSatisfying(e -> assertThat(e.size()).isEqualTo(10));
+        assertThat(restarted.getUsedBytes()).isEqualTo(10);
+    }
+
+    @Test
+    void filesTakenBackWithoutTheIndexKeepTheirDisplayName() throws Exception {
+        ResultCache cache = createCache(DataSize.ofMegabytes(1));
+        cache.put(key("aaaaaaaaaaa"), file("titled.mp3", 10), "Never Gonna Give You Up.mp3");
+        CacheEntry unnamed = cache.put(key("bbbbbbbbbbb"), file("other.mp3", 10), "Other Song.mp3");
+        cache.shutdown();
+        Files.delete(cacheDir().resolve(ResultCache.INDEX_FILE));
+        Files.delete(cacheDir().resolve(unnamed.storedName() + ResultCache.NAME_SUFFIX));
+
+        ResultCache restarted = createCache(DataSize.ofMegabytes(1));
+
+        assertThat(restarted.get(key("aaaaaaaaaaa")))
+                .hasValueSatisfying(e -> assertThat(e.displayName()).isEqualTo("Never Gonna Give You Up.mp3"));
+        assertThat(restarted.get(key("bbbbbbbbbbb")))
+                .hasValueSatisfying(e -> assertThat(e.displayName()).isEqualTo("bbbbbbbbbbb.mp3"));
+    }
+
+    private ResultCache createCache(DataSize maxSize) throws Exception {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getCache().setDirectory(cacheDir().toString());
+        properties.getCache().setMaxSize(maxSize);
+        properties.getCleanup().setLeaseGrace(Duration.ZERO);
+        ResultCache cache = new ResultCache(properties, new FileLeases(properties));
+        cache.init();
+        return cache;
+    }
+
+    private Path cacheDir() {
+        return tempDir.resolve("cache");
+    }
+
+    private Path file(String name, int size) throws Exception {
+        return Files.write(tempDir.resolve(name), new byte[size]);
+    }
+
+    private static CacheKey key(String videoId) {
+        return new CacheKey(videoId, "mp3", "0");
+    }
+}
@@ -0,0 +1,135 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.support.InMemoryKeyValueClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatusStoreTest {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void finishedJobsExpireAfterTtl() {
+        InMemoryStatusStore store = inMemoryStore(100);
+        store.register("done", "video-a", status(Status.QUEUED));
+        store.register("running", "video-b", status(Status.QUEUED));
+        store.update("done", status(Status.COMPLETED));
+        store.update("running", status(Status.IN_PROGRESS));
+
+        advance(TTL.plusSeconds(1));
+
+        assertThat(store.get("done")).isNull();
+        assertThat(store.latestJob("video-a")).isNull();
+        assertThat(store.get("running").status()).isEqualTo(Status.IN_PROGRESS);
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void capEvictsOldestFinishedJobsFirst() {
+        InMemoryStatusStore store = inMemoryStore(3);
+        store.register("active", "video-active", status(Status.IN_PROGRESS));
+        for (int i = 0; i < 5; i++) {
+            store.register("job-" + i, "video-" + i, status(Status.QUEUED));
+            store.update("job-" + i, status(Status.FAILED));
+        }
+
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.evictions()).isEqualTo(3);
+        assertThat(store.get("active")).isNotNull();
+        assertThat(store.get("job-0")).isNull();
+        assertThat(store.get("job-4")).isNotNull();
+    }
+
+    @Test
+    void lateProgressDoesNotReopenAFinishedJob() {
+        DownloadStatusManager manager = new DownloadStatusManager(inMemoryStore(10), List.of());
+        manager.registerJob("job", "video");
+
+        manager.updateStatus("job", Status.CANCELLED, "Cancelled by the client");
+        manager.updateStatus("job", Status.IN_PROGRESS, "Downloading 40%");
+
+        assertThat(manager.getStatus("job").status()).isEqualTo(Status.CANCELLED);
+    }
+
+    @Test
+    void theFirstTerminalStatusOfAJobIsFinal() {
+        DownloadStatusManager manager = new DownloadStatusManager(inMemoryStore(10), List.of());
+        manager.registerJob("completed", "video-a");
+        manager.registerJob("cancelled", "video-b");
+
+        assertThat(manager.complete("completed", "Download completed successfully", "a.mp3")).isTrue();
+        assertThat(manager.updateStatus("completed", Status.CANCELLED, "Cancelled by the client")).isFalse();
+        assertThat(manager.updateStatus("cancelled", Status.CANCELLED, "Cancelled by the client")).isTrue();
+        assertThat(manager.complete("cancelled", "Download completed successfully", "b.mp3")).isFalse();
+
+        assertThat(manager.getStatus("completed").status()).isEqualTo(Status.COMPLETED);
+        assertThat(manager.getStatus("cancelled").status()).isEqualTo(Status.CANCELLED);
+        assertThat(manager.getStatus("cancelled").fileName()).isNull();
+    }
+
+    @Test
+    void missDoesNotAllocateNewStatus() {
+        DownloadStatusManager manager = new DownloadStatusManager(inMemoryStore(10), List.of());
+
+        assertThat(manager.getStatus("unknown")).isSameAs(manager.getStatus("other"));
+        assertThat(manager.getStatus("unknown").status()).isEqualTo(Status.NOT_FOUND);
+    }
+
+    @Test
+    void externalStoreSharesStateAndExpiresFinishedJobs() {
+        InMemoryKeyValueClient backend = new InMemoryKeyValueClient();
+        DownloadStatusManager nodeA = new DownloadStatusManager(new ExternalStatusStore(backend, properties(10)), List.of());
+        DownloadStatusManager nodeB = new DownloadStatusManager(new ExternalStatusStore(backend, properties(10)), List.of());
+
+        nodeA.registerJob("job-1", "dQw4w9WgXcQ");
+        nodeA.complete("job-1", "done", "dQw4w9WgXcQ-mp3-0.mp3");
+
+        assertThat(nodeB.getStatus("job-1").fileName()).isEqualTo("dQw4w9WgXcQ-mp3-0.mp3");
+        assertThat(nodeB.getStatusByKey("dQw4w9WgXcQ").status()).isEqualTo(Status.COMPLETED);
+
+        backend.advance(TTL.plusSeconds(1));
+
+        assertThat(nodeB.findStatus("job-1")).isEmpty();
+        assertThat(nodeB.getStatusByKey("dQw4w9WgXcQ").status()).isEqualTo(Status.NOT_FOUND);
+    }
+
+    @Test
+    void externalStoreIgnoresUpdatesForUnknownJobs() {
+        InMemoryKeyValueClient backend = new InMemoryKeyValueClient();
+        ExternalStatusStore store = new ExternalStatusStore(backend, properties(10));
+
+        store.update("ghost", status(Status.COMPLETED));
+
+        assertThat(store.get("ghost")).isNull();
+    }
+
+    private InMemoryStatusStore inMemoryStore(int maxEntries) {
+        return new InMemoryStatusStore(properties(maxEntries), nanos::get);
+    }
+
+    private static DownloadProperties properties(int maxEntries) {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getStatus().setMaxEntries(maxEntries);
+        properties.getStatus().setTerminalTtl(TTL);
+        return properties;
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    private static DownloadStatus status(Status status) {
+        return new DownloadStatus(status, "");
+    }
+}
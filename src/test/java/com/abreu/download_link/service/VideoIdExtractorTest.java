@@ -0,0 +1,47 @@
+package com.abreu.download_link.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VideoIdExtractorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+            "http://youtube.com/watch?v=dQw4w9WgXcQ",
+            "youtube.com/watch?v=dQw4w9WgXcQ",
+            "www.youtube.com/watch?v=dQw4w9WgXcQ&t=10",
+            "https://www.youtube.com/watch?feature=share&v=dQw4w9WgXcQ",
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ&list=PL123",
+            "https://m.youtube.com/watch?v=dQw4w9WgXcQ",
+            "https://music.youtube.com/watch?v=dQw4w9WgXcQ",
+            "https://youtu.be/dQw4w9WgXcQ",
+            "https://youtu.be/dQw4w9WgXcQ?si=abc",
+            "https://www.youtube.com/shorts/dQw4w9WgXcQ",
+            "https://www.youtube.com/embed/dQw4w9WgXcQ",
+            "https://www.youtube.com/live/dQw4w9WgXcQ?feature=share",
+            "HTTPS://WWW.YOUTUBE.COM/watch?v=dQw4w9WgXcQ",
+            "  https://youtu.be/dQw4w9WgXcQ  "
+    })
+    void extractsVideoIdFromSupportedShapes(String url) {
+        assertThat(VideoIdExtractor.videoId(url)).isEqualTo("dQw4w9WgXcQ");
+        assertThat(VideoIdExtractor.canonicalUrl(url)).isEqualTo("https://www.youtube.com/watch?v=dQw4w9WgXcQ");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "https://vimeo.com/watch?v=dQw4w9WgXcQ",
+            "https://www.youtube.com/watch?v=short",
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQX",
+            "https://www.youtube.com/watch?vv=dQw4w9WgXcQ",
+            "https://www.youtube.com/playlist?list=PL590L5WQmH8fJ54F369BLDSqIwcs-TCfs",
+            "https://www.youtube.com/@channel"
+    })
+    void returnsNullWhenUrlIsNotASingleVideo(String url) {
+        assertThat(VideoIdExtractor.videoId(url)).isNull();
+        assertThat(VideoIdExtractor.canonicalKey(url)).isEqualTo(url);
+    }
+}
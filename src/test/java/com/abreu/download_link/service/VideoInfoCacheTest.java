@@ -0,0 +1,60 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.VideoInfo;
+import com.abreu.download_link.support.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VideoInfoCacheTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void entriesExpireAfterTheTtl() {
+        VideoInfoCache cache = cache(new DownloadProperties());
+        cache.put("aaaaaaaaaaa", info("aaaaaaaaaaa"), "{}");
+
+        clock.advance(Duration.ofMinutes(9));
+        assertThat(cache.get("aaaaaaaaaaa")).isPresent();
+
+        clock.advance(Duration.ofMinutes(2));
+        assertThat(cache.get("aaaaaaaaaaa")).isEmpty();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getUsedBytes()).isZero();
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesGoFirstWhenOverBudget() {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getInfo().setMaxEntries(2);
+        properties.getInfo().setMaxSize(DataSize.ofBytes(100));
+        VideoInfoCache cache = cache(properties);
+
+        cache.put("aaaaaaaaaaa", info("aaaaaaaaaaa"), "a".repeat(30));
+        cache.put("bbbbbbbbbbb", info("bbbbbbbbbbb"), "b".repeat(30));
+        cache.get("aaaaaaaaaaa");
+        cache.put("ccccccccccc", info("ccccccccccc"), "c".repeat(30));
+
+        assertThat(cache.get("bbbbbbbbbbb")).isEmpty();
+        assertThat(cache.get("aaaaaaaaaaa")).isPresent();
+
+        cache.put("ddddddddddd", info("ddddddddddd"), "d".repeat(60));
+
+        assertThat(cache.get("ccccccccccc")).isEmpty();
+        assertThat(cache.get("aaaaaaaaaaa")).isPresent();
+        assertThat(cache.getUsedBytes()).isEqualTo(90);
+    }
+
+    private VideoInfoCache cache(DownloadProperties properties) {
+        return new VideoInfoCache(properties, clock);
+    }
+
+    private static VideoInfo info(String videoId) {
+        return new VideoInfo(videoId, "title", "uploader", 60L, null, 1000L);
+    }
+}
@@ -0,0 +1,99 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadJob;
+import com.abreu.download_link.domain.VideoInfo;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.YoutubeResponse;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.exceptions.DownloadFailedException;
+import com.abreu.download_link.exceptions.InvalidYoutubeUrlException;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VideoInfoServiceTest {
+
+    private static final String URL = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void infoIsReadOnceAndReusedByTheDownload() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        fixture = new ServiceFixture(stub, new DownloadProperties());
+
+        VideoInfo info = fixture.videoInfo.getInfo(URL);
+        assertThat(fixture.videoInfo.getInfo("https://youtu.be/dQw4w9WgXcQ")).isEqualTo(info);
+        YoutubeResponse response = fixture.service.submit(new YoutubeLinkRequest(URL)).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(info.title()).isEqualTo("Stub video dQw4w9WgXcQ");
+        assertThat(info.uploader()).isEqualTo("Stub Channel");
+        assertThat(info.estimatedSizeBytes()).isEqualTo(1048576);
+        assertThat(response.status()).isEqualTo(Status.COMPLETED);
+        assertThat(stub.infoRequests()).containsExactly("dQw4w9WgXcQ");
+        assertThat(stub.loadedInfo()).containsExactly("dQw4w9WgXcQ");
+        assertThat(fixture.registry.get("downloader.info.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentLookupsShareOneYtDlpRun() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(0.5).build();
+        fixture = new ServiceFixture(stub, new DownloadProperties());
+
+        List<CompletableFuture<VideoInfo>> lookups = List.of(
+                CompletableFuture.supplyAsync(() -> fixture.videoInfo.getInfo(URL)),
+                CompletableFuture.supplyAsync(() -> fixture.videoInfo.getInfo(URL)),
+                CompletableFuture.supplyAsync(() -> fixture.videoInfo.getInfo(URL)));
+
+        for (CompletableFuture<VideoInfo> lookup : lookups) {
+            assertThat(lookup.get(10, TimeUnit.SECONDS).videoId()).isEqualTo("dQw4w9WgXcQ");
+        }
+        assertThat(stub.infoRequests()).hasSize(1);
+    }
+
+    @Test
+    void downloadIsRefusedBeforeFetchingWhenTheEstimatedSizeDoesNotFit() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).infoSize(1L << 50).build();
+        fixture = new ServiceFixture(stub, new DownloadProperties());
+        fixture.videoInfo.getInfo(URL);
+
+        DownloadJob job = fixture.service.submit(new YoutubeLinkRequest(URL));
+
+        assertThatThrownBy(() -> job.result().get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(DownloadFailedException.class)
+                .hasMessageContaining("Not enough disk space");
+        assertThat(stub.invocations()).isZero();
+        assertThat(fixture.fileSystemManager.getReservedBytes()).isZero();
+    }
+
+    @Test
+    void urlsThatAreNotASingleVideoAreRejected() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        fixture = new ServiceFixture(stub, new DownloadProperties());
+
+        assertThatThrownBy(() -> fixture.videoInfo.getInfo("https://www.youtube.com/playlist?list=PLstub"))
+                .isInstanceOf(InvalidYoutubeUrlException.class);
+        assertThat(stub.infoRequests()).isEmpty();
+    }
+}
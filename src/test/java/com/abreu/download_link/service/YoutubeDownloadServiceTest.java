@@ -0,0 +1,591 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadJob;
+import com.abreu.download_link.domain.DownloadStatus;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.YoutubeResponse;
+import com.abreu.download_link.domain.enums.AudioFormat;
+import com.abreu.download_link.domain.enums.DownloadPhase;
+import com.abreu.download_link.domain.enums.JobPriority;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.exceptions.DownloadFailedException;
+import com.abreu.download_link.exceptions.DownloadRejectedException;
+import com.abreu.download_link.exceptions.InsufficientStorageException;
+import com.abreu.download_link.exceptions.JobStateConflictException;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class YoutubeDownloadServiceTest {
+
+    private static final String URL = "https://www.youtube.com/watch?v=dQw4w9WgXcQ";
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void downloadRunsYtDlpExactlyOnce() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        YoutubeResponse response = service.submit(new YoutubeLinkRequest(URL)).result().get();
+
+        assertThat(response.status()).isEqualTo(Status.COMPLETED);
+        assertThat(Paths.get(response.filePath())).exists().hasFileName("dQw4w9WgXcQ-mp3-0.mp3");
+        assertThat(stub.invocations()).isEqualTo(1);
+    }
+
+    @Test
+    void reportedPathComesFromPrintedFilepath() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+        YoutubeResponse response = job.result().get();
+
+        assertThat(Files.readString(Paths.get(response.filePath()))).contains("dQw4w9WgXcQ");
+        assertThat(service.getJobStatus(job.id()).fileName()).isEqualTo("dQw4w9WgXcQ-mp3-0.mp3");
+        assertThat(service.getFile("dQw4w9WgXcQ-mp3-0.mp3").displayName()).isEqualTo("stub_dQw4w9WgXcQ.mp3");
+        assertThat(service.getStatus(URL).status()).isEqualTo(Status.COMPLETED);
+    }
+
+    @Test
+    void failedDownloadMarksJobAsFailed() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).exitCode(1).build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+        job.result().handle((response, error) -> null).get(10, TimeUnit.SECONDS);
+
+        assertThat(service.getJobStatus(job.id()).status()).isEqualTo(Status.FAILED);
+    }
+
+    @Test
+    void rejectsDownloadsBeyondWorkersAndQueue() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(2).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getExecutor().setQueueCapacity(1);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        DownloadJob running = service.submit(request("aaaaaaaaaaa"));
+        DownloadJob queued = service.submit(request("bbbbbbbbbbb"));
+
+        assertThatThrownBy(() -> service.submit(request("ccccccccccc")))
+                .isInstanceOfSatisfying(DownloadRejectedException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isPositive());
+        assertThat(service.getStatus(request("ccccccccccc").url()).status()).isEqualTo(Status.NOT_FOUND);
+
+        assertThat(running.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        assertThat(queued.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        assertThat(stub.invocations()).isEqualTo(2);
+    }
+
+    @Test
+    void retryAfterGrowsWithQueueDepth() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(2).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getExecutor().setQueueCapacity(2);
+        properties.getExecutor().setDefaultJobDuration(Duration.ofSeconds(10));
+        YoutubeDownloadService service = createService(stub, properties);
+
+        service.submit(request("aaaaaaaaaaa"));
+        long emptyQueueEstimate = fixture.executor.estimateRetryAfterSeconds();
+        service.submit(request("bbbbbbbbbbb"));
+        service.submit(request("ccccccccccc"));
+
+        assertThatThrownBy(() -> service.submit(request("ddddddddddd")))
+                .isInstanceOfSatisfying(DownloadRejectedException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isGreaterThan(emptyQueueEstimate));
+    }
+
+    @Test
+    void refusesNewDownloadsWhenTheDiskIsFull() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        DownloadProperties properties = new DownloadProperties();
+        properties.getStorage().setMinFreeSpace(DataSize.ofTerabytes(1024));
+        YoutubeDownloadService service = createService(stub, properties);
+
+        assertThatThrownBy(() -> service.submit(new YoutubeLinkRequest(URL)))
+                .isInstanceOf(InsufficientStorageException.class);
+        assertThat(service.getStatus(URL).status()).isEqualTo(Status.NOT_FOUND);
+        assertThat(stub.invocations()).isZero();
+    }
+
+    @Test
+    void downloadIsStoppedWhenItsExpectedSizeDoesNotFit() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(5).build();
+        DownloadProperties properties = new DownloadProperties();
+        // o stub anuncia 1 MiB; com esse fator a reserva passa de qualquer disco
+        properties.getStorage().setExpectedSizeFactor(1e9);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+
+        assertThatThrownBy(() -> job.result().get(4, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(DownloadFailedException.class);
+        DownloadStatus status = service.getJobStatus(job.id());
+        assertThat(status.status()).isEqualTo(Status.FAILED);
+        assertThat(status.message()).contains("Not enough disk space");
+        assertThat(fixture.fileSystemManager.getReservedBytes()).isZero();
+    }
+
+    @Test
+    void concurrentRequestsForSameVideoShareOneProcess() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(1).build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+        List<String> urls = List.of(
+                "https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+                "https://youtu.be/dQw4w9WgXcQ",
+                "https://www.youtube.com/watch?v=dQw4w9WgXcQ&t=10",
+                "youtube.com/watch?v=dQw4w9WgXcQ"
+        );
+
+        int requests = 16;
+        ExecutorService clients = Executors.newFixedThreadPool(requests);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<DownloadJob>> submissions = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                String url = urls.get(i % urls.size());
+                submissions.add(clients.submit(() -> {
+                    start.await();
+                    return service.submit(new YoutubeLinkRequest(url));
+                }));
+            }
+            start.countDown();
+
+            Set<String> paths = new HashSet<>();
+            Set<String> jobIds = new HashSet<>();
+            for (Future<DownloadJob> submission : submissions) {
+                DownloadJob job = submission.get(10, TimeUnit.SECONDS);
+                jobIds.add(job.id());
+                paths.add(job.result().get(10, TimeUnit.SECONDS).filePath());
+            }
+
+            assertThat(stub.invocations()).isEqualTo(1);
+            assertThat(paths).hasSize(1);
+            assertThat(jobIds).hasSize(requests);
+            jobIds.forEach(id -> assertThat(service.getJobStatus(id).status()).isEqualTo(Status.COMPLETED));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void publishesProgressWhileDownloading() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(1).build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            DownloadStatus status = service.getJobStatus(job.id());
+            assertThat(status.status()).isEqualTo(Status.IN_PROGRESS);
+            assertThat(status.progress()).isNotNull();
+            assertThat(status.progress().phase()).isEqualTo(DownloadPhase.DOWNLOADING);
+            assertThat(status.progress().totalBytes()).isEqualTo(1048576);
+        });
+        job.result().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void repeatRequestIsServedFromCache() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        String first = service.submit(new YoutubeLinkRequest(URL)).result().get(10, TimeUnit.SECONDS).filePath();
+        DownloadJob repeat = service.submit(new YoutubeLinkRequest("https://youtu.be/dQw4w9WgXcQ"));
+
+        assertThat(repeat.result()).isCompleted();
+        assertThat(repeat.result().get().filePath()).isEqualTo(first);
+        assertThat(service.getJobStatus(repeat.id()).status()).isEqualTo(Status.COMPLETED);
+        assertThat(stub.invocations()).isEqualTo(1);
+    }
+
+    @Test
+    void recordsStageTimingsExitCodesAndCacheLookups() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        service.submit(new YoutubeLinkRequest(URL)).result().get(10, TimeUnit.SECONDS);
+        service.submit(new YoutubeLinkRequest(URL)).result().get(10, TimeUnit.SECONDS);
+
+        MeterRegistry registry = fixture.registry;
+        for (String stage : List.of("queue", "metadata", "download", "handoff", "transcode")) {
+            assertThat(registry.get("downloader.stage.duration").tag("stage", stage).timer().count())
+                    .as(stage).isEqualTo(1);
+        }
+        assertThat(registry.get("downloader.jobs.duration").tag("outcome", "completed").timer().count()).isEqualTo(2);
+        assertThat(registry.get("downloader.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get("downloader.cache.requests").tag("result", "miss").counter().count()).isEqualTo(1);
+        assertThat(registry.get("downloader.process.exits").tag("tool", "yt-dlp").tag("code", "0").counter().count()).isEqualTo(1);
+        assertThat(registry.get("downloader.process.exits").tag("tool", "ffmpeg").tag("code", "0").counter().count()).isEqualTo(1);
+        assertThat(registry.get("downloader.bytes.downloaded").counter().count()).isEqualTo(1048576);
+        assertThat(registry.get("downloader.processes.active").gauge().value()).isZero();
+    }
+
+    @Test
+    void differentVideosRunSeparately() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob first = service.submit(request("aaaaaaaaaaa"));
+        DownloadJob second = service.submit(request("bbbbbbbbbbb"));
+
+        assertThat(first.result().get(10, TimeUnit.SECONDS).filePath())
+                .isNotEqualTo(second.result().get(10, TimeUnit.SECONDS).filePath());
+        assertThat(stub.invocations()).isEqualTo(2);
+    }
+
+    @Test
+    void failedJobNeverPicksUpAnotherJobsFile() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(0.5).failFor("bbbbbbbbbbb").build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob good = service.submit(request("aaaaaaaaaaa"));
+        DownloadJob bad = service.submit(request("bbbbbbbbbbb"));
+
+        assertThat(good.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        assertThatThrownBy(() -> bad.result().get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(DownloadFailedException.class);
+        assertThat(service.getJobStatus(bad.id()).status()).isEqualTo(Status.FAILED);
+        assertThat(service.getJobStatus(bad.id()).fileName()).isNull();
+    }
+
+    @Test
+    void cancellingKillsTheWholeProcessTreeAndRemovesPartialFiles() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).hang().build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+        await().until(() -> stub.spawnedPids().size() == 3);
+        List<Long> pids = stub.spawnedPids();
+        assertThat(pids).allMatch(YoutubeDownloadServiceTest::isAlive);
+        assertThat(stub.partialFiles()).allMatch(Files::exists);
+
+        assertThat(service.cancelJob(job.id()).status()).isEqualTo(Status.CANCELLED);
+
+        await().untilAsserted(() -> assertThat(job.result()).isCompletedExceptionally());
+        await().until(() -> pids.stream().noneMatch(YoutubeDownloadServiceTest::isAlive));
+        assertThat(stub.partialFiles()).noneMatch(Files::exists);
+        assertThat(service.getJobStatus(job.id()).status()).isEqualTo(Status.CANCELLED);
+        assertThatThrownBy(() -> service.cancelJob(job.id())).isInstanceOf(JobStateConflictException.class);
+    }
+
+    @Test
+    void phaseTimeoutFailsTheJobAndKillsTheProcessTree() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).hang().build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getProcess().setDownloadTimeout(Duration.ofMillis(500));
+        properties.getProcess().setKillGracePeriod(Duration.ofSeconds(1));
+        YoutubeDownloadService service = createService(stub, properties);
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+
+        await().untilAsserted(() -> {
+            DownloadStatus status = service.getJobStatus(job.id());
+            assertThat(status.status()).isEqualTo(Status.FAILED);
+            assertThat(status.message()).contains("download timeout");
+        });
+        List<Long> pids = stub.spawnedPids();
+        assertThat(pids).hasSize(3);
+        await().until(() -> pids.stream().noneMatch(YoutubeDownloadServiceTest::isAlive));
+    }
+
+    @Test
+    void cancellingOneOfTwoCoalescedJobsKeepsTheDownloadRunning() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(1).build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob cancelled = service.submit(new YoutubeLinkRequest(URL));
+        DownloadJob kept = service.submit(new YoutubeLinkRequest(URL));
+        service.cancelJob(cancelled.id());
+
+        assertThat(kept.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        assertThat(service.getJobStatus(kept.id()).status()).isEqualTo(Status.COMPLETED);
+        assertThat(service.getJobStatus(cancelled.id()).status()).isEqualTo(Status.CANCELLED);
+        assertThat(stub.invocations()).isEqualTo(1);
+    }
+
+    @Test
+    void cancellationsRacingCompletionsCountEachJobOnce() throws Exception {
+        int jobs = 16;
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setQueueCapacity(jobs);
+        properties.getExecutor().setClientQueueLimit(0);
+        YoutubeDownloadService service = createService(StubYtDlp.builder(tempDir).delaySeconds(0.05).build(), properties);
+
+        List<DownloadJob> submitted = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            submitted.add(service.submit(request(String.format("races%06d", i))));
+        }
+        // os cancelamentos caem antes, durante e depois do fim de cada download
+        ExecutorService cancellers = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> cancels = new ArrayList<>();
+        for (int i = 0; i < jobs; i++) {
+            DownloadJob job = submitted.get(i);
+            long delay = i * 40L;
+            cancels.add(cancellers.submit(() -> {
+                Thread.sleep(delay);
+                try {
+                    service.cancelJob(job.id());
+                    return true;
+                } catch (JobStateConflictException e) {
+                    return false;
+                }
+            }));
+        }
+        int cancelled = 0;
+        for (int i = 0; i < jobs; i++) {
+            boolean won = cancels.get(i).get(30, TimeUnit.SECONDS);
+            cancelled += won ? 1 : 0;
+            String jobId = submitted.get(i).id();
+            await().until(() -> service.getJobStatus(jobId).status().isTerminal());
+            assertThat(service.getJobStatus(jobId).status() == Status.CANCELLED).isEqualTo(won);
+        }
+        cancellers.shutdown();
+
+        MeterRegistry registry = fixture.registry;
+        int expectedCancelled = cancelled;
+        await().untilAsserted(() -> assertThat(registry.get("downloader.jobs.duration").timers().stream()
+                .mapToLong(timer -> timer.count()).sum()).isEqualTo(jobs - expectedCancelled));
+        assertThat(registry.get("downloader.jobs.cancelled").counter().count()).isEqualTo(cancelled);
+    }
+
+    @Test
+    void streamOfACompletedJobHoldsItsLeaseOnlyWhileWriting() throws Exception {
+        YoutubeDownloadService service = createService(StubYtDlp.create(tempDir), new DownloadProperties());
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+        job.result().get(10, TimeUnit.SECONDS);
+        await().until(() -> service.getJobStatus(job.id()).status() == Status.COMPLETED);
+
+        // um stream aberto que nunca é escrito (timeout, cliente que desistiu) não prende o arquivo
+        AudioStream unused = service.openStream(job.id());
+        assertThat(fixture.leases.getActiveLeases()).isZero();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(service.openStream(job.id()).writeTo(out)).isEqualTo(out.size()).isPositive();
+        assertThat(fixture.leases.getActiveLeases()).isZero();
+        assertThat(unused.mediaType()).isEqualTo("audio/mpeg");
+    }
+
+    @Test
+    void downloadWorkerFetchesTheNextVideoWhileThePreviousOneIsTranscoded() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).transcodeDelaySeconds(1.5).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getPipeline().setTranscodeWorkers(2);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        DownloadJob first = service.submit(request("aaaaaaaaaaa"));
+        DownloadJob second = service.submit(request("bbbbbbbbbbb"));
+
+        await().atMost(Duration.ofSeconds(1)).until(() -> stub.transcodes() == 2);
+        assertThat(first.result()).isNotDone();
+        assertThat(first.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        assertThat(second.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        assertThat(Files.readString(Paths.get(second.result().get().filePath()))).isEqualTo("ID3stub-audio-bbbbbbbbbbb");
+    }
+
+    @Test
+    void fullHandOffHoldsDownloadWorkersBack() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).transcodeDelaySeconds(1).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(3);
+        properties.getPipeline().setTranscodeWorkers(1);
+        properties.getPipeline().setHandoffCapacity(1);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        List<DownloadJob> jobs = List.of(request("aaaaaaaaaaa"), request("bbbbbbbbbbb"), request("ccccccccccc"))
+                .stream().map(service::submit).toList();
+
+        await().until(() -> fixture.transcodeExecutor.getWaitingCount() == 1);
+        assertThat(fixture.transcodeExecutor.getActiveCount()).isEqualTo(1);
+        assertThat(fixture.transcodeExecutor.getQueueDepth()).isEqualTo(1);
+        assertThat(stub.transcodes()).isEqualTo(1);
+
+        for (DownloadJob job : jobs) {
+            assertThat(job.result().get(10, TimeUnit.SECONDS).status()).isEqualTo(Status.COMPLETED);
+        }
+        assertThat(stub.transcodes()).isEqualTo(3);
+    }
+
+    @Test
+    void failedTranscodeFailsTheJobAndReleasesItsReservation() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).transcodeExitCode(1).build();
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        DownloadJob job = service.submit(new YoutubeLinkRequest(URL));
+
+        assertThatThrownBy(() -> job.result().get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(DownloadFailedException.class);
+        assertThat(service.getJobStatus(job.id()).message()).contains("Transcode failed");
+        assertThat(fixture.fileSystemManager.getReservedBytes()).isZero();
+    }
+
+    @Test
+    void singleStageModeLeavesTheConversionToYtDlp() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        DownloadProperties properties = new DownloadProperties();
+        properties.getPipeline().setSplitStages(false);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        YoutubeResponse response = service.submit(new YoutubeLinkRequest(URL)).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(response.status()).isEqualTo(Status.COMPLETED);
+        assertThat(stub.invocations()).isEqualTo(1);
+        assertThat(stub.transcodes()).isZero();
+    }
+
+    @Test
+    void otherFormatsOfAFetchedVideoAreConvertedFromTheKeptStream() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        YoutubeResponse mp3 = service.submit(new YoutubeLinkRequest(URL, AudioFormat.MP3)).result().get(10, TimeUnit.SECONDS);
+        YoutubeResponse opus = service.submit(new YoutubeLinkRequest(URL, AudioFormat.OPUS)).result().get(10, TimeUnit.SECONDS);
+        YoutubeResponse original = service.submit(new YoutubeLinkRequest(URL, AudioFormat.ORIGINAL)).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(stub.invocations()).isEqualTo(1);
+        assertThat(stub.transcodeCommands()).hasSize(2);
+        assertThat(stub.transcodeCommands().get(0)).contains("-codec:a libmp3lame");
+        assertThat(stub.transcodeCommands().get(1)).contains("-codec:a copy");
+        assertThat(Paths.get(mp3.filePath())).hasFileName("dQw4w9WgXcQ-mp3-0.mp3");
+        assertThat(Paths.get(opus.filePath())).hasFileName("dQw4w9WgXcQ-opus-160K.opus");
+        assertThat(Files.readString(Paths.get(opus.filePath()))).isEqualTo("ID3stub-audio-dQw4w9WgXcQ");
+        assertThat(Paths.get(original.filePath())).hasFileName("dQw4w9WgXcQ-original-native.webm");
+        assertThat(fixture.leases.getActiveLeases()).isZero();
+    }
+
+    @Test
+    void nativeM4aStreamIsStoredWithoutTranscoding() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        YoutubeDownloadService service = createService(stub, new DownloadProperties());
+
+        YoutubeResponse response = service.submit(new YoutubeLinkRequest(URL, AudioFormat.M4A)).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(stub.transcodes()).isZero();
+        assertThat(Paths.get(response.filePath())).hasFileName("dQw4w9WgXcQ-m4a-192K.m4a");
+        assertThat(Files.readString(Paths.get(response.filePath()))).isEqualTo("source-dQw4w9WgXcQ");
+        assertThat(service.getFile("dQw4w9WgXcQ-m4a-192K.m4a").displayName()).isEqualTo("stub_dQw4w9WgXcQ.m4a");
+    }
+
+    @Test
+    void singleStageModeAsksYtDlpForTheRequestedFormat() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        DownloadProperties properties = new DownloadProperties();
+        properties.getPipeline().setSplitStages(false);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        YoutubeResponse response = service.submit(new YoutubeLinkRequest(URL, AudioFormat.OPUS)).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(Paths.get(response.filePath())).hasFileName("dQw4w9WgXcQ-opus-160K.opus");
+        assertThat(stub.transcodes()).isZero();
+    }
+
+    private static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    @Test
+    void restartQueuesUnfinishedJobsAgainAndRestoresFinishedOnes() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(1).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        DownloadJob done = service.submit(request("aaaaaaaaaaa"));
+        done.result().get(10, TimeUnit.SECONDS);
+        DownloadJob running = service.submit(request("bbbbbbbbbbb"));
+        DownloadJob queued = service.submit(request("ccccccccccc"));
+        await().until(() -> service.getJobStatus(running.id()).status() == Status.IN_PROGRESS);
+        fixture.close();
+
+        YoutubeDownloadService restarted = createService(stub, properties);
+
+        DownloadStatus restored = restarted.getJobStatus(done.id());
+        assertThat(restored.status()).isEqualTo(Status.COMPLETED);
+        try (var file = restarted.getFile(restored.fileName())) {
+            assertThat(file.path()).exists();
+        }
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            assertThat(restarted.getJobStatus(running.id()).status()).isEqualTo(Status.COMPLETED);
+            assertThat(restarted.getJobStatus(queued.id()).status()).isEqualTo(Status.COMPLETED);
+        });
+        assertThat(stub.invocations()).isEqualTo(4);
+    }
+
+    @Test
+    void restartQueuesRecoveredJobsUnderTheirClientsBeyondTheAdmissionLimits() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).delaySeconds(1).build();
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getExecutor().setQueueCapacity(2);
+        properties.getExecutor().setClientQueueLimit(1);
+        YoutubeDownloadService service = createService(stub, properties);
+
+        DownloadJob running = service.submit(request("aaaaaaaaaaa"), "key:heavy");
+        await().until(() -> fixture.executor.getActiveCount() == 1);
+        DownloadJob heavyQueued = service.submit(new YoutubeLinkRequest(
+                "https://www.youtube.com/watch?v=bbbbbbbbbbb", AudioFormat.MP3, JobPriority.BULK), "key:heavy");
+        DownloadJob lightQueued = service.submit(request("ccccccccccc"), "ip:10.0.0.1");
+        fixture.close();
+
+        YoutubeDownloadService restarted = createService(stub, properties);
+
+        assertThat(fixture.journal.recoveredJobs())
+                .filteredOn(job -> job.jobId().equals(heavyQueued.id()))
+                .singleElement()
+                .satisfies(job -> {
+                    assertThat(job.clientId()).isEqualTo("key:heavy");
+                    assertThat(job.priority()).isEqualTo(JobPriority.BULK);
+                });
+        await().atMost(Duration.ofSeconds(15)).untilAsserted(() -> {
+            for (DownloadJob job : List.of(running, heavyQueued, lightQueued)) {
+                assertThat(restarted.getJobStatus(job.id()).status()).isEqualTo(Status.COMPLETED);
+            }
+        });
+    }
+
+    private YoutubeDownloadService createService(StubYtDlp stub, DownloadProperties properties) throws Exception {
+        fixture = new ServiceFixture(stub, properties);
+        return fixture.service;
+    }
+
+    private static YoutubeLinkRequest request(String videoId) {
+        return new YoutubeLinkRequest("https://www.youtube.com/watch?v=" + videoId);
+    }
+}
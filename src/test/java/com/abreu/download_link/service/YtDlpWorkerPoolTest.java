@@ -0,0 +1,130 @@
+package com.abreu.download_link.service;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.domain.DownloadJob;
+import com.abreu.download_link.domain.YoutubeLinkRequest;
+import com.abreu.download_link.domain.YoutubeResponse;
+import com.abreu.download_link.domain.enums.Status;
+import com.abreu.download_link.support.ServiceFixture;
+import com.abreu.download_link.support.StubYtDlp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class YtDlpWorkerPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ServiceFixture fixture;
+
+    @AfterEach
+    void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    void downloadsRunOnAWarmWorkerThatIsReplacedAfterItsShareOfJobs() throws Exception {
+        StubYtDlp stub = StubYtDlp.create(tempDir);
+        DownloadProperties properties = pooled(stub);
+        properties.getWorkerPool().setMaxJobsPerWorker(2);
+        YoutubeDownloadService service = start(stub, properties);
+
+        for (String id : List.of("aaaaaaaaaaa", "bbbbbbbbbbb", "ccccccccccc")) {
+            await().until(() -> fixture.workerPool.getIdleCount() == 1);
+            YoutubeResponse response = service.submit(request(id)).result().get(10, TimeUnit.SECONDS);
+            assertThat(response.status()).isEqualTo(Status.COMPLETED);
+            assertThat(Files.readString(Path.of(response.filePath()))).isEqualTo("ID3stub-audio-" + id);
+        }
+
+        assertThat(stub.workerJobs()).isEqualTo(3);
+        assertThat(stub.workerStarts()).hasSize(2);
+        assertThat(fixture.registry.get("downloader.ytdlp.runs").tag("mode", "worker").counter().count()).isEqualTo(3);
+        assertThat(fixture.registry.get("downloader.ytdlp.runs").tag("mode", "process").counter().count()).isZero();
+        await().until(() -> !isAlive(stub.workerStarts().get(0)));
+    }
+
+    @Test
+    void workerThatCannotStartLeavesDownloadsToSpawnedProcesses() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).brokenWorker().build();
+        YoutubeDownloadService service = start(stub, pooled(stub));
+        await().until(() -> stub.workerStarts().size() == 1);
+
+        YoutubeResponse response = service.submit(request("aaaaaaaaaaa")).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(response.status()).isEqualTo(Status.COMPLETED);
+        assertThat(stub.workerJobs()).isZero();
+        assertThat(stub.invocations()).isEqualTo(1);
+        // o backoff impede que cada download tente subir um worker de novo
+        assertThat(stub.workerStarts()).hasSize(1);
+    }
+
+    @Test
+    void idleWorkerThatDoesNotAnswerAPingIsReplaced() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).deafWorker().build();
+        DownloadProperties properties = pooled(stub);
+        properties.getWorkerPool().setHealthCheckInterval(Duration.ZERO);
+        properties.getWorkerPool().setHealthCheckTimeout(Duration.ofMillis(200));
+        YoutubeDownloadService service = start(stub, properties);
+        await().until(() -> fixture.workerPool.getIdleCount() == 1);
+        long first = stub.workerStarts().get(0);
+
+        YoutubeResponse response = service.submit(request("aaaaaaaaaaa")).result().get(10, TimeUnit.SECONDS);
+
+        assertThat(response.status()).isEqualTo(Status.COMPLETED);
+        assertThat(stub.workerJobs()).isZero();
+        await().until(() -> !isAlive(first));
+        await().until(() -> stub.workerStarts().size() == 2);
+    }
+
+    @Test
+    void cancellingAPooledDownloadKillsTheWorkerAndEverythingItStarted() throws Exception {
+        StubYtDlp stub = StubYtDlp.builder(tempDir).hang().build();
+        YoutubeDownloadService service = start(stub, pooled(stub));
+        await().until(() -> fixture.workerPool.getIdleCount() == 1);
+        long worker = stub.workerStarts().get(0);
+
+        DownloadJob job = service.submit(request("aaaaaaaaaaa"));
+        await().until(() -> stub.spawnedPids().size() == 3);
+        List<Long> pids = stub.spawnedPids();
+        service.cancelJob(job.id());
+
+        await().untilAsserted(() -> assertThat(job.result()).isCompletedExceptionally());
+        await().until(() -> !isAlive(worker) && pids.stream().noneMatch(YtDlpWorkerPoolTest::isAlive));
+        assertThat(stub.partialFiles()).noneMatch(Files::exists);
+        assertThat(stub.invocations()).isEqualTo(1);
+        await().until(() -> fixture.workerPool.getIdleCount() == 1);
+    }
+
+    private DownloadProperties pooled(StubYtDlp stub) {
+        DownloadProperties properties = new DownloadProperties();
+        properties.getExecutor().setWorkers(1);
+        properties.getWorkerPool().setEnabled(true);
+        properties.getWorkerPool().setCommand(List.of(stub.workerPath()));
+        return properties;
+    }
+
+    private YoutubeDownloadService start(StubYtDlp stub, DownloadProperties properties) throws Exception {
+        fixture = new ServiceFixture(stub, properties);
+        return fixture.service;
+    }
+
+    private static YoutubeLinkRequest request(String videoId) {
+        return new YoutubeLinkRequest("https://www.youtube.com/watch?v=" + videoId);
+    }
+
+    private static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+}
@@ -0,0 +1,48 @@
+package com.abreu.download_link.support;
+
+import com.abreu.download_link.service.KeyValueClient;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for a shared key-value backend, with a manually advanced clock for TTL checks.
+ */
+public class InMemoryKeyValueClient implements KeyValueClient {
+
+    private final Map<String, Value> values = new ConcurrentHashMap<>();
+    private final AtomicLong nowMillis = new AtomicLong();
+
+    @Override
+    public String get(String key) {
+        Value value = values.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value.expiresAt() <= nowMillis.get()) {
+            values.remove(key, value);
+            return null;
+        }
+        return value.data();
+    }
+
+    @Override
+    public void set(String key, String value, Duration ttl) {
+        long expiresAt = ttl == null ? Long.MAX_VALUE : nowMillis.get() + ttl.toMillis();
+        values.put(key, new Value(value, expiresAt));
+    }
+
+    @Override
+    public void delete(String key) {
+        values.remove(key);
+    }
+
+    public void advance(Duration duration) {
+        nowMillis.addAndGet(duration.toMillis());
+    }
+
+    private record Value(String data, long expiresAt) {
+    }
+}
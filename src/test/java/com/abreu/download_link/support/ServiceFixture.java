@@ -0,0 +1,95 @@
+package com.abreu.download_link.support;
+
+import com.abreu.download_link.config.DownloadProperties;
+import com.abreu.download_link.service.BatchService;
+import com.abreu.download_link.service.DownloadExecutor;
+import com.abreu.download_link.service.DownloadMetrics;
+import com.abreu.download_link.service.DownloadStatusManager;
+import com.abreu.download_link.service.FileExpiryIndex;
+import com.abreu.download_link.service.FileLeases;
+import com.abreu.download_link.service.FileSystemManager;
+import com.abreu.download_link.service.InMemoryStatusStore;
+import com.abreu.download_link.service.JobEventBroadcaster;
+import com.abreu.download_link.service.JobJournal;
+import com.abreu.download_link.service.ResultCache;
+import com.abreu.download_link.service.TranscodeExecutor;
+import com.abreu.download_link.service.VideoInfoCache;
+import com.abreu.download_link.service.VideoInfoService;
+import com.abreu.download_link.service.YoutubeDownloadService;
+import com.abreu.download_link.service.YoutubeProcessManager;
+import com.abreu.download_link.service.YtDlpWorkerPool;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.List;
+
+/**
+ * Wires the download services by hand around a stub yt-dlp and ffmpeg, without starting a Spring
+ * context. The cache and the job journal live in the stub directory, so a second fixture on the
+ * same stub behaves like the service after a restart.
+ */
+public class ServiceFixture implements AutoCloseable {
+
+    public final DownloadProperties properties;
+    public final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    public final DownloadMetrics metrics = new DownloadMetrics(registry);
+    public final YtDlpWorkerPool workerPool;
+    public final YoutubeProcessManager processManager;
+    public final DownloadExecutor executor;
+    public final TranscodeExecutor transcodeExecutor;
+    public final JobEventBroadcaster events;
+    public final DownloadStatusManager statusManager;
+    public final FileLeases leases;
+    public final JobJournal journal;
+    public final ResultCache resultCache;
+    public final FileExpiryIndex expiryIndex;
+    public final FileSystemManager fileSystemManager;
+    public final VideoInfoCache videoInfoCache;
+    public final VideoInfoService videoInfo;
+    public final YoutubeDownloadService service;
+    public final BatchService batchService;
+
+    public ServiceFixture(StubYtDlp stub, DownloadProperties properties) throws Exception {
+        this.properties = properties;
+        properties.setYtDlpPath(stub.path());
+        properties.setFfmpegPath(stub.ffmpegPath());
+        properties.getCache().setDirectory(stub.directory().resolve("cache").toString());
+        properties.getJournal().setDirectory(stub.directory().resolve("journal").toString());
+
+        workerPool = new YtDlpWorkerPool(properties);
+        processManager = new YoutubeProcessManager(properties, metrics, workerPool);
+        processManager.init();
+        executor = new DownloadExecutor(properties);
+        transcodeExecutor = new TranscodeExecutor(properties);
+        events = new JobEventBroadcaster(properties, new ObjectMapper());
+        journal = new JobJournal(properties);
+        journal.init();
+        statusManager = new DownloadStatusManager(new InMemoryStatusStore(properties), List.of(events, journal));
+        leases = new FileLeases(properties);
+        resultCache = new ResultCache(properties, leases);
+        resultCache.init();
+
+        expiryIndex = new FileExpiryIndex(properties, leases);
+        fileSystemManager = new FileSystemManager(properties, resultCache, expiryIndex);
+
+        videoInfoCache = new VideoInfoCache(properties);
+        videoInfo = new VideoInfoService(processManager, videoInfoCache, metrics);
+        service = new YoutubeDownloadService(
+                processManager, fileSystemManager, statusManager, executor, transcodeExecutor, resultCache, expiryIndex,
+                leases, journal, videoInfoCache, metrics, properties);
+        service.init();
+        batchService = new BatchService(properties, service, processManager, executor);
+    }
+
+    @Override
+    public void close() {
+        // como no contexto do Spring: o journal fecha antes que os executores derrubem os jobs
+        journal.close();
+        batchService.shutdown();
+        executor.shutdown();
+        transcodeExecutor.shutdown();
+        events.shutdown();
+        expiryIndex.shutdown();
+        workerPool.shutdown();
+    }
+}
@@ -0,0 +1,245 @@
+package com.abreu.download_link.support;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes wrappers around {@code src/test/resources/stubs/yt-dlp}, {@code stubs/ffmpeg} and
+ * {@code stubs/yt-dlp-worker} that configure the stubs through environment variables, and exposes
+ * the number of download and transcode invocations they served.
+ */
+public class StubYtDlp {
+
+    private static final Path STUB_SCRIPT = Paths.get("src/test/resources/stubs/yt-dlp").toAbsolutePath();
+    private static final Path FFMPEG_SCRIPT = Paths.get("src/test/resources/stubs/ffmpeg").toAbsolutePath();
+    private static final Path WORKER_SCRIPT = Paths.get("src/test/resources/stubs/yt-dlp-worker").toAbsolutePath();
+
+    private final Path executable;
+    private final Path ffmpeg;
+    private final Path counterFile;
+    private final Path transcodeCounterFile;
+    private final Path pidFile;
+    private final Path partialsFile;
+    private final Path worker;
+
+    private StubYtDlp(Path executable, Path ffmpeg, Path counterFile, Path transcodeCounterFile,
+                      Path pidFile, Path partialsFile, Path worker) {
+        this.executable = executable;
+        this.ffmpeg = ffmpeg;
+        this.counterFile = counterFile;
+        this.transcodeCounterFile = transcodeCounterFile;
+        this.pidFile = pidFile;
+        this.partialsFile = partialsFile;
+        this.worker = worker;
+    }
+
+    public static StubYtDlp create(Path dir) throws IOException {
+        return builder(dir).build();
+    }
+
+    public static Builder builder(Path dir) {
+        return new Builder(dir);
+    }
+
+    public String path() {
+        return executable.toString();
+    }
+
+    public String ffmpegPath() {
+        return ffmpeg.toString();
+    }
+
+    /** Command starting a stub yt-dlp worker, for {@code downloader.worker-pool.command}. */
+    public String workerPath() {
+        return worker.toString();
+    }
+
+    public Path directory() {
+        return executable.getParent();
+    }
+
+    public int invocations() throws IOException {
+        return Files.exists(counterFile) ? Files.readAllLines(counterFile).size() : 0;
+    }
+
+    public int transcodes() throws IOException {
+        return transcodeCommands().size();
+    }
+
+    /** Arguments of every ffmpeg run, one line per run. */
+    public List<String> transcodeCommands() throws IOException {
+        return Files.exists(transcodeCounterFile) ? Files.readAllLines(transcodeCounterFile) : List.of();
+    }
+
+    /** Video ids whose metadata was read with --dump-json, one per run. */
+    public List<String> infoRequests() throws IOException {
+        return readLines(directory().resolve("info.log"));
+    }
+
+    /** Video ids downloaded from metadata passed with --load-info-json instead of a URL. */
+    public List<String> loadedInfo() throws IOException {
+        return readLines(directory().resolve("loaded-info.log"));
+    }
+
+    /** Pids of every stub worker started, in start order. */
+    public List<Long> workerStarts() throws IOException {
+        return readPids(directory().resolve("workers.log"));
+    }
+
+    /** Jobs run on stub workers. */
+    public int workerJobs() throws IOException {
+        return readPids(directory().resolve("worker-jobs.log")).size();
+    }
+
+    /** Pids of a hanging stub and of the children it spawned. */
+    public List<Long> spawnedPids() throws IOException {
+        return readPids(pidFile);
+    }
+
+    /** Partial files written by a hanging stub. */
+    public List<Path> partialFiles() throws IOException {
+        return Files.exists(partialsFile)
+                ? Files.readAllLines(partialsFile).stream().map(Paths::get).toList()
+                : List.of();
+    }
+
+    private static List<String> readLines(Path file) throws IOException {
+        return Files.exists(file) ? Files.readAllLines(file) : List.of();
+    }
+
+    private static List<Long> readPids(Path file) throws IOException {
+        return Files.exists(file)
+                ? Files.readAllLines(file).stream().map(String::trim).filter(l -> !l.isEmpty()).map(Long::valueOf).toList()
+                : List.of();
+    }
+
+    public static class Builder {
+        private final Path dir;
+        private double delaySeconds;
+        private int exitCode;
+        private double transcodeDelaySeconds;
+        private long transcodeCpu;
+        private int transcodeExitCode;
+        private boolean hang;
+        private String failId = "";
+        private List<String> playlist;
+        private boolean brokenWorker;
+        private boolean deafWorker;
+        private long infoSize;
+
+        private Builder(Path dir) {
+            this.dir = dir;
+        }
+
+        public Builder delaySeconds(double delaySeconds) {
+            this.delaySeconds = delaySeconds;
+            return this;
+        }
+
+        public Builder exitCode(int exitCode) {
+            this.exitCode = exitCode;
+            return this;
+        }
+
+        public Builder transcodeDelaySeconds(double transcodeDelaySeconds) {
+            this.transcodeDelaySeconds = transcodeDelaySeconds;
+            return this;
+        }
+
+        /** Busy-loop iterations run by each conversion, in yt-dlp -x as well as in ffmpeg. */
+        public Builder transcodeCpu(long iterations) {
+            this.transcodeCpu = iterations;
+            return this;
+        }
+
+        public Builder transcodeExitCode(int exitCode) {
+            this.transcodeExitCode = exitCode;
+            return this;
+        }
+
+        public Builder failFor(String videoId) {
+            this.failId = videoId;
+            return this;
+        }
+
+        /** Video ids printed when a playlist is listed. */
+        public Builder playlist(String... videoIds) {
+            this.playlist = List.of(videoIds);
+            return this;
+        }
+
+        public Builder hang() {
+            this.hang = true;
+            return this;
+        }
+
+        /** Size of the audio stream announced in the metadata printed by --dump-json. */
+        public Builder infoSize(long bytes) {
+            this.infoSize = bytes;
+            return this;
+        }
+
+        /** Workers exit at start instead of reporting ready. */
+        public Builder brokenWorker() {
+            this.brokenWorker = true;
+            return this;
+        }
+
+        /** Workers run jobs but never answer a ping. */
+        public Builder deafWorker() {
+            this.deafWorker = true;
+            return this;
+        }
+
+        public StubYtDlp build() throws IOException {
+            Path counterFile = dir.resolve("invocations.log");
+            Path transcodeCounterFile = dir.resolve("transcodes.log");
+            Path pidFile = dir.resolve("pids.log");
+            Path partialsFile = dir.resolve("partials.log");
+            List<String> environment = new ArrayList<>(List.of(
+                    "#!/bin/sh",
+                    "export STUB_COUNTER_FILE='" + counterFile + "'",
+                    "export STUB_TRANSCODE_COUNTER_FILE='" + transcodeCounterFile + "'",
+                    "export STUB_DELAY='" + (delaySeconds > 0 ? delaySeconds : "") + "'",
+                    "export STUB_EXIT_CODE='" + exitCode + "'",
+                    "export STUB_TRANSCODE_DELAY='" + (transcodeDelaySeconds > 0 ? transcodeDelaySeconds : "") + "'",
+                    "export STUB_TRANSCODE_CPU='" + transcodeCpu + "'",
+                    "export STUB_TRANSCODE_EXIT_CODE='" + transcodeExitCode + "'",
+                    "export STUB_FAIL_ID='" + failId + "'",
+                    "export STUB_HANG='" + (hang ? "1" : "") + "'",
+                    "export STUB_PID_FILE='" + pidFile + "'",
+                    "export STUB_PARTIALS_FILE='" + partialsFile + "'"
+            ));
+            environment.add("export STUB_WORKER_FILE='" + dir.resolve("workers.log") + "'");
+            environment.add("export STUB_WORKER_JOBS_FILE='" + dir.resolve("worker-jobs.log") + "'");
+            environment.add("export STUB_WORKER_BROKEN='" + (brokenWorker ? "1" : "") + "'");
+            environment.add("export STUB_WORKER_DEAF='" + (deafWorker ? "1" : "") + "'");
+            environment.add("export STUB_INFO_FILE='" + dir.resolve("info.log") + "'");
+            environment.add("export STUB_LOADED_INFO_FILE='" + dir.resolve("loaded-info.log") + "'");
+            if (infoSize > 0) {
+                environment.add("export STUB_INFO_SIZE='" + infoSize + "'");
+            }
+            environment.add("export STUB_YT_DLP='" + dir.resolve("yt-dlp") + "'");
+            if (playlist != null) {
+                environment.add("export STUB_PLAYLIST='" + String.join(" ", playlist) + "'");
+            }
+            Path executable = writeWrapper(dir.resolve("yt-dlp"), environment, STUB_SCRIPT);
+            Path ffmpeg = writeWrapper(dir.resolve("ffmpeg"), environment, FFMPEG_SCRIPT);
+            Path worker = writeWrapper(dir.resolve("yt-dlp-worker"), environment, WORKER_SCRIPT);
+            return new StubYtDlp(executable, ffmpeg, counterFile, transcodeCounterFile, pidFile, partialsFile, worker);
+        }
+
+        private static Path writeWrapper(Path executable, List<String> environment, Path script) throws IOException {
+            List<String> lines = new ArrayList<>(environment);
+            lines.add("exec '" + script + "' \"$@\"");
+            Files.write(executable, lines);
+            Files.setPosixFilePermissions(executable, PosixFilePermissions.fromString("rwxr-xr-x"));
+            return executable;
+        }
+    }
+}